@@ -1,15 +1,50 @@
 package CommandLineUtility;
 
 import lib.ImageLibraryManager;
+import lib.ImageProcessingException;
 import lib.entities.Pixel;
 import lib.algorithms.AlgorithmManager;
+import lib.algorithms.WeightSweep;
+import lib.batch.BatchJob;
+import lib.batch.BatchManifest;
+import lib.batch.BatchRunner;
+import lib.batch.FillPipeline;
+import lib.batch.JobSummary;
+import lib.entities.BufferAllocator;
+import lib.entities.CroppedImageFields;
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
+import lib.entities.IntensityBuffer;
+import lib.entities.PlanarImage;
 import lib.entities.ProcessedImageFields;
+import lib.io.MaskReader;
+import lib.service.FillClient;
+import lib.service.FillDaemon;
+import lib.service.FillService;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
 
 /**
  * Main class for executing the Hole Filling algorithm from the command line.
  * It validates input parameters, initializes necessary components,
  * and performs the hole-filling process on an image.
+ * PGM, PPM, PFM and raw (.raw) files are selected by extension and read and written by the
+ * built-in codec, without ImageIO. Masks may also be given as run-length spans (.rle), as
+ * polygons (.poly), or as "alpha" to use the image's own alpha channel.
+ * When FILLHOLE_SOCKET names the socket of a running --daemon, the five-argument form is
+ * forwarded to it instead of being run in this JVM.
  */
 
 public class Main {
@@ -30,6 +65,53 @@ public class Main {
     private static final int CONNECTARG = 2;
     private static final int E_ARG = 4;
 
+    private static final String SWEEP_FLAG = "--sweep";
+    private static final int MIN_SWEEP_ARGS = 5;
+    private static final String USAGE_SWEEP = "Usage: --sweep [image path] [mask path] " +
+            "[pixel connectivity: 4/8] [z:epsilon] [z:epsilon] ...";
+    private static final String CONFIG_SEPARATOR = ":";
+    private static final String Z_TAG = "_z";
+    private static final String E_TAG = "_e";
+
+    private static final String COLOR_FLAG = "--color";
+    private static final String USAGE_COLOR = "Usage: --color [image path] [mask path] " +
+            "[pixel connectivity: 4/8] [z] [epsilon] [buffers: heap/direct/mapped:<dir>]";
+    private static final String STREAM_FLAG = "--stream";
+    private static final String USAGE_STREAM = "Usage: --stream [image path] [mask path] " +
+            "[pixel connectivity: 4/8] [z] [epsilon] [strip rows]";
+    private static final int DEFAULT_STRIP_ROWS = 256;
+    private static final String STDIO_FLAG = "--stdio";
+    private static final String USAGE_STDIO = "Usage: --stdio [image path or -] " +
+            "[mask path, alpha or -] [pixel connectivity: 4/8] [z] [epsilon] [output format]";
+    private static final String STANDARD_STREAM = "-";
+    private static final String BOTH_FROM_STDIN = "Only one of image and mask can be read " +
+            "from standard input";
+    private static final int STDOUT_BUFFER_BYTES = 1 << 16;
+    private static final String DIRECT_BUFFERS = "direct";
+    private static final String MAPPED_BUFFERS = "mapped:";
+    private static final String BATCH_FLAG = "--batch";
+    private static final String USAGE_BATCH = "Usage: --batch [directory or .csv/.json manifest] " +
+            "[pixel connectivity: 4/8] [z] [epsilon] [workers]";
+    private static final int MIN_BATCH_ARGS = 5;
+    private static final String PIPELINE_FLAG = "--pipeline";
+    private static final String USAGE_PIPELINE = "Usage: --pipeline [directory or .csv/.json " +
+            "manifest] [pixel connectivity: 4/8] [z] [epsilon] " +
+            "[threads: decode:preprocess:fill:encode] [queue capacity]";
+    private static final int DEFAULT_QUEUE_CAPACITY = 4;
+    private static final String SERVE_FLAG = "--serve";
+    private static final String USAGE_SERVE = "Usage: --serve [port] [compute threads]";
+    private static final String SERVING_MSG = "Fill service listening on http://127.0.0.1:%d/fill%n";
+    private static final int STOP_DELAY_SECONDS = 5;
+    private static final String DAEMON_FLAG = "--daemon";
+    private static final String USAGE_DAEMON = "Usage: --daemon [socket path] [threads]; the " +
+            "socket path defaults to $FILLHOLE_SOCKET";
+    private static final String DAEMON_MSG = "Fill daemon listening on ";
+    private static final String IMAGE_SAVED_MSG = "Image saved successfully: ";
+    private static final String DIRECTORY_SUMMARY = "batch_summary.csv";
+    private static final String SUMMARY_SUFFIX = "_summary.csv";
+    private static final String BATCH_DONE_MSG = "Batch finished: %d succeeded, %d failed. " +
+            "Summary: %s%n";
+
     /**
      * The main entry point for the application.
      * Validates input arguments and performs the hole-filling algorithm.
@@ -40,10 +122,49 @@ public class Main {
 
     public static void main(String[] args)
     {
+        if (args.length > 0 && args[0].equals(SWEEP_FLAG))
+        {
+            runSweep(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(COLOR_FLAG))
+        {
+            runColor(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(STDIO_FLAG))
+        {
+            runStdio(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(STREAM_FLAG))
+        {
+            runStreaming(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(DAEMON_FLAG))
+        {
+            runDaemon(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SERVE_FLAG))
+        {
+            runService(args);
+            return;
+        }
+        if (args.length > 0 && (args[0].equals(BATCH_FLAG) || args[0].equals(PIPELINE_FLAG)))
+        {
+            runBatch(args);
+            return;
+        }
         if (args.length != VALID_NUM_OF_ARGS) {
             System.out.println(USAGE_NUM_OF_ARGS);
             return;
         }
+        if (runOnDaemon(args))
+        {
+            return;
+        }
         try
         {
             int connectivity = Integer.parseInt(args[CONNECTARG]);
@@ -79,4 +200,494 @@ public class Main {
             System.exit(1);
         }
     }
+
+    /**
+     * Runs the default algorithm with several (z, epsilon) configurations in one pass and saves
+     * one output per configuration.
+     *
+     * @param args Command-line arguments: --sweep [image path] [mask path]
+     *             [pixel connectivity] [z:epsilon] [z:epsilon] ...
+     */
+
+    private static void runSweep(String[] args)
+    {
+        if (args.length < MIN_SWEEP_ARGS)
+        {
+            System.out.println(USAGE_SWEEP);
+            return;
+        }
+        try
+        {
+            String path = args[1];
+            String mask = args[2];
+            int connectivity = Integer.parseInt(args[3]);
+            if (connectivity != FOUR_CONNECTED && connectivity != EIGHT_CONNECTED)
+            {
+                throw new Exception(INVALID_CONNECTIVITY_TYPE);
+            }
+            int configs = args.length - 4;
+            int[] zValues = new int[configs];
+            float[] eValues = new float[configs];
+            for (int k = 0; k < configs; k++)
+            {
+                String[] config = args[4 + k].split(CONFIG_SEPARATOR);
+                zValues[k] = Integer.parseInt(config[0]);
+                eValues[k] = Float.parseFloat(config[1]);
+            }
+            ImageLibraryManager imgManager = new ImageLibraryManager();
+            ProcessedImageFields processedImageFields = imgManager.processImage(path, mask,
+                    connectivity);
+            List<Pixel[][]> filledImages = new WeightSweep(zValues, eValues)
+                    .run(processedImageFields);
+            for (int k = 0; k < configs; k++)
+            {
+                imgManager.saveImage(filledImages.get(k), path,
+                        Z_TAG + zValues[k] + E_TAG + eValues[k]);
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            System.out.println(USAGE_SWEEP);
+            System.exit(1);
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println(NUMBER_FORMAT_ERROR);
+            System.exit(1);
+        }
+        catch (Exception e)
+        {
+            System.out.println(INVALID_ARGS_ERROR);
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Forwards the five arguments to a resident daemon when FILLHOLE_SOCKET (or the
+     * fillhole.socket property) names the socket of a running one.
+     *
+     * @param args Command-line arguments: [image path] [mask path] [pixel connectivity] [z]
+     *             [epsilon]
+     * @return True if the daemon handled the request, false to run it in this JVM.
+     */
+
+    private static boolean runOnDaemon(String[] args)
+    {
+        Path socket = FillClient.configuredSocket();
+        if (socket == null)
+        {
+            return false;
+        }
+        FillClient client = new FillClient(socket);
+        if (!client.isAvailable())
+        {
+            return false;
+        }
+        try
+        {
+            System.out.println(IMAGE_SAVED_MSG + client.fill(args));
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        catch (ImageProcessingException e)
+        {
+            System.out.println(e.getMessage());
+            System.exit(1);
+            return true;
+        }
+    }
+
+    /**
+     * Runs the resident fill daemon on a Unix domain socket until this JVM is stopped.
+     *
+     * @param args Command-line arguments: --daemon [socket path] [threads]
+     */
+
+    private static void runDaemon(String[] args)
+    {
+        Path socket = args.length > 1 ? Paths.get(args[1]) : FillClient.configuredSocket();
+        if (socket == null || args.length > 3)
+        {
+            System.out.println(USAGE_DAEMON);
+            return;
+        }
+        try
+        {
+            int threads = args.length > 2 ? Integer.parseInt(args[2])
+                    : Runtime.getRuntime().availableProcessors();
+            FillDaemon daemon = new FillDaemon(socket, threads);
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            {
+                try
+                {
+                    daemon.close();
+                }
+                catch (IOException e)
+                {
+                    System.out.println(e.getMessage());
+                }
+            }));
+            System.out.println(DAEMON_MSG + socket.toAbsolutePath());
+            daemon.serve();
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println(NUMBER_FORMAT_ERROR);
+            System.exit(1);
+        }
+        catch (IOException e)
+        {
+            System.out.println(INVALID_ARGS_ERROR);
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Starts the HTTP fill service and keeps this JVM serving requests until it is stopped.
+     *
+     * @param args Command-line arguments: --serve [port] [compute threads]
+     */
+
+    private static void runService(String[] args)
+    {
+        if (args.length != 2 && args.length != 3)
+        {
+            System.out.println(USAGE_SERVE);
+            return;
+        }
+        try
+        {
+            int port = Integer.parseInt(args[1]);
+            int computeThreads = args.length > 2 ? Integer.parseInt(args[2])
+                    : Runtime.getRuntime().availableProcessors();
+            FillService service = new FillService(port, computeThreads);
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                    service.stop(STOP_DELAY_SECONDS)));
+            service.start();
+            System.out.printf(SERVING_MSG, service.getPort());
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println(NUMBER_FORMAT_ERROR);
+            System.exit(1);
+        }
+        catch (IOException e)
+        {
+            System.out.println(INVALID_ARGS_ERROR);
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the jobs of a directory or manifest in this JVM, either each on one of a bounded
+     * pool of workers (--batch), or through a decode, preprocess, fill and encode pipeline with
+     * a pool of threads per stage (--pipeline). A job that fails is recorded as failed in the
+     * summary CSV, and the others still run.
+     *
+     * @param args Command-line arguments: --batch [directory or manifest]
+     *             [pixel connectivity] [z] [epsilon] [workers], or --pipeline [directory or
+     *             manifest] [pixel connectivity] [z] [epsilon] [d:p:f:e threads]
+     *             [queue capacity]; connectivity, z and epsilon apply to directory jobs and to
+     *             manifest entries that leave them out.
+     */
+
+    private static void runBatch(String[] args)
+    {
+        boolean pipelined = args[0].equals(PIPELINE_FLAG);
+        int maxArgs = pipelined ? MIN_BATCH_ARGS + 2 : MIN_BATCH_ARGS + 1;
+        if (args.length < MIN_BATCH_ARGS || args.length > maxArgs)
+        {
+            System.out.println(pipelined ? USAGE_PIPELINE : USAGE_BATCH);
+            return;
+        }
+        try
+        {
+            String source = args[1];
+            int connectivity = Integer.parseInt(args[2]);
+            int z = Integer.parseInt(args[3]);
+            float e = Float.parseFloat(args[4]);
+            int cores = Runtime.getRuntime().availableProcessors();
+            List<BatchJob> jobs = new BatchManifest(connectivity, z, e).read(source);
+            List<JobSummary> summaries;
+            if (pipelined)
+            {
+                String[] threads = args.length > MIN_BATCH_ARGS
+                        ? args[MIN_BATCH_ARGS].split(CONFIG_SEPARATOR)
+                        : new String[]{"1", "1", String.valueOf(cores), "1"};
+                int capacity = args.length > MIN_BATCH_ARGS + 1
+                        ? Integer.parseInt(args[MIN_BATCH_ARGS + 1]) : DEFAULT_QUEUE_CAPACITY;
+                summaries = new FillPipeline(Integer.parseInt(threads[0]),
+                        Integer.parseInt(threads[1]), Integer.parseInt(threads[2]),
+                        Integer.parseInt(threads[3]), capacity).run(jobs);
+            }
+            else
+            {
+                int workers = args.length > MIN_BATCH_ARGS
+                        ? Integer.parseInt(args[MIN_BATCH_ARGS]) : cores;
+                summaries = new BatchRunner(workers).run(jobs);
+            }
+
+            String summaryPath = Files.isDirectory(Paths.get(source))
+                    ? Paths.get(source, DIRECTORY_SUMMARY).toString()
+                    : source.replaceAll("\\.[^.\\\\/]*$", "") + SUMMARY_SUFFIX;
+            BatchRunner.writeSummary(summaries, summaryPath);
+            long failed = summaries.stream()
+                    .filter(summary -> summary.getStatus() == JobSummary.Status.FAILED).count();
+            System.out.printf(BATCH_DONE_MSG, summaries.size() - failed, failed, summaryPath);
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println(NUMBER_FORMAT_ERROR);
+            System.exit(1);
+        }
+        catch (Exception e)
+        {
+            System.out.println(INVALID_ARGS_ERROR);
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Fills the hole of a colour image, keeping its channels, and saves a colour output.
+     * Uncompressed and baseline JPEG outputs are written by patching only the hole pixels, or
+     * blocks, of a copy of the input. With direct or mapped buffers the image and mask stay
+     * off the heap, but the fill result still needs heap in proportion to the hole, and an
+     * output that cannot be patched or written by the built-in codec (e.g. PNG) is composed
+     * in a heap array of one int per pixel.
+     *
+     * @param args Command-line arguments: --color [image path] [mask path]
+     *             [pixel connectivity] [z] [epsilon]
+     */
+
+    private static void runColor(String[] args)
+    {
+        if (args.length != VALID_NUM_OF_ARGS + 1 && args.length != VALID_NUM_OF_ARGS + 2)
+        {
+            System.out.println(USAGE_COLOR);
+            return;
+        }
+        String buffers = args.length > VALID_NUM_OF_ARGS + 1 ? args[VALID_NUM_OF_ARGS + 1] : "";
+        try (BufferAllocator allocator = allocatorFor(buffers))
+        {
+            String path = args[1];
+            String mask = args[2];
+            int connectivity = Integer.parseInt(args[CONNECTARG + 1]);
+            int z = Integer.parseInt(args[ZARG + 1]);
+            float e = Float.parseFloat(args[E_ARG + 1]);
+            if (connectivity != FOUR_CONNECTED && connectivity != EIGHT_CONNECTED)
+            {
+                throw new Exception(INVALID_CONNECTIVITY_TYPE);
+            }
+            ImageLibraryManager imgManager = new ImageLibraryManager();
+            HoleGeometry geometry;
+            PlanarImage image;
+            if (mask.equals(MaskReader.ALPHA_MASK))
+            {
+                image = imgManager.readColorImage(path, true, IntensityBuffer.StorageMode.BYTE,
+                        allocator);
+                geometry = imgManager.processAlphaMask(image, connectivity, allocator);
+                image = image.withoutAlpha();
+            }
+            else
+            {
+                geometry = imgManager.processMask(mask, connectivity, allocator);
+                image = imgManager.readColorImage(path, false, IntensityBuffer.StorageMode.BYTE,
+                        allocator);
+            }
+            AlgorithmManager algorithmManager = new AlgorithmManager(connectivity, z, e);
+            FillResult result = algorithmManager.runColorAlgorithm(geometry, image);
+            if (!imgManager.patchImage(result, path))
+            {
+                imgManager.saveImage(image, result, path);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println(NUMBER_FORMAT_ERROR);
+            System.exit(1);
+        }
+        catch (Exception e)
+        {
+            System.out.println(INVALID_ARGS_ERROR);
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Fills the hole of a large grayscale image without holding the whole image or mask in
+     * memory: the mask and then the window around the hole are decoded strip by strip, and the
+     * filled hole is patched into a copy of the original file. Formats that cannot be patched
+     * in place (e.g. PNG) are decoded in full to be written.
+     *
+     * @param args Command-line arguments: --stream [image path] [mask path]
+     *             [pixel connectivity] [z] [epsilon] [strip rows]
+     */
+
+    private static void runStreaming(String[] args)
+    {
+        if (args.length != VALID_NUM_OF_ARGS + 1 && args.length != VALID_NUM_OF_ARGS + 2)
+        {
+            System.out.println(USAGE_STREAM);
+            return;
+        }
+        try
+        {
+            String path = args[1];
+            String mask = args[2];
+            int connectivity = Integer.parseInt(args[CONNECTARG + 1]);
+            int z = Integer.parseInt(args[ZARG + 1]);
+            float e = Float.parseFloat(args[E_ARG + 1]);
+            int stripRows = args.length > VALID_NUM_OF_ARGS + 1
+                    ? Integer.parseInt(args[VALID_NUM_OF_ARGS + 1]) : DEFAULT_STRIP_ROWS;
+            if (connectivity != FOUR_CONNECTED && connectivity != EIGHT_CONNECTED)
+            {
+                throw new Exception(INVALID_CONNECTIVITY_TYPE);
+            }
+            ImageLibraryManager imgManager = new ImageLibraryManager();
+            CroppedImageFields fields = imgManager.processImageStreaming(path, mask,
+                    connectivity, stripRows);
+            AlgorithmManager algorithmManager = new AlgorithmManager(connectivity, z, e);
+            FillResult result = fields.toFullImage(algorithmManager.runAlgorithmSparse(fields));
+            if (!imgManager.patchImage(result, path))
+            {
+                imgManager.saveImage(imgManager.readColorImage(path, false,
+                        IntensityBuffer.StorageMode.BYTE), result, path);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println(NUMBER_FORMAT_ERROR);
+            System.exit(1);
+        }
+        catch (Exception e)
+        {
+            System.out.println(INVALID_ARGS_ERROR);
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Fills the hole of a colour image read from standard input or a file, e.g. /dev/fd/3, and
+     * writes the encoded result to standard output, so the utility can sit in a pipeline.
+     * Formats of the inputs are recognized from their data. Log messages go to standard error.
+     *
+     * @param args Command-line arguments: --stdio [image path or -] [mask path, alpha or -]
+     *             [pixel connectivity] [z] [epsilon] [output format]
+     */
+
+    private static void runStdio(String[] args)
+    {
+        if (args.length != VALID_NUM_OF_ARGS + 2)
+        {
+            System.out.println(USAGE_STDIO);
+            return;
+        }
+        WritableByteChannel stdout = Channels.newChannel(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), STDOUT_BUFFER_BYTES));
+        System.setOut(System.err);
+        try
+        {
+            String path = args[1];
+            String mask = args[2];
+            int connectivity = Integer.parseInt(args[CONNECTARG + 1]);
+            int z = Integer.parseInt(args[ZARG + 1]);
+            float e = Float.parseFloat(args[E_ARG + 1]);
+            String format = args[VALID_NUM_OF_ARGS + 1];
+            if (connectivity != FOUR_CONNECTED && connectivity != EIGHT_CONNECTED)
+            {
+                throw new Exception(INVALID_CONNECTIVITY_TYPE);
+            }
+            if (path.equals(STANDARD_STREAM) && mask.equals(STANDARD_STREAM))
+            {
+                throw new Exception(BOTH_FROM_STDIN);
+            }
+            ImageLibraryManager imgManager = new ImageLibraryManager();
+            boolean alphaMask = mask.equals(MaskReader.ALPHA_MASK);
+            PlanarImage image;
+            HoleGeometry geometry;
+            try (ReadableByteChannel imageIn = openInput(path))
+            {
+                image = imgManager.readColorImage(imageIn, alphaMask);
+            }
+            if (alphaMask)
+            {
+                geometry = imgManager.processAlphaMask(image, connectivity,
+                        BufferAllocator.heap());
+                image = image.withoutAlpha();
+            }
+            else if (!mask.equals(STANDARD_STREAM) && MaskReader.supports(mask))
+            {
+                geometry = imgManager.processMask(mask, connectivity);
+            }
+            else
+            {
+                try (ReadableByteChannel maskIn = openInput(mask))
+                {
+                    geometry = imgManager.processMask(maskIn, connectivity);
+                }
+            }
+            AlgorithmManager algorithmManager = new AlgorithmManager(connectivity, z, e);
+            FillResult result = algorithmManager.runColorAlgorithm(geometry, image);
+            imgManager.writeImage(image, result, format, stdout);
+            stdout.close();
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println(NUMBER_FORMAT_ERROR);
+            System.exit(1);
+        }
+        catch (Exception e)
+        {
+            System.out.println(INVALID_ARGS_ERROR);
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Opens a command-line input: "-" for standard input, anything else as a file path.
+     *
+     * @param path The input argument.
+     * @return A channel reading the input.
+     * @throws IOException If the file cannot be opened.
+     */
+
+    private static ReadableByteChannel openInput(String path) throws IOException
+    {
+        if (path.equals(STANDARD_STREAM))
+        {
+            return Channels.newChannel(new FileInputStream(FileDescriptor.in));
+        }
+        return Files.newByteChannel(Paths.get(path));
+    }
+
+    /**
+     * Chooses where large buffers are placed from a command-line value.
+     *
+     * @param buffers "direct" for off-heap memory, "mapped:[dir]" for memory-mapped scratch
+     *                files in dir, anything else for the heap.
+     * @return The matching BufferAllocator.
+     */
+
+    private static BufferAllocator allocatorFor(String buffers)
+    {
+        if (buffers.equals(DIRECT_BUFFERS))
+        {
+            return BufferAllocator.offHeap();
+        }
+        if (buffers.startsWith(MAPPED_BUFFERS))
+        {
+            return BufferAllocator.mapped(Paths.get(buffers.substring(MAPPED_BUFFERS.length())));
+        }
+        return BufferAllocator.heap();
+    }
 }
@@ -1,15 +1,45 @@
 package lib;
 
+import lib.entities.BufferAllocator;
+import lib.entities.BufferArena;
+import lib.entities.CroppedImageFields;
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
+import lib.entities.IntensityBuffer;
+import lib.entities.MaskBitmap;
 import lib.entities.Pixel;
+import lib.entities.PlanarImage;
 import lib.entities.ProcessedImageFields;
+import lib.io.InPlaceImagePatcher;
+import lib.io.JpegBlockPatcher;
+import lib.io.MaskReader;
+import lib.io.NativeImageCodec;
+import lib.io.ParallelImageDecoder;
+import lib.io.ParallelPngEncoder;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 /**
  * Manages image processing operations such as reading, validating,
@@ -20,21 +50,52 @@ public class ImageLibraryManager
 {
     private static final String INVALID_IMAGE_ERROR_MSG = "Error: Invalid image or mask path.";
     private static final String READ_FAILED_ERROR_MSG = "Failed to read image with error: ";
-    private static final String FILLED = "_FILLED.";
+    private static final String FILLED = "_FILLED";
+    private static final String DOT = ".";
     private static final String SAVING_IMAGE_MSG = "Saving image with format:";
     private static final String IMAGE_SAVED_MSG = "Image saved successfully: ";
     private static final String FAILED_TO_SAVE_IMG_MSG = "Failed to save image.";
     private static final String INVALID_FILE_FORMAT = "Invalid image format: ";
     private static final String REGEX_FOR_FORMAT = "(.*)\\.(.*)";
+    private static final String PNG = "png";
+    private static final String JPG = "jpg";
+    private static final String JPEG = "jpeg";
+    private static final String INVALID_PNG_LEVEL = "Invalid PNG compression level: ";
+    private static final int MAX_NUM_COLOR = 255;
+    private static final int RGB_BITS = 24;
+    private static final int[] RGB_MASKS = {0xFF0000, 0xFF00, 0xFF};
+    private static final int[] ARGB_MASKS = {0xFF0000, 0xFF00, 0xFF, 0xFF000000};
+    private static final int HEAD_BYTES = 1024;
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+
+    private final boolean exitOnError;
+    private int pngCompressionLevel = Deflater.DEFAULT_COMPRESSION;
 
     /**
      * Constructs an ImageLibraryManager with specified algorithm parameters.
      */
 
-    public  ImageLibraryManager() {}
+    public  ImageLibraryManager() {
+        this(true);
+    }
 
     /**
-     * Processes the input image and mask, extracting hole and boundary pixels.
+     * Constructs an ImageLibraryManager that either prints failures and exits, as the command
+     * line does, or throws them as ImageProcessingExceptions so that a caller running several
+     * jobs can isolate them.
+     *
+     * @param exitOnError True to exit on failures, false to throw them.
+     */
+
+    public ImageLibraryManager(boolean exitOnError)
+    {
+        this.exitOnError = exitOnError;
+    }
+
+    /**
+     * Processes the input image and mask, extracting hole and boundary pixels. PGM, PPM, PFM
+     * and raw files are read by the built-in codec. The mask may also be a run-length (.rle)
+     * or polygon (.poly) file, or "alpha" to take the hole from the image's alpha channel.
      *
      * @param imagePath Path to the image file.
      * @param maskPath Path to the mask file.
@@ -45,22 +106,95 @@ public class ImageLibraryManager
     public ProcessedImageFields processImage(String imagePath, String maskPath, int connectivity)  {
         try
         {
-            if (isValidImagePath(imagePath) || isValidImagePath(maskPath))
+            boolean alphaMask = maskPath != null && maskPath.equals(MaskReader.ALPHA_MASK);
+            if (isValidImagePath(imagePath) || (!alphaMask && isValidImagePath(maskPath)))
             {
-                System.out.println(INVALID_IMAGE_ERROR_MSG);
-                System.exit(1);
+                fail(INVALID_IMAGE_ERROR_MSG, null);
             }
             ImagePreProcessing preProcessing = new ImagePreProcessing(connectivity);
+            if (alphaMask)
+            {
+                PlanarImage image = readPlanar(imagePath, true);
+                return preProcessing.preProcessImage(image, new MaskReader().fromAlpha(image));
+            }
+            if (MaskReader.supports(maskPath))
+            {
+                return preProcessing.preProcessImage(readPlanar(imagePath, false),
+                        new MaskReader().read(maskPath));
+            }
+            if (NativeImageCodec.supports(imagePath) || NativeImageCodec.supports(maskPath))
+            {
+                return preProcessing.preProcessImage(readPlanar(imagePath, false),
+                        readPlanar(maskPath, false));
+            }
             return preProcessing.preProcessImage(imagePath, maskPath);
         }
         catch (IOException e)
         {
-            System.out.println(READ_FAILED_ERROR_MSG + e.getMessage());
-            System.exit(1);
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Processes the input image and mask strip by strip, decoding only the window of the image
+     * that contains the hole and its boundary.
+     *
+     * @param imagePath Path to the image file.
+     * @param maskPath Path to the mask file.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @param stripHeight The number of rows decoded at a time, at least 1.
+     * @return CroppedImageFields covering the hole's bounding box grown by one pixel.
+     * @throws IllegalArgumentException If stripHeight is not positive.
+     */
+
+    public CroppedImageFields processImageStreaming(String imagePath, String maskPath,
+                                                    int connectivity, int stripHeight)
+    {
+        try
+        {
+            if (isValidImagePath(imagePath) || isValidImagePath(maskPath))
+            {
+                fail(INVALID_IMAGE_ERROR_MSG, null);
+            }
+            ImagePreProcessing preProcessing = new ImagePreProcessing(connectivity);
+            return preProcessing.preProcessImageStreaming(imagePath, maskPath, stripHeight);
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
         }
         return null;
     }
 
+    /**
+     * Sets the deflate level of PNG outputs, which are compressed on all available cores.
+     *
+     * @param level The compression level, 0-9, or -1 for the default.
+     */
+
+    public void setPngCompressionLevel(int level)
+    {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+        {
+            fail(INVALID_PNG_LEVEL + level, null);
+        }
+        this.pngCompressionLevel = level;
+    }
+
+    /**
+     * Returns the path saveImage writes the output of an image to.
+     *
+     * @param imagePath The original image path.
+     * @return The absolute output path, name_FILLED.ext next to the original.
+     */
+
+    public String getOutputPath(String imagePath)
+    {
+        Matcher m = matchFormat(imagePath);
+        return new File(m.group(1) + FILLED + DOT + m.group(2)).getAbsolutePath();
+    }
+
     /**
      * Saves the processed image after applying the hole-filling algorithm.
      *
@@ -70,17 +204,34 @@ public class ImageLibraryManager
 
     public void saveImage(Pixel[][] pixelArray, String imagePath)
     {
-        Pattern p = Pattern.compile(REGEX_FOR_FORMAT);
-        Matcher m = p.matcher(imagePath);
+        saveImage(pixelArray, imagePath, "");
+    }
 
-        if (!m.find())
+    /**
+     * Saves the processed image with a tag added to the output filename, e.g. to tell apart the
+     * outputs of a weight-parameter sweep.
+     *
+     * @param pixelArray The 2D array of pixels representing the filled image.
+     * @param imagePath The original image path to determine output filename.
+     * @param tag Text inserted between the "_FILLED" suffix and the extension.
+     */
+
+    public void saveImage(Pixel[][] pixelArray, String imagePath, String tag)
+    {
+        Matcher m = matchFormat(imagePath);
+        if (NativeImageCodec.supports(imagePath))
         {
-            System.out.println(INVALID_FILE_FORMAT);
-            System.exit(1);
+            PlanarImage gray = new PlanarImage(pixelArray[0].length, pixelArray.length, 1);
+            for (int row = 0; row < pixelArray.length; row++)
+            {
+                for (int col = 0; col < pixelArray[0].length; col++)
+                {
+                    gray.set(0, row * pixelArray[0].length + col, pixelArray[row][col].getValue());
+                }
+            }
+            writeNativeImage(gray, null, m.group(1), m.group(2), tag);
+            return;
         }
-
-        String path = m.group(1);
-        String format = m.group(2);
         BufferedImage imageToSave = new BufferedImage(pixelArray[0].length, pixelArray.length, BufferedImage.TYPE_INT_RGB);
 
         for (int x = 0; x < imageToSave.getWidth(); x++)
@@ -92,24 +243,635 @@ public class ImageLibraryManager
                 imageToSave.setRGB(x, y, c.getRGB());
             }
         }
+        writeFilledImage(imageToSave, m.group(1), m.group(2), tag);
+    }
+
+    /**
+     * Reads an image in colour, as planar channel buffers.
+     *
+     * @param imagePath Path to the image file.
+     * @param includeAlpha Whether to keep the alpha channel.
+     * @return A PlanarImage holding the image's channels.
+     */
+
+    public PlanarImage readColorImage(String imagePath, boolean includeAlpha)
+    {
+        return readColorImage(imagePath, includeAlpha, IntensityBuffer.StorageMode.FLOAT);
+    }
+
+    /**
+     * Reads an image in colour, as planar channel buffers of the given storage format.
+     *
+     * @param imagePath Path to the image file.
+     * @param includeAlpha Whether to keep the alpha channel.
+     * @param mode The storage format of the planes.
+     * @return A PlanarImage holding the image's channels.
+     */
+
+    public PlanarImage readColorImage(String imagePath, boolean includeAlpha,
+                                      IntensityBuffer.StorageMode mode)
+    {
+        return readColorImage(imagePath, includeAlpha, mode, BufferAllocator.heap());
+    }
+
+    /**
+     * Reads an image in colour, as planar channel buffers obtained from an allocator.
+     *
+     * @param imagePath Path to the image file.
+     * @param includeAlpha Whether to keep the alpha channel.
+     * @param mode The storage format of the planes.
+     * @param allocator The allocator providing the planes, e.g. off-heap.
+     * @return A PlanarImage holding the image's channels.
+     */
+
+    public PlanarImage readColorImage(String imagePath, boolean includeAlpha,
+                                      IntensityBuffer.StorageMode mode, BufferAllocator allocator)
+    {
+        try
+        {
+            if (isValidImagePath(imagePath))
+            {
+                fail(INVALID_IMAGE_ERROR_MSG, null);
+            }
+            if (NativeImageCodec.supports(imagePath))
+            {
+                return new NativeImageCodec().read(imagePath, mode, allocator);
+            }
+            return new ImagePreProcessing(0).readPlanarImage(imagePath, includeAlpha, mode,
+                    allocator);
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Processes a mask on its own, extracting its hole and boundary pixel indices.
+     *
+     * @param maskPath Path to the mask file.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @return The HoleGeometry of the mask.
+     */
+
+    public HoleGeometry processMask(String maskPath, int connectivity)
+    {
+        return processMask(maskPath, connectivity, BufferAllocator.heap());
+    }
+
+    /**
+     * Processes a mask on its own, keeping its bitmap and indices in buffers obtained from an
+     * allocator. Run-length (.rle) and polygon (.poly) masks are rasterised straight into the
+     * bitmap.
+     *
+     * @param maskPath Path to the mask file.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @param allocator The allocator providing the buffers, e.g. off-heap.
+     * @return The HoleGeometry of the mask.
+     */
+
+    public HoleGeometry processMask(String maskPath, int connectivity, BufferAllocator allocator)
+    {
+        try
+        {
+            if (isValidImagePath(maskPath))
+            {
+                fail(INVALID_IMAGE_ERROR_MSG, null);
+            }
+            ImagePreProcessing preProcessing = new ImagePreProcessing(connectivity);
+            if (MaskReader.supports(maskPath))
+            {
+                return preProcessing.preProcessMask(new MaskReader().read(maskPath), allocator);
+            }
+            if (NativeImageCodec.supports(maskPath))
+            {
+                return preProcessing.preProcessMask(new NativeImageCodec().read(maskPath,
+                        IntensityBuffer.StorageMode.FLOAT, allocator), allocator);
+            }
+            return preProcessing.preProcessMask(maskPath, allocator);
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a mask into a hole bitmap without extracting its boundary, so that reading and
+     * boundary extraction can run as separate steps.
+     *
+     * @param maskPath Path to the mask file, or "alpha" to use the image's alpha channel.
+     * @param image The image the mask belongs to; only read for alpha masks.
+     * @return The hole bitmap.
+     */
+
+    public MaskBitmap readMask(String maskPath, PlanarImage image)
+    {
+        try
+        {
+            if (MaskReader.ALPHA_MASK.equals(maskPath))
+            {
+                return new MaskReader().fromAlpha(image);
+            }
+            if (isValidImagePath(maskPath))
+            {
+                fail(INVALID_IMAGE_ERROR_MSG, null);
+            }
+            if (MaskReader.supports(maskPath))
+            {
+                return new MaskReader().read(maskPath);
+            }
+            return new ImagePreProcessing(0).thresholdMask(readPlanar(maskPath, false));
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the hole and boundary pixel indices of a hole bitmap.
+     *
+     * @param mask The hole bitmap.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @param allocator The allocator providing the index buffers, e.g. off-heap.
+     * @return The HoleGeometry of the mask.
+     */
+
+    public HoleGeometry processMask(MaskBitmap mask, int connectivity, BufferAllocator allocator)
+    {
+        try
+        {
+            return new ImagePreProcessing(connectivity).preProcessMask(mask, allocator);
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the hole and boundary pixels of an image already read, for the grayscale
+     * algorithms.
+     *
+     * @param image The image; colour images are converted to grayscale.
+     * @param mask The hole bitmap.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @return A ProcessedImageFields object containing processed pixel data.
+     */
+
+    public ProcessedImageFields processImage(PlanarImage image, MaskBitmap mask,
+                                             int connectivity)
+    {
+        try
+        {
+            return new ImagePreProcessing(connectivity).preProcessImage(image, mask);
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Processes the alpha channel of an image as its mask: pixels less than half opaque are
+     * holes. The image is decoded once and serves as both image and mask.
+     *
+     * @param image The image, read with its alpha channel.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @param allocator The allocator providing the index buffers, e.g. off-heap.
+     * @return The HoleGeometry of the alpha mask.
+     */
+
+    public HoleGeometry processAlphaMask(PlanarImage image, int connectivity,
+                                         BufferAllocator allocator)
+    {
+        try
+        {
+            return new ImagePreProcessing(connectivity).preProcessMask(
+                    new MaskReader().fromAlpha(image), allocator);
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Saves a colour image after applying a colour fill. The hole values are taken from the
+     * fill result at full precision and only quantized to 8 bits per channel when written.
+     * Single-channel images are written as gray.
+     *
+     * @param image The planar source image.
+     * @param result The colour fill result of the image's hole.
+     * @param imagePath The original image path to determine output filename.
+     */
+
+    public void saveImage(PlanarImage image, FillResult result, String imagePath)
+    {
+        Matcher m = matchFormat(imagePath);
+        if (NativeImageCodec.supports(imagePath))
+        {
+            writeNativeImage(image, result, m.group(1), m.group(2), "");
+            return;
+        }
+        BufferedImage imageToSave = composeImage(image, result,
+                image.hasAlpha() && m.group(2).equalsIgnoreCase(PNG));
+        try
+        {
+            writeFilledImage(imageToSave, m.group(1), m.group(2), "");
+        }
+        finally
+        {
+            releasePixels(imageToSave);
+        }
+    }
+
+    /**
+     * Reads an image in colour from a channel, e.g. standard input. The format is recognized
+     * from the data: PGM, PPM, PFM and raw data use the built-in codec, anything else ImageIO.
+     *
+     * @param channel The channel to read the encoded image from.
+     * @return A PlanarImage holding the image's channels.
+     */
+
+    public PlanarImage readColorImage(ReadableByteChannel channel)
+    {
+        return readColorImage(channel, false);
+    }
+
+    /**
+     * Reads an image in colour from a channel, optionally keeping the alpha channel of images
+     * read with ImageIO.
+     *
+     * @param channel The channel to read the encoded image from.
+     * @param includeAlpha Whether to keep the alpha channel.
+     * @return A PlanarImage holding the image's channels.
+     */
+
+    public PlanarImage readColorImage(ReadableByteChannel channel, boolean includeAlpha)
+    {
+        try
+        {
+            return readPlanar(readFully(channel), includeAlpha);
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Processes a mask read from a channel, e.g. standard input.
+     *
+     * @param channel The channel to read the encoded mask from.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @return The HoleGeometry of the mask.
+     */
+
+    public HoleGeometry processMask(ReadableByteChannel channel, int connectivity)
+    {
+        try
+        {
+            return new ImagePreProcessing(connectivity).preProcessMask(
+                    readPlanar(readFully(channel), false), BufferAllocator.heap());
+        }
+        catch (IOException e)
+        {
+            fail(READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Encodes a filled colour image to a channel, e.g. standard output, instead of saving it
+     * next to the original.
+     *
+     * @param image The planar source image.
+     * @param result The colour fill result of the image's hole.
+     * @param format The output format, e.g. png, jpg or ppm.
+     * @param channel The channel to write to; it is flushed but not closed.
+     */
+
+    public void writeImage(PlanarImage image, FillResult result, String format,
+                           WritableByteChannel channel)
+    {
+        try
+        {
+            if (NativeImageCodec.supports(DOT + format))
+            {
+                new NativeImageCodec().write(image, result, format, channel);
+                return;
+            }
+            BufferedImage imageToSave = composeImage(image, result,
+                    image.hasAlpha() && format.equalsIgnoreCase(PNG));
+            try
+            {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                if (format.equalsIgnoreCase(PNG))
+                {
+                    new ParallelPngEncoder(Runtime.getRuntime().availableProcessors(),
+                            pngCompressionLevel).write(imageToSave, out);
+                }
+                else if (!ImageIO.write(imageToSave, format, out))
+                {
+                    throw new IOException(INVALID_FILE_FORMAT + format);
+                }
+                out.flush();
+            }
+            finally
+            {
+                releasePixels(imageToSave);
+            }
+        }
+        catch (IOException e)
+        {
+            fail(FAILED_TO_SAVE_IMG_MSG + " " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Saves a filled image by copying the original file and overwriting only its hole pixels,
+     * which is possible for uncompressed BMP, PGM/PPM and TIFF files, or, for baseline JPEG
+     * files, by re-encoding only the blocks that contain hole pixels.
+     *
+     * @param result The fill result of the image's hole.
+     * @param imagePath The original image path to determine output filename.
+     * @return True if the image was saved, false if its format cannot be patched in place.
+     */
+
+    public boolean patchImage(FillResult result, String imagePath)
+    {
+        Matcher m = matchFormat(imagePath);
+        File output = new File(m.group(1) + FILLED + DOT + m.group(2));
+        try
+        {
+            boolean jpeg = m.group(2).equalsIgnoreCase(JPG) || m.group(2).equalsIgnoreCase(JPEG);
+            boolean patched = jpeg
+                    ? new JpegBlockPatcher().patch(imagePath, output.getPath(), result)
+                    : new InPlaceImagePatcher().patch(imagePath, output.getPath(), result);
+            if (!patched)
+            {
+                return false;
+            }
+            System.out.println(IMAGE_SAVED_MSG + output.getAbsolutePath());
+            return true;
+        }
+        catch (IOException e)
+        {
+            fail(FAILED_TO_SAVE_IMG_MSG + " " + e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Builds the filled image to encode from a planar image and its fill result. The pixels are
+     * written straight into an array taken from the shared BufferArena, which backs the
+     * returned image; release it with releasePixels once the image is encoded. The array holds
+     * one int per pixel on the heap, whatever the placement of the planar image.
+     *
+     * @param image The planar source image.
+     * @param result The fill result of the image's hole.
+     * @param alpha Whether to keep the alpha channel.
+     * @return The filled image, of type TYPE_INT_ARGB or TYPE_INT_RGB.
+     */
+
+    private BufferedImage composeImage(PlanarImage image, FillResult result, boolean alpha)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int size = width * height;
+
+        boolean color = image.getChannels() > PlanarImage.BLUE;
+        int greenChannel = color ? PlanarImage.GREEN : PlanarImage.RED;
+        int blueChannel = color ? PlanarImage.BLUE : PlanarImage.RED;
+        int[] argb = BufferArena.shared().takeInts(size);
+        for (int idx = 0; idx < size; idx++)
+        {
+            argb[idx] = toArgb(image.get(PlanarImage.RED, idx), image.get(greenChannel, idx),
+                    image.get(blueChannel, idx), alpha ? image.get(PlanarImage.ALPHA, idx) : 1f);
+        }
+        int channels = result.getChannels();
+        float[] values = result.getValues();
+        int[] holeIndices = result.getHoleIndices();
+        for (int h = 0; h < holeIndices.length; h++)
+        {
+            int base = h * channels;
+            float red = values[base];
+            float green = channels > PlanarImage.GREEN ? values[base + PlanarImage.GREEN] : red;
+            float blue = channels > PlanarImage.BLUE ? values[base + PlanarImage.BLUE] : red;
+            float opacity = alpha && channels > PlanarImage.ALPHA ?
+                    values[base + PlanarImage.ALPHA] : 1f;
+            argb[holeIndices[h]] = toArgb(red, green, blue, opacity);
+        }
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(argb, size), width,
+                height, width, alpha ? ARGB_MASKS : RGB_MASKS, null);
+        ColorModel model = alpha ? ColorModel.getRGBdefault()
+                : new DirectColorModel(RGB_BITS, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    /**
+     * Releases the pixel array of an image built by composeImage to the shared BufferArena.
+     *
+     * @param image The encoded image, no longer used.
+     */
+
+    private static void releasePixels(BufferedImage image)
+    {
+        BufferArena.shared().release(((DataBufferInt) image.getRaster().getDataBuffer())
+                .getData());
+    }
+
+    /**
+     * Splits an image path into its name and format, exiting if it has no extension.
+     *
+     * @param imagePath The image path.
+     * @return A matcher whose first group is the name and second group the format.
+     */
+
+    private Matcher matchFormat(String imagePath)
+    {
+        Pattern p = Pattern.compile(REGEX_FOR_FORMAT);
+        Matcher m = p.matcher(imagePath);
+
+        if (!m.find())
+        {
+            fail(INVALID_FILE_FORMAT, null);
+        }
+        return m;
+    }
+
+    /**
+     * Writes a filled image next to the original as name_FILLED[tag].format. PNG files are
+     * compressed in parallel.
+     *
+     * @param imageToSave The image to write.
+     * @param path The original path without its extension.
+     * @param format The image format.
+     * @param tag Text inserted between the "_FILLED" suffix and the extension.
+     */
+
+    private void writeFilledImage(BufferedImage imageToSave, String path, String format,
+                                  String tag)
+    {
         try {
-            File output = new File( path + FILLED  + format);
+            File output = new File( path + FILLED + tag + DOT + format);
             System.out.println(SAVING_IMAGE_MSG + output);
-            boolean success = ImageIO.write(imageToSave,format,output);
+            boolean success = true;
+            if (format.equalsIgnoreCase(PNG))
+            {
+                new ParallelPngEncoder(Runtime.getRuntime().availableProcessors(),
+                        pngCompressionLevel).write(imageToSave, output);
+            }
+            else
+            {
+                success = ImageIO.write(imageToSave,format,output);
+            }
             if (success)
             {
                 System.out.println(IMAGE_SAVED_MSG + output.getAbsolutePath());
             }
-            else
+            else if (exitOnError)
             {
                 System.out.println(FAILED_TO_SAVE_IMG_MSG);
             }
+            else
+            {
+                throw new ImageProcessingException(FAILED_TO_SAVE_IMG_MSG, null);
+            }
+        }
+        catch (IOException e)
+        {
+            fail(System.err, READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes a filled image with the built-in codec next to the original as
+     * name_FILLED[tag].format.
+     *
+     * @param image The image to write.
+     * @param result The fill result overriding the hole pixels, or null.
+     * @param path The original path without its extension.
+     * @param format The image format.
+     * @param tag Text inserted between the "_FILLED" suffix and the extension.
+     */
+
+    private void writeNativeImage(PlanarImage image, FillResult result, String path,
+                                  String format, String tag)
+    {
+        try
+        {
+            File output = new File(path + FILLED + tag + DOT + format);
+            System.out.println(SAVING_IMAGE_MSG + output);
+            new NativeImageCodec().write(image, result, output.getPath());
+            System.out.println(IMAGE_SAVED_MSG + output.getAbsolutePath());
         }
         catch (IOException e)
         {
-            System.err.println(READ_FAILED_ERROR_MSG + e.getMessage());
-            System.exit(1);
+            fail(System.err, READ_FAILED_ERROR_MSG + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads an image as float planes on the heap with the built-in codec or ImageIO, by
+     * extension.
+     *
+     * @param path Path to the image file.
+     * @param includeAlpha Whether to keep the alpha channel of images read with ImageIO.
+     * @return The PlanarImage read.
+     * @throws IOException If an error occurs while reading the image.
+     */
+
+    private PlanarImage readPlanar(String path, boolean includeAlpha) throws IOException
+    {
+        if (NativeImageCodec.supports(path))
+        {
+            return new NativeImageCodec().read(path, IntensityBuffer.StorageMode.FLOAT,
+                    BufferAllocator.heap());
+        }
+        return new ImagePreProcessing(0).readPlanarImage(path, includeAlpha,
+                IntensityBuffer.StorageMode.FLOAT, BufferAllocator.heap());
+    }
+
+    /**
+     * Decodes an image held in memory with the built-in codec or ImageIO, by its first bytes.
+     *
+     * @param encoded The encoded image.
+     * @param includeAlpha Whether to keep the alpha channel of images read with ImageIO.
+     * @return The PlanarImage read.
+     * @throws IOException If an error occurs while decoding the image.
+     */
+
+    private PlanarImage readPlanar(byte[] encoded, boolean includeAlpha) throws IOException
+    {
+        byte[] head = Arrays.copyOf(encoded, Math.min(encoded.length, HEAD_BYTES));
+        if (NativeImageCodec.recognizes(head))
+        {
+            return new NativeImageCodec().read(Channels.newChannel(
+                    new ByteArrayInputStream(encoded)), IntensityBuffer.StorageMode.FLOAT,
+                    BufferAllocator.heap());
+        }
+        return new ParallelImageDecoder(Runtime.getRuntime().availableProcessors()).decode(
+                encoded, includeAlpha ? 4 : 3, IntensityBuffer.StorageMode.FLOAT,
+                BufferAllocator.heap());
+    }
+
+    private static byte[] readFully(ReadableByteChannel channel) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES);
+        while (channel.read(buffer) >= 0)
+        {
+            bytes.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int toArgb(float red, float green, float blue, float alpha)
+    {
+        return (toByte(alpha) << 24) | (toByte(red) << 16) | (toByte(green) << 8) | toByte(blue);
+    }
+
+    private static int toByte(float value)
+    {
+        return Math.max(0, Math.min(MAX_NUM_COLOR, Math.round(value * MAX_NUM_COLOR)));
+    }
+
+    /**
+     * Reports a failure on standard output, see {@link #fail(PrintStream, String, Throwable)}.
+     */
+
+    private void fail(String message, Throwable cause)
+    {
+        fail(System.out, message, cause);
+    }
+
+    /**
+     * Reports a failure: prints it and exits, or throws it when failures are isolated.
+     *
+     * @param out The stream the message is printed to before exiting.
+     * @param message The failure message.
+     * @param cause The underlying exception, or null.
+     */
+
+    private void fail(PrintStream out, String message, Throwable cause)
+    {
+        if (!exitOnError)
+        {
+            throw new ImageProcessingException(message, cause);
         }
+        out.println(message);
+        System.exit(1);
     }
 
     /**
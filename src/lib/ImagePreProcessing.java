@@ -1,14 +1,27 @@
 package lib;
 
+import lib.entities.BufferAllocator;
+import lib.entities.CroppedImageFields;
+import lib.entities.HoleGeometry;
+import lib.entities.IntensityBuffer;
+import lib.entities.MaskBitmap;
 import lib.entities.Pixel;
+import lib.entities.PlanarImage;
 import lib.entities.ProcessedImageFields;
+import lib.io.ParallelImageDecoder;
 
 import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.awt.*;
 import java.util.HashSet;
+import java.util.Iterator;
 
 /**
  * Handles preprocessing of an image and its corresponding mask.
@@ -23,6 +36,9 @@ public class ImagePreProcessing {
     private static final double BLUE_FACTOR = 0.114;
 
     private static final float HOLE_VALUE = -1f;
+    private static final int MASK_STRIP_PIXELS = 1 << 22;
+    private static final String INVALID_STRIP_HEIGHT = "Strip height must be positive: ";
+    private static final String NO_READER = "No image reader for: ";
     private final int connectivity;
     private final int[][] DIRECTIONS = {{-1, 0}, {0, 1}, {1, 0}, {0, -1}, {-1, -1}, {-1, 1}, {1,
             -1}, {1, 1}
@@ -55,7 +71,13 @@ public class ImagePreProcessing {
         HashSet<Pixel> boundarySet = new HashSet<>();
 
         BufferedImage imageToEdit = ImageIO.read(new File(imageToEditPath));
+        if (imageToEdit == null) {
+            throw new IOException(NO_READER + imageToEditPath);
+        }
         BufferedImage mask = ImageIO.read(new File(maskPath));
+        if (mask == null) {
+            throw new IOException(NO_READER + maskPath);
+        }
 
         int width = mask.getWidth();
         int height = mask.getHeight();
@@ -91,6 +113,456 @@ public class ImagePreProcessing {
         return new ProcessedImageFields(pixelArr, holeSet, boundarySet);
     }
 
+    /**
+     * Reads an image as grayscale pixels without applying any mask.
+     *
+     * @param imagePath Path to the image file.
+     * @return A 2D array of Pixels holding the grayscale intensity of every pixel.
+     * @throws IOException If an error occurs while reading the image.
+     */
+
+    public Pixel[][] readGrayScale(String imagePath) throws IOException {
+        BufferedImage image = ImageIO.read(new File(imagePath));
+        if (image == null) {
+            throw new IOException();
+        }
+        Pixel[][] pixelArr = new Pixel[image.getHeight()][image.getWidth()];
+        for (int row = 0; row < image.getHeight(); row++) {
+            for (int col = 0; col < image.getWidth(); col++) {
+                pixelArr[row][col] = new Pixel(row, col,
+                        convertToGrayScale(new Color(image.getRGB(col, row))));
+            }
+        }
+        return pixelArr;
+    }
+
+    /**
+     * Reads an image into planar colour buffers, keeping every channel instead of collapsing
+     * the image to grayscale.
+     *
+     * @param imagePath    Path to the image file.
+     * @param includeAlpha Whether to keep the alpha channel as a fourth plane.
+     * @return A PlanarImage holding the normalized channel values.
+     * @throws IOException If an error occurs while reading the image.
+     */
+
+    public PlanarImage readPlanarImage(String imagePath, boolean includeAlpha) throws
+            IOException {
+        return readPlanarImage(imagePath, includeAlpha, IntensityBuffer.StorageMode.FLOAT);
+    }
+
+    /**
+     * Reads an image into planar colour buffers of the given storage format. 8-bit storage
+     * keeps the source bytes as they are.
+     *
+     * @param imagePath    Path to the image file.
+     * @param includeAlpha Whether to keep the alpha channel as a fourth plane.
+     * @param mode         The storage format of the planes.
+     * @return A PlanarImage holding the channel values.
+     * @throws IOException If an error occurs while reading the image.
+     */
+
+    public PlanarImage readPlanarImage(String imagePath, boolean includeAlpha,
+                                       IntensityBuffer.StorageMode mode) throws IOException {
+        return readPlanarImage(imagePath, includeAlpha, mode, BufferAllocator.heap());
+    }
+
+    /**
+     * Reads an image into planar colour buffers obtained from an allocator, e.g. off-heap or
+     * memory-mapped planes. Large images are decoded in parallel regions straight into the
+     * planes.
+     *
+     * @param imagePath    Path to the image file.
+     * @param includeAlpha Whether to keep the alpha channel as a fourth plane.
+     * @param mode         The storage format of the planes.
+     * @param allocator    The allocator providing the planes.
+     * @return A PlanarImage holding the channel values.
+     * @throws IOException If an error occurs while reading the image.
+     */
+
+    public PlanarImage readPlanarImage(String imagePath, boolean includeAlpha,
+                                       IntensityBuffer.StorageMode mode,
+                                       BufferAllocator allocator) throws IOException {
+        ParallelImageDecoder decoder = new ParallelImageDecoder(
+                Runtime.getRuntime().availableProcessors());
+        return decoder.decode(imagePath, includeAlpha ? 4 : 3, mode, allocator);
+    }
+
+    /**
+     * Processes a mask on its own, extracting the hole and boundary pixel indices.
+     *
+     * @param maskPath Path to the mask image.
+     * @return The HoleGeometry of the mask.
+     * @throws IOException If an error occurs while reading the mask.
+     */
+
+    public HoleGeometry preProcessMask(String maskPath) throws IOException {
+        return preProcessMask(maskPath, BufferAllocator.heap());
+    }
+
+    /**
+     * Processes a mask on its own, keeping the hole bitmap and the hole and boundary indices
+     * in buffers obtained from an allocator, e.g. off-heap ones.
+     *
+     * @param maskPath  Path to the mask image.
+     * @param allocator The allocator providing the bitmap and index buffers.
+     * @return The HoleGeometry of the mask.
+     * @throws IOException If an error occurs while reading the mask.
+     */
+
+    public HoleGeometry preProcessMask(String maskPath, BufferAllocator allocator) throws
+            IOException {
+        ImageReader reader = openReader(maskPath);
+        try {
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            MaskBitmap hole = new MaskBitmap(width, height,
+                    allocator.allocate(((long) width * height + 7) / 8));
+            readMaskStrips(reader, hole, Math.max(1, MASK_STRIP_PIXELS / width));
+            return preProcessMask(hole, allocator);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Processes a mask already held as planar buffers, e.g. one read without ImageIO.
+     *
+     * @param mask      The mask image; pixels darker than half intensity are holes.
+     * @param allocator The allocator providing the bitmap and index buffers.
+     * @return The HoleGeometry of the mask.
+     * @throws IOException If the buffers cannot be allocated.
+     */
+
+    public HoleGeometry preProcessMask(PlanarImage mask, BufferAllocator allocator) throws
+            IOException {
+        MaskBitmap hole = new MaskBitmap(mask.getWidth(), mask.getHeight(),
+                allocator.allocate(((long) mask.getWidth() * mask.getHeight() + 7) / 8));
+        thresholdInto(mask, hole);
+        return preProcessMask(hole, allocator);
+    }
+
+    /**
+     * Processes a mask given directly as a hole bitmap, e.g. one built from run-length spans,
+     * polygons or an alpha channel. Only the hole's bounding box grown by one pixel is scanned.
+     *
+     * @param mask      The hole bitmap.
+     * @param allocator The allocator providing the index buffers.
+     * @return The HoleGeometry of the mask.
+     * @throws IOException If the buffers cannot be allocated.
+     */
+
+    public HoleGeometry preProcessMask(MaskBitmap mask, BufferAllocator allocator) throws
+            IOException {
+        int width = mask.getWidth();
+        int height = mask.getHeight();
+        ByteBuffer hole = mask.getBits();
+        int top = Math.max(0, mask.getTop() - 1);
+        int bottom = Math.min(height - 1, mask.getBottom() + 1);
+        int left = Math.max(0, mask.getLeft() - 1);
+        int right = Math.min(width - 1, mask.getRight() + 1);
+
+        int boundCount = 0;
+        for (int row = top; row <= bottom; row++) {
+            for (int col = left; col <= right; col++) {
+                if (!getBit(hole, row * width + col) && isBoundary(hole, width, height, row, col)) {
+                    boundCount++;
+                }
+            }
+        }
+
+        IntBuffer holeIndices = allocator.allocateIndices(mask.getHoleCount());
+        IntBuffer boundaryIndices = allocator.allocateIndices(boundCount);
+        for (int row = top; row <= bottom; row++) {
+            for (int col = left; col <= right; col++) {
+                int idx = row * width + col;
+                if (getBit(hole, idx)) {
+                    holeIndices.put(idx);
+                } else if (isBoundary(hole, width, height, row, col)) {
+                    boundaryIndices.put(idx);
+                }
+            }
+        }
+        holeIndices.flip();
+        boundaryIndices.flip();
+        return new HoleGeometry(width, height, holeIndices, boundaryIndices);
+    }
+
+    /**
+     * Processes an image and its mask already held as planar buffers, e.g. ones read without
+     * ImageIO. Colour images are converted to grayscale.
+     *
+     * @param imageToEdit The image that needs hole filling.
+     * @param mask        The mask image; pixels darker than half intensity are holes.
+     * @return ProcessedImageFields object containing pixel data, holes, and boundary pixels.
+     * @throws IOException If the image and mask sizes differ.
+     */
+
+    public ProcessedImageFields preProcessImage(PlanarImage imageToEdit, PlanarImage mask)
+            throws IOException {
+        return preProcessImage(imageToEdit, thresholdMask(mask));
+    }
+
+    /**
+     * Converts a mask image into a hole bitmap on the heap, without extracting the boundary.
+     *
+     * @param mask The mask image; pixels darker than half intensity are holes.
+     * @return The hole bitmap.
+     */
+
+    public MaskBitmap thresholdMask(PlanarImage mask) {
+        MaskBitmap hole = new MaskBitmap(mask.getWidth(), mask.getHeight());
+        thresholdInto(mask, hole);
+        return hole;
+    }
+
+    /**
+     * Processes an image whose mask is given directly as a hole bitmap. Colour images are
+     * converted to grayscale.
+     *
+     * @param imageToEdit The image that needs hole filling.
+     * @param mask        The hole bitmap.
+     * @return ProcessedImageFields object containing pixel data, holes, and boundary pixels.
+     * @throws IOException If the image and mask sizes differ.
+     */
+
+    public ProcessedImageFields preProcessImage(PlanarImage imageToEdit, MaskBitmap mask)
+            throws IOException {
+        int width = mask.getWidth();
+        int height = mask.getHeight();
+        if (width != imageToEdit.getWidth() || height != imageToEdit.getHeight()) {
+            throw new IOException();
+        }
+        ByteBuffer hole = mask.getBits();
+
+        HashSet<Pixel> holeSet = new HashSet<>();
+        HashSet<Pixel> boundarySet = new HashSet<>();
+        Pixel[][] pixelArr = new Pixel[height][width];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int idx = row * width + col;
+                if (getBit(hole, idx)) {
+                    pixelArr[row][col] = new Pixel(row, col, HOLE_VALUE);
+                    holeSet.add(pixelArr[row][col]);
+                } else {
+                    pixelArr[row][col] = new Pixel(row, col, intensityOf(imageToEdit, idx));
+                    if (isBoundary(hole, width, height, row, col)) {
+                        boundarySet.add(pixelArr[row][col]);
+                    }
+                }
+            }
+        }
+        return new ProcessedImageFields(pixelArr, holeSet, boundarySet);
+    }
+
+    /**
+     * Processes an image and its mask without decoding either one fully. The mask is read strip
+     * by strip to build a one bit per pixel hole bitmap and find the hole's extent; then only
+     * the window of the image that contains the hole and its boundary is decoded, again strip
+     * by strip.
+     *
+     * @param imageToEditPath Path to the image that needs hole filling.
+     * @param maskPath        Path to the mask image.
+     * @param stripHeight     The number of rows decoded at a time, at least 1.
+     * @return CroppedImageFields covering the hole's bounding box grown by one pixel.
+     * @throws IOException If an error occurs while reading images.
+     */
+
+    public CroppedImageFields preProcessImageStreaming(String imageToEditPath, String maskPath,
+                                                       int stripHeight) throws IOException {
+        if (stripHeight <= 0) {
+            throw new IllegalArgumentException(INVALID_STRIP_HEIGHT + stripHeight);
+        }
+        ImageReader maskReader = openReader(maskPath);
+        ImageReader imageReader;
+        try {
+            imageReader = openReader(imageToEditPath);
+        } catch (IOException e) {
+            close(maskReader);
+            throw e;
+        }
+        try {
+            int width = maskReader.getWidth(0);
+            int height = maskReader.getHeight(0);
+            if (width != imageReader.getWidth(0) || height != imageReader.getHeight(0)) {
+                throw new IOException();
+            }
+
+            ByteBuffer hole = ByteBuffer.allocate((int) (((long) width * height + 7) / 8));
+            int top = height;
+            int bottom = -1;
+            int left = width;
+            int right = -1;
+            for (int y = 0; y < height; y += stripHeight) {
+                BufferedImage strip = readStrip(maskReader, 0, y, width,
+                        Math.min(stripHeight, height - y));
+                for (int row = 0; row < strip.getHeight(); row++) {
+                    for (int col = 0; col < width; col++) {
+                        Color colorOfMaskPixel = new Color(strip.getRGB(col, row));
+                        if (convertToGrayScale(colorOfMaskPixel) < THRESHOLD_FOR_MASKING) {
+                            setBit(hole, (y + row) * width + col);
+                            top = Math.min(top, y + row);
+                            bottom = Math.max(bottom, y + row);
+                            left = Math.min(left, col);
+                            right = Math.max(right, col);
+                        }
+                    }
+                }
+            }
+            if (bottom < 0) {
+                top = bottom = left = right = 0;
+            }
+
+            int windowTop = Math.max(0, top - 1);
+            int windowLeft = Math.max(0, left - 1);
+            int windowHeight = Math.min(height - 1, bottom + 1) - windowTop + 1;
+            int windowWidth = Math.min(width - 1, right + 1) - windowLeft + 1;
+
+            HashSet<Pixel> holeSet = new HashSet<>();
+            HashSet<Pixel> boundarySet = new HashSet<>();
+            Pixel[][] pixelArr = new Pixel[windowHeight][windowWidth];
+            for (int y = 0; y < windowHeight; y += stripHeight) {
+                BufferedImage strip = readStrip(imageReader, windowLeft, windowTop + y,
+                        windowWidth, Math.min(stripHeight, windowHeight - y));
+                for (int row = 0; row < strip.getHeight(); row++) {
+                    int imageRow = windowTop + y + row;
+                    for (int col = 0; col < windowWidth; col++) {
+                        int imageCol = windowLeft + col;
+                        float valueOfImagePixel = convertToGrayScale(new Color(strip.getRGB(col,
+                                row)));
+                        boolean isHole = getBit(hole, imageRow * width + imageCol);
+                        if (isHole) {
+                            valueOfImagePixel = HOLE_VALUE;
+                        }
+                        Pixel pixel = new Pixel(y + row, col, valueOfImagePixel);
+                        pixelArr[y + row][col] = pixel;
+                        if (isHole) {
+                            holeSet.add(pixel);
+                        } else if (isBoundary(hole, width, height, imageRow, imageCol)) {
+                            boundarySet.add(pixel);
+                        }
+                    }
+                }
+            }
+            return new CroppedImageFields(pixelArr, holeSet, boundarySet, windowTop, windowLeft,
+                    width, height);
+        } finally {
+            close(maskReader);
+            close(imageReader);
+        }
+    }
+
+    /**
+     * Thresholds a mask into a hole bitmap one strip of rows at a time, so that only a strip of
+     * the decoded mask is on the heap at once.
+     *
+     * @param reader      A reader positioned on the mask.
+     * @param hole        The bitmap receiving the hole pixels, of the mask's size.
+     * @param stripHeight The number of rows decoded at a time.
+     * @throws IOException If an error occurs while decoding.
+     */
+
+    private void readMaskStrips(ImageReader reader, MaskBitmap hole, int stripHeight)
+            throws IOException {
+        int width = hole.getWidth();
+        int height = hole.getHeight();
+        int[] rowArgb = new int[width];
+        for (int y = 0; y < height; y += stripHeight) {
+            BufferedImage strip = readStrip(reader, 0, y, width,
+                    Math.min(stripHeight, height - y));
+            for (int row = 0; row < strip.getHeight(); row++) {
+                strip.getRGB(0, row, width, 1, rowArgb, 0, width);
+                for (int col = 0; col < width; col++) {
+                    if (convertToGrayScale(new Color(rowArgb[col])) < THRESHOLD_FOR_MASKING) {
+                        hole.setHole(y + row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens an image reader on a file without decoding it.
+     *
+     * @param path Path to the image file.
+     * @return An ImageReader positioned on the file.
+     * @throws IOException If no reader supports the file.
+     */
+
+    private ImageReader openReader(String path) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(new File(path));
+        if (input == null) {
+            throw new IOException();
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException();
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    /**
+     * Decodes a rectangular region of the first image of a reader.
+     *
+     * @param reader The image reader.
+     * @param x      The region's left column.
+     * @param y      The region's top row.
+     * @param width  The region's width.
+     * @param height The region's height.
+     * @return The decoded region.
+     * @throws IOException If an error occurs while decoding.
+     */
+
+    private BufferedImage readStrip(ImageReader reader, int x, int y, int width, int height)
+            throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(x, y, width, height));
+        return reader.read(0, param);
+    }
+
+    /**
+     * Disposes of a reader opened by openReader and closes its input stream.
+     *
+     * @param reader The reader.
+     * @throws IOException If the stream cannot be closed.
+     */
+
+    private void close(ImageReader reader) throws IOException {
+        Object input = reader.getInput();
+        reader.dispose();
+        if (input instanceof ImageInputStream) {
+            ((ImageInputStream) input).close();
+        }
+    }
+
+    /**
+     * Determines if a non-hole pixel touches the hole, using a hole bitmap.
+     *
+     * @param hole   Row-major hole bitmap, one bit per pixel.
+     * @param width  The image width.
+     * @param height The image height.
+     * @param rowIdx Row index of the pixel.
+     * @param colIdx Column index of the pixel.
+     * @return True if the pixel is a boundary pixel, otherwise false.
+     */
+
+    private boolean isBoundary(ByteBuffer hole, int width, int height, int rowIdx, int colIdx) {
+        for (int connection = 0; connection < connectivity; connection++) {
+            int row = rowIdx + DIRECTIONS[connection][0];
+            int col = colIdx + DIRECTIONS[connection][1];
+            if (row < 0 || row >= height || col < 0 || col >= width) {
+                continue;
+            }
+            if (getBit(hole, row * width + col)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Determines if a pixel is part of the boundary of the hole.
      *
@@ -117,6 +589,25 @@ public class ImagePreProcessing {
         return false;
     }
 
+    private static void thresholdInto(PlanarImage mask, MaskBitmap hole) {
+        int width = mask.getWidth();
+        for (int row = 0; row < mask.getHeight(); row++) {
+            for (int col = 0; col < width; col++) {
+                if (intensityOf(mask, row * width + col) < THRESHOLD_FOR_MASKING) {
+                    hole.setHole(row, col);
+                }
+            }
+        }
+    }
+
+    private static void setBit(ByteBuffer bitmap, int index) {
+        bitmap.put(index >>> 3, (byte) (bitmap.get(index >>> 3) | (1 << (index & 7))));
+    }
+
+    private static boolean getBit(ByteBuffer bitmap, int index) {
+        return (bitmap.get(index >>> 3) & (1 << (index & 7))) != 0;
+    }
+
     /**
      * Converts a color to grayscale using weighted RGB values.
      *
@@ -131,4 +622,21 @@ public class ImagePreProcessing {
                         (c.getBlue() * BLUE_FACTOR)));
         return avgForGrayScale / MAX_NUM_COLOR;
     }
+
+    /**
+     * Returns the grayscale intensity of a pixel of a planar image.
+     *
+     * @param image The planar image.
+     * @param idx   The row-major pixel index.
+     * @return The intensity, weighted over the colour channels of colour images.
+     */
+
+    private static float intensityOf(PlanarImage image, int idx) {
+        if (image.getChannels() <= PlanarImage.BLUE) {
+            return image.get(PlanarImage.RED, idx);
+        }
+        return (float) (image.get(PlanarImage.RED, idx) * RED_FACTOR +
+                image.get(PlanarImage.GREEN, idx) * GREEN_FACTOR +
+                image.get(PlanarImage.BLUE, idx) * BLUE_FACTOR);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package lib;
+
+/**
+ * Signals that an image or mask could not be read, processed or saved by an
+ * ImageLibraryManager that reports failures to its caller instead of exiting, e.g. one running
+ * a batch of jobs.
+ */
+
+public class ImageProcessingException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs an ImageProcessingException.
+     *
+     * @param message The failure message.
+     * @param cause The underlying exception, or null.
+     */
+
+    public ImageProcessingException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -1,8 +1,13 @@
 package lib.algorithms;
 
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
 import lib.entities.Pixel;
+import lib.entities.PlanarImage;
 import lib.entities.ProcessedImageFields;
 
+import java.util.List;
+
 /**
  * Manages the execution of the hole-filling algorithm.
  * Handles weight functions, algorithm selection, and execution flow.
@@ -11,11 +16,13 @@ import lib.entities.ProcessedImageFields;
 public class AlgorithmManager
 {
     private static final String APPROXIMATE_ALGORITHM = "ApproximateAlgorithm";
+    private static final String NULL_WEIGHT_FUNC = "WeightFunc is null!";
 
     private final int connectivity;
     private int z;
     private float e;
 
+    private final WeightFunction defaultWeightFunc;
     private WeightFunction weightFunc;
     private FillingAlgorithm algorithm;
 
@@ -32,8 +39,9 @@ public class AlgorithmManager
         this.connectivity = connectivity;
         this.z = z;
         this.e = e;
-        this.weightFunc = (Pixel u, Pixel v) -> ( 1.0f / (float) (Math.pow(defaultCalculate(u,v),
-                z) + e));
+        this.defaultWeightFunc = (Pixel u, Pixel v) -> ( 1.0f / (float) (Math.pow(
+                defaultCalculate(u,v), this.z) + this.e));
+        this.weightFunc = defaultWeightFunc;
         this.algorithm = new DefaultHoleFillingAlgorithm();
 
     }
@@ -50,6 +58,88 @@ public class AlgorithmManager
         return algorithm.evaluatePixels(fields, this.weightFunc);
     }
 
+    /**
+     * Runs the selected hole-filling algorithm without modifying the pixel array.
+     *
+     * @param fields The processed image fields containing hole and boundary pixels.
+     * @return A FillResult holding only the hole indices and their filled values.
+     */
+
+    public FillResult runAlgorithmSparse(ProcessedImageFields fields)
+    {
+        return algorithm.evaluateHoles(fields, this.weightFunc);
+    }
+
+    /**
+     * Fills every channel of a colour image with the default algorithm, computing each weight
+     * once for all channels.
+     *
+     * @param geometry The hole geometry of the mask.
+     * @param image The planar colour image to fill.
+     * @return A FillResult holding every channel's filled values.
+     */
+
+    public FillResult runColorAlgorithm(HoleGeometry geometry, PlanarImage image)
+    {
+        return new ColorFillEngine(this.weightFunc).fill(geometry, image);
+    }
+
+    /**
+     * Fills a batch of images sharing one mask with the default algorithm, computing every
+     * weight once for the whole batch.
+     *
+     * @param maskFields The processed image fields of the shared mask.
+     * @param images The images to fill, all of the mask's size.
+     * @return The same images with their hole pixels filled.
+     */
+
+    public List<Pixel[][]> runBatch(ProcessedImageFields maskFields, List<Pixel[][]> images)
+    {
+        return new BatchedFillEngine(this.weightFunc).fill(maskFields, images);
+    }
+
+    /**
+     * Creates a filler for a sequence of frames sharing one mask, using this manager's weight
+     * function.
+     *
+     * @param maskFields The processed image fields of the shared mask.
+     * @param threshold Boundary changes up to this absolute value are not propagated.
+     * @return A new FrameSequenceFiller.
+     */
+
+    public FrameSequenceFiller openFrameSequence(ProcessedImageFields maskFields, float threshold)
+    {
+        return new FrameSequenceFiller(maskFields, this.weightFunc, threshold);
+    }
+
+    /**
+     * Creates a lazily filled view of the image using the selected algorithm, evaluating hole
+     * pixels only when the region containing them is requested.
+     *
+     * @param fields The processed image fields containing hole and boundary pixels.
+     * @param tileSize The side length of a cached tile, in pixels.
+     * @param maxTiles The maximal number of tiles kept in the cache.
+     * @return A new LazyFilledImage.
+     */
+
+    public LazyFilledImage openLazyView(ProcessedImageFields fields, int tileSize, int maxTiles)
+    {
+        return new LazyFilledImage(fields, this.algorithm, this.weightFunc, tileSize, maxTiles);
+    }
+
+    /**
+     * Opens an incremental fill session over an image, using this manager's connectivity and
+     * weight function. The session starts with an empty hole that is edited stroke by stroke.
+     *
+     * @param sourceImage The grayscale image to fill.
+     * @return A new IncrementalFillSession.
+     */
+
+    public IncrementalFillSession openSession(Pixel[][] sourceImage)
+    {
+        return new IncrementalFillSession(sourceImage, connectivity, this.weightFunc);
+    }
+
     /**
      * Retrieves the current weight function used in the algorithm.
      *
@@ -65,15 +155,14 @@ public class AlgorithmManager
      * Sets a custom weight function for the algorithm.
      *
      * @param weightFunc The new weight function to be applied.
+     * @throws IllegalArgumentException If the weight function is null.
      */
 
     public void setWeightFunc(WeightFunction weightFunc)
     {
         if (weightFunc == null)
         {
-            System.out.println("WeightFunc is null!");
-            System.exit(1);
-            return;
+            throw new IllegalArgumentException(NULL_WEIGHT_FUNC);
         }
         this.weightFunc = weightFunc;
     }
@@ -86,14 +175,38 @@ public class AlgorithmManager
 
     public void algorithmFactory(String algorithmName)
     {
-        if (algorithmName.equals(APPROXIMATE_ALGORITHM))
-        {
-            this.algorithm = new ApproximateAlgorithm(connectivity);
-        }
-        else
+        this.algorithm = createAlgorithm(algorithmName, connectivity);
+    }
+
+    /**
+     * Returns an immutable snapshot of this manager's parameters, from which a thread-safe
+     * FillEngine can be built.
+     *
+     * @return The configuration; its weight function is null unless a custom one was set.
+     */
+
+    public FillConfig toConfig()
+    {
+        return FillConfig.builder().connectivity(connectivity).z(z).e(e)
+                .algorithm(algorithm.getAlgorithmName())
+                .weightFunction(weightFunc == defaultWeightFunc ? null : weightFunc).build();
+    }
+
+    /**
+     * Creates the algorithm with the given name; unknown names get the default algorithm.
+     *
+     * @param algorithmName The name of the algorithm.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @return The algorithm.
+     */
+
+    static FillingAlgorithm createAlgorithm(String algorithmName, int connectivity)
+    {
+        if (APPROXIMATE_ALGORITHM.equals(algorithmName))
         {
-            this.algorithm = new DefaultHoleFillingAlgorithm();
+            return new ApproximateAlgorithm(connectivity);
         }
+        return new DefaultHoleFillingAlgorithm();
     }
 
     /**
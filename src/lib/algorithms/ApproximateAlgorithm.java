@@ -1,5 +1,7 @@
 package lib.algorithms;
 
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
 import lib.entities.Pixel;
 import lib.entities.ProcessedImageFields;
 
@@ -13,6 +15,8 @@ import java.util.*;
 public class ApproximateAlgorithm extends FillingAlgorithm {
     private static final String name = "ApproximateAlgorithm";
     private final int connectivity;
+    private ProcessedImageFields cachedFields;
+    private ArrayList<Pixel> cachedBoundary;
     private final int[][] DIRECTIONS = {
             {-1, 0}, {0, 1}, {1, 0}, {0, -1}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}
     };
@@ -45,6 +49,80 @@ public class ApproximateAlgorithm extends FillingAlgorithm {
      */
 
     public Pixel[][] evaluatePixels(ProcessedImageFields fields, WeightFunction weightFunc)
+    {
+        Pixel[][] pixels = fields.getPixelArray();
+        calculateNewPixels(fields, weightFunc, buildApproxBoundary(fields), pixels);
+        return pixels;
+    }
+
+    /**
+     * Computes the filled value of a single hole pixel from the approximate boundary, without
+     * modifying the pixel array. The approximate boundary is built once per fields object.
+     *
+     * @param fields The processed image data containing hole and boundary pixels.
+     * @param weightFunc The weight function used for the weighted average.
+     * @param row Row index of the pixel.
+     * @param col Column index of the pixel.
+     * @return The pixel's filled value, or its current value if it cannot be computed.
+     */
+
+    public float evaluatePixel(ProcessedImageFields fields, WeightFunction weightFunc, int row,
+                               int col)
+    {
+        return weightedValue(fields.getPixelArray()[row][col], approxBoundaryFor(fields),
+                weightFunc);
+    }
+
+    /**
+     * Computes the filled values of all hole pixels without modifying the pixel array. The
+     * approximate boundary is built for this call only, so concurrent calls on different
+     * fields share nothing and need no locking.
+     *
+     * @param fields The processed image data containing hole and boundary pixels.
+     * @param weightFunc The weight function used for the weighted average.
+     * @return A FillResult holding the hole indices and their filled values.
+     */
+
+    @Override
+    public FillResult evaluateHoles(ProcessedImageFields fields, WeightFunction weightFunc)
+    {
+        ArrayList<Pixel> approxBoundary = buildApproxBoundary(fields);
+        HoleGeometry geometry = HoleGeometry.fromFields(fields);
+        int[] holeIndices = geometry.getHoleIndices();
+        float[] values = new float[holeIndices.length];
+        Pixel[][] pixels = fields.getPixelArray();
+        for (int h = 0; h < holeIndices.length; h++)
+        {
+            values[h] = weightedValue(pixels[geometry.rowOf(holeIndices[h])]
+                    [geometry.colOf(holeIndices[h])], approxBoundary, weightFunc);
+        }
+        return new FillResult(geometry.getWidth(), geometry.getHeight(), holeIndices, values);
+    }
+
+    private static float weightedValue(Pixel h, ArrayList<Pixel> approxBoundary,
+                                       WeightFunction weightFunc)
+    {
+        float denominator = 0;
+        float numerator = 0;
+        for (Pixel p : approxBoundary) {
+            float currWeight = weightFunc.calculateWeight(h, p);
+            numerator += currWeight * p.getValue();
+            denominator += currWeight;
+        }
+        return denominator > 0 ? numerator / denominator : h.getValue();
+    }
+
+    private synchronized ArrayList<Pixel> approxBoundaryFor(ProcessedImageFields fields)
+    {
+        if (cachedFields != fields)
+        {
+            cachedBoundary = buildApproxBoundary(fields);
+            cachedFields = fields;
+        }
+        return cachedBoundary;
+    }
+
+    private ArrayList<Pixel> buildApproxBoundary(ProcessedImageFields fields)
     {
         HashSet<Pixel> B = fields.getBoundaryPixels();
         HashSet<Pixel> C = new HashSet<>(B); // Shallow copy
@@ -113,8 +191,7 @@ public class ApproximateAlgorithm extends FillingAlgorithm {
             currIntensity /= count;
             approxBoundary.add(new Pixel(avgX, avgY, currIntensity));
         }
-        calculateNewPixels(fields, weightFunc, approxBoundary, pixels);
-        return pixels;
+        return approxBoundary;
     }
 
     private static void calculateNewPixels(ProcessedImageFields fields, WeightFunction weightFunc, ArrayList<Pixel> approxBoundary, Pixel[][] pixels) {
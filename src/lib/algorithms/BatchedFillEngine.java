@@ -0,0 +1,156 @@
+package lib.algorithms;
+
+import lib.entities.HoleGeometry;
+import lib.entities.Pixel;
+import lib.entities.ProcessedImageFields;
+
+import java.util.List;
+
+/**
+ * Fills a batch of images that share one mask with the default (exact) algorithm.
+ * Every hole-boundary weight is computed once for the whole batch and applied to the boundary
+ * values of all N images at once, turning the per-image matrix-vector product into one
+ * matrix-matrix product. Hole and boundary pixels are processed in tiles so the weight tile and
+ * the boundary values it touches stay in cache.
+ */
+
+public class BatchedFillEngine
+{
+    private static final int HOLE_TILE = 64;
+    private static final int BOUND_TILE = 512;
+    private static final String SIZE_MISMATCH = "Image size does not match the mask: ";
+
+    private final WeightFunction weightFunc;
+
+    /**
+     * Constructs a BatchedFillEngine.
+     *
+     * @param weightFunc The weight function used for the weighted average.
+     */
+
+    public BatchedFillEngine(WeightFunction weightFunc)
+    {
+        this.weightFunc = weightFunc;
+    }
+
+    /**
+     * Fills the hole pixels of every image in place.
+     *
+     * @param maskFields The processed image fields of the shared mask.
+     * @param images The images to fill, all of the mask's size.
+     * @return The same images with their hole pixels filled.
+     */
+
+    public List<Pixel[][]> fill(ProcessedImageFields maskFields, List<Pixel[][]> images)
+    {
+        HoleGeometry geometry = HoleGeometry.fromFields(maskFields);
+        int width = geometry.getWidth();
+        int[] boundIdx = geometry.getBoundaryIndices();
+        int[] holeIdx = geometry.getHoleIndices();
+        int batch = images.size();
+
+        float[] boundValues = new float[boundIdx.length * batch];
+        for (int n = 0; n < batch; n++)
+        {
+            Pixel[][] pixels = images.get(n);
+            if (pixels.length != geometry.getHeight() || pixels[0].length != width)
+            {
+                throw new IllegalArgumentException(SIZE_MISMATCH + pixels[0].length + "x" +
+                        pixels.length);
+            }
+            for (int b = 0; b < boundIdx.length; b++)
+            {
+                boundValues[b * batch + n] = pixels[boundIdx[b] / width][boundIdx[b] % width]
+                        .getValue();
+            }
+        }
+
+        float[] holeValues = fill(geometry, boundValues, batch);
+
+        for (int n = 0; n < batch; n++)
+        {
+            Pixel[][] pixels = images.get(n);
+            for (int h = 0; h < holeIdx.length; h++)
+            {
+                pixels[holeIdx[h] / width][holeIdx[h] % width].setValue(
+                        holeValues[h * batch + n]);
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Computes the filled values of a batch from its boundary value matrix.
+     *
+     * @param geometry The shared hole geometry.
+     * @param boundValues The boundary values, row-major by boundary pixel with one column per
+     *                    image (boundValues[b * batch + n]).
+     * @param batch The number of images N.
+     * @return The filled hole values, laid out as values[h * batch + n].
+     */
+
+    public float[] fill(HoleGeometry geometry, float[] boundValues, int batch)
+    {
+        int holeCount = geometry.getHoleCount();
+        int boundCount = geometry.getBoundaryCount();
+        Pixel[] hole = toPixels(geometry, geometry.getHoleIndices());
+        Pixel[] bound = toPixels(geometry, geometry.getBoundaryIndices());
+
+        float[] numerators = new float[holeCount * batch];
+        float[] denominators = new float[holeCount];
+        float[] weightTile = new float[HOLE_TILE * BOUND_TILE];
+
+        for (int h0 = 0; h0 < holeCount; h0 += HOLE_TILE)
+        {
+            int h1 = Math.min(h0 + HOLE_TILE, holeCount);
+            for (int b0 = 0; b0 < boundCount; b0 += BOUND_TILE)
+            {
+                int b1 = Math.min(b0 + BOUND_TILE, boundCount);
+                for (int h = h0; h < h1; h++)
+                {
+                    int tileRow = (h - h0) * BOUND_TILE - b0;
+                    for (int b = b0; b < b1; b++)
+                    {
+                        weightTile[tileRow + b] = weightFunc.calculateWeight(hole[h], bound[b]);
+                    }
+                }
+                for (int h = h0; h < h1; h++)
+                {
+                    int tileRow = (h - h0) * BOUND_TILE - b0;
+                    int numRow = h * batch;
+                    float denominator = 0;
+                    for (int b = b0; b < b1; b++)
+                    {
+                        float currWeight = weightTile[tileRow + b];
+                        denominator += currWeight;
+                        int valueRow = b * batch;
+                        for (int n = 0; n < batch; n++)
+                        {
+                            numerators[numRow + n] += currWeight * boundValues[valueRow + n];
+                        }
+                    }
+                    denominators[h] += denominator;
+                }
+            }
+        }
+
+        for (int h = 0; h < holeCount; h++)
+        {
+            for (int n = 0; n < batch; n++)
+            {
+                numerators[h * batch + n] /= denominators[h];
+            }
+        }
+        return numerators;
+    }
+
+    private static Pixel[] toPixels(HoleGeometry geometry, int[] indices)
+    {
+        Pixel[] pixels = new Pixel[indices.length];
+        for (int i = 0; i < indices.length; i++)
+        {
+            pixels[i] = new Pixel(geometry.rowOf(indices[i]), geometry.colOf(indices[i]), 0);
+        }
+        return pixels;
+    }
+}
@@ -35,21 +35,30 @@ public class DefaultHoleFillingAlgorithm extends FillingAlgorithm
         Pixel[][] pixels = fields.getPixelArray();
         for(Pixel u : hole)
         {
-            float denominator = 0;
-            float numerator = 0;
-            for (Pixel v : bound)
-            {
-                float currWeight = weightFunction.calculateWeight(u, v);
-                numerator += (currWeight * v.getValue());
-                denominator += currWeight;
-            }
             int uXCord = u.getX();
             int uYCord = u.getY();
-            pixels[uXCord][uYCord].setValue(numerator/denominator);
+            pixels[uXCord][uYCord].setValue(weightedAverage(u, bound, weightFunction));
         }
         return pixels;
     }
 
+    /**
+     * Computes the filled value of a single hole pixel without modifying the pixel array.
+     *
+     * @param fields The processed image fields containing hole and boundary pixels.
+     * @param weightFunction The weight function used for the weighted average.
+     * @param row Row index of the pixel.
+     * @param col Column index of the pixel.
+     * @return The weighted average of the boundary pixels.
+     */
+
+    public float evaluatePixel(ProcessedImageFields fields, WeightFunction weightFunction,
+                               int row, int col)
+    {
+        return weightedAverage(fields.getPixelArray()[row][col], fields.getBoundaryPixels(),
+                weightFunction);
+    }
+
     /**
      * Returns the name of the algorithm.
      *
@@ -60,4 +69,17 @@ public class DefaultHoleFillingAlgorithm extends FillingAlgorithm
     {
         return name;
     }
+
+    private static float weightedAverage(Pixel u, Set<Pixel> bound, WeightFunction weightFunction)
+    {
+        float denominator = 0;
+        float numerator = 0;
+        for (Pixel v : bound)
+        {
+            float currWeight = weightFunction.calculateWeight(u, v);
+            numerator += (currWeight * v.getValue());
+            denominator += currWeight;
+        }
+        return numerator/denominator;
+    }
 }
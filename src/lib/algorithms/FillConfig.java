@@ -0,0 +1,312 @@
+package lib.algorithms;
+
+import java.util.Objects;
+
+/**
+ * Immutable parameters of a fill: pixel connectivity, the default weight function's z and
+ * epsilon, the algorithm name and an optional custom weight function. Variants are derived
+ * with the with- methods or a builder, leaving the original unchanged, so one configuration can
+ * be shared freely between threads.
+ */
+
+public final class FillConfig
+{
+    private static final String INVALID_CONNECTIVITY = "Invalid connectivity type: ";
+    private static final String DEFAULT_ALGORITHM = "HoleFillingAlgorithm";
+    private static final int FOUR_CONNECTED = 4;
+    private static final int EIGHT_CONNECTED = 8;
+    private static final int DEFAULT_Z = 3;
+    private static final float DEFAULT_E = 0.01f;
+
+    private final int connectivity;
+    private final int z;
+    private final float e;
+    private final String algorithm;
+    private final WeightFunction weightFunc;
+
+    private FillConfig(Builder builder)
+    {
+        this.connectivity = builder.connectivity;
+        this.z = builder.z;
+        this.e = builder.e;
+        this.algorithm = builder.algorithm;
+        this.weightFunc = builder.weightFunc;
+    }
+
+    /**
+     * Creates a builder initialized with 8-connectivity, z = 3, epsilon = 0.01 and the default
+     * algorithm and weight function.
+     *
+     * @return A new builder.
+     */
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Creates a configuration with the default algorithm and weight function.
+     *
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @param z The exponent parameter for the weight function.
+     * @param e A small constant added to avoid division by zero.
+     * @return The configuration.
+     */
+
+    public static FillConfig of(int connectivity, int z, float e)
+    {
+        return builder().connectivity(connectivity).z(z).e(e).build();
+    }
+
+    /**
+     * Creates a builder initialized with this configuration's values.
+     *
+     * @return A new builder.
+     */
+
+    public Builder toBuilder()
+    {
+        return new Builder().connectivity(connectivity).z(z).e(e).algorithm(algorithm)
+                .weightFunction(weightFunc);
+    }
+
+    /**
+     * Derives a configuration with another connectivity.
+     *
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @return The derived configuration.
+     */
+
+    public FillConfig withConnectivity(int connectivity)
+    {
+        return toBuilder().connectivity(connectivity).build();
+    }
+
+    /**
+     * Derives a configuration with another z.
+     *
+     * @param z The exponent parameter for the weight function.
+     * @return The derived configuration.
+     */
+
+    public FillConfig withZ(int z)
+    {
+        return toBuilder().z(z).build();
+    }
+
+    /**
+     * Derives a configuration with another epsilon.
+     *
+     * @param e A small constant added to avoid division by zero.
+     * @return The derived configuration.
+     */
+
+    public FillConfig withE(float e)
+    {
+        return toBuilder().e(e).build();
+    }
+
+    /**
+     * Derives a configuration with another algorithm.
+     *
+     * @param algorithm The algorithm name, as accepted by AlgorithmManager.algorithmFactory.
+     * @return The derived configuration.
+     */
+
+    public FillConfig withAlgorithm(String algorithm)
+    {
+        return toBuilder().algorithm(algorithm).build();
+    }
+
+    /**
+     * Derives a configuration with a custom weight function, or the default one for null.
+     *
+     * @param weightFunc The weight function; it must be safe to call from several threads.
+     * @return The derived configuration.
+     */
+
+    public FillConfig withWeightFunction(WeightFunction weightFunc)
+    {
+        return toBuilder().weightFunction(weightFunc).build();
+    }
+
+    /**
+     * Returns the pixel connectivity.
+     *
+     * @return 4 or 8.
+     */
+
+    public int getConnectivity()
+    {
+        return connectivity;
+    }
+
+    /**
+     * Getter for z.
+     * @return z.
+     */
+
+    public int getZ()
+    {
+        return z;
+    }
+
+    /**
+     * Getter for e.
+     * @return e.
+     */
+
+    public float getE()
+    {
+        return e;
+    }
+
+    /**
+     * Returns the algorithm name.
+     *
+     * @return The algorithm name.
+     */
+
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * Returns the custom weight function.
+     *
+     * @return The weight function, or null for the default one built from z and epsilon.
+     */
+
+    public WeightFunction getWeightFunction()
+    {
+        return weightFunc;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof FillConfig))
+        {
+            return false;
+        }
+        FillConfig other = (FillConfig) o;
+        return connectivity == other.connectivity && z == other.z &&
+                Float.compare(e, other.e) == 0 && algorithm.equals(other.algorithm) &&
+                weightFunc == other.weightFunc;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(connectivity, z, e, algorithm, System.identityHashCode(weightFunc));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FillConfig[connectivity=" + connectivity + ", z=" + z + ", e=" + e +
+                ", algorithm=" + algorithm + (weightFunc == null ? "" : ", custom weight") + "]";
+    }
+
+    /**
+     * Builds FillConfig objects.
+     */
+
+    public static final class Builder
+    {
+        private int connectivity = EIGHT_CONNECTED;
+        private int z = DEFAULT_Z;
+        private float e = DEFAULT_E;
+        private String algorithm = DEFAULT_ALGORITHM;
+        private WeightFunction weightFunc;
+
+        private Builder() {}
+
+        /**
+         * Sets the pixel connectivity.
+         *
+         * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+         * @return This builder.
+         */
+
+        public Builder connectivity(int connectivity)
+        {
+            this.connectivity = connectivity;
+            return this;
+        }
+
+        /**
+         * Sets z.
+         *
+         * @param z The exponent parameter for the weight function.
+         * @return This builder.
+         */
+
+        public Builder z(int z)
+        {
+            this.z = z;
+            return this;
+        }
+
+        /**
+         * Sets epsilon.
+         *
+         * @param e A small constant added to avoid division by zero.
+         * @return This builder.
+         */
+
+        public Builder e(float e)
+        {
+            this.e = e;
+            return this;
+        }
+
+        /**
+         * Sets the algorithm.
+         *
+         * @param algorithm The algorithm name, as accepted by AlgorithmManager.algorithmFactory.
+         * @return This builder.
+         */
+
+        public Builder algorithm(String algorithm)
+        {
+            this.algorithm = algorithm == null ? DEFAULT_ALGORITHM : algorithm;
+            return this;
+        }
+
+        /**
+         * Sets a custom weight function.
+         *
+         * @param weightFunc The weight function, or null for the default one.
+         * @return This builder.
+         */
+
+        public Builder weightFunction(WeightFunction weightFunc)
+        {
+            this.weightFunc = weightFunc;
+            return this;
+        }
+
+        /**
+         * Builds the configuration.
+         *
+         * @return The configuration.
+         * @throws IllegalArgumentException If the connectivity is neither 4 nor 8.
+         */
+
+        public FillConfig build()
+        {
+            if (connectivity != FOUR_CONNECTED && connectivity != EIGHT_CONNECTED)
+            {
+                throw new IllegalArgumentException(INVALID_CONNECTIVITY + connectivity);
+            }
+            return new FillConfig(this);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package lib.algorithms;
+
+import lib.entities.HoleGeometry;
+import lib.entities.IntensityBuffer;
+import lib.entities.Pixel;
+import lib.entities.PlanarImage;
+import lib.entities.ProcessedImageFields;
+
+/**
+ * Estimates what a fill will cost once its mask has been preprocessed. The CPU cost is the
+ * number of weight evaluations times the work per evaluation, since every hole pixel visits
+ * every boundary pixel; the memory footprint adds up the image, the hole and boundary indices
+ * and the result the fill keeps alive while it runs.
+ */
+
+public class FillCost
+{
+    private static final int INDEX_BYTES = Integer.BYTES;
+    private static final int VALUE_BYTES = Float.BYTES;
+    private static final int PIXEL_BYTES = 32;
+    private static final int SET_ENTRY_BYTES = 48;
+
+    private final long cpu;
+    private final long memoryBytes;
+
+    /**
+     * Constructs a FillCost.
+     *
+     * @param cpu The estimated CPU cost, in channel-weight evaluations.
+     * @param memoryBytes The estimated memory footprint in bytes.
+     */
+
+    public FillCost(long cpu, long memoryBytes)
+    {
+        this.cpu = cpu;
+        this.memoryBytes = memoryBytes;
+    }
+
+    /**
+     * Estimates the cost of a colour fill.
+     *
+     * @param geometry The hole geometry of the mask.
+     * @param image The planar image to fill.
+     * @return The estimated cost.
+     */
+
+    public static FillCost of(HoleGeometry geometry, PlanarImage image)
+    {
+        long holes = geometry.getHoleCount();
+        long bounds = geometry.getBoundaryCount();
+        int channels = image.getChannels();
+        long pixels = (long) image.getWidth() * image.getHeight();
+        long imageBytes = pixels * channels * bytesPerSample(image.getStorageMode());
+        long geometryBytes = (holes + bounds) * INDEX_BYTES;
+        long workBytes = bounds * (PIXEL_BYTES + (long) channels * VALUE_BYTES) +
+                holes * channels * VALUE_BYTES;
+        return new FillCost(holes * bounds * channels, imageBytes + geometryBytes + workBytes);
+    }
+
+    /**
+     * Estimates the cost of a grayscale fill of preprocessed fields.
+     *
+     * @param fields The processed image fields.
+     * @return The estimated cost.
+     */
+
+    public static FillCost of(ProcessedImageFields fields)
+    {
+        long holes = fields.getHolePixels().size();
+        long bounds = fields.getBoundaryPixels().size();
+        Pixel[][] pixelArray = fields.getPixelArray();
+        long pixels = (long) pixelArray.length * (pixelArray.length == 0 ? 0
+                : pixelArray[0].length);
+        return new FillCost(holes * bounds, pixels * PIXEL_BYTES +
+                (holes + bounds) * SET_ENTRY_BYTES);
+    }
+
+    /**
+     * Returns the CPU cost.
+     *
+     * @return The estimated number of channel-weight evaluations.
+     */
+
+    public long getCpu()
+    {
+        return cpu;
+    }
+
+    /**
+     * Returns the memory footprint.
+     *
+     * @return The estimated footprint in bytes.
+     */
+
+    public long getMemoryBytes()
+    {
+        return memoryBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "cpu=" + cpu + ", memory=" + memoryBytes + "B";
+    }
+
+    private static int bytesPerSample(IntensityBuffer.StorageMode mode)
+    {
+        switch (mode)
+        {
+            case BYTE:
+                return Byte.BYTES;
+            case HALF:
+                return Short.BYTES;
+            default:
+                return Float.BYTES;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package lib.algorithms;
+
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
+import lib.entities.Pixel;
+import lib.entities.PlanarImage;
+import lib.entities.ProcessedImageFields;
+
+import java.util.Arrays;
+
+/**
+ * Runs fills for one immutable FillConfig. An engine holds no per-fill state, so a single
+ * instance can serve any number of concurrent fills without locking.
+ * The default weight function 1 / (|u - v|^z + e) is read from a table indexed by the squared
+ * distance between the pixels, which is an integer. The table is filled on construction for
+ * short distances and grown on demand; a growing thread publishes a complete new table, so
+ * concurrent readers see either the old or the new one and never need a lock. Table entries
+ * are computed exactly as the weight function computes them, so results are unchanged.
+ */
+
+public final class FillEngine
+{
+    private static final int INITIAL_TABLE_SIZE = 1 << 16;
+    private static final int MAX_TABLE_SIZE = 1 << 22;
+
+    private final FillConfig config;
+    private final FillingAlgorithm algorithm;
+    private final WeightFunction weightFunc;
+    private volatile float[] weightTable;
+
+    /**
+     * Constructs a FillEngine, precomputing the weight table of the default weight function.
+     *
+     * @param config The fill configuration.
+     */
+
+    public FillEngine(FillConfig config)
+    {
+        this.config = config;
+        this.algorithm = AlgorithmManager.createAlgorithm(config.getAlgorithm(),
+                config.getConnectivity());
+        if (config.getWeightFunction() != null)
+        {
+            this.weightFunc = config.getWeightFunction();
+            this.weightTable = new float[0];
+        }
+        else
+        {
+            this.weightTable = extend(new float[0], INITIAL_TABLE_SIZE);
+            this.weightFunc = (Pixel u, Pixel v) ->
+            {
+                long dx = u.getX() - v.getX();
+                long dy = u.getY() - v.getY();
+                return weightOfSquaredDistance(dx * dx + dy * dy);
+            };
+        }
+    }
+
+    /**
+     * Returns the configuration of this engine.
+     *
+     * @return The fill configuration.
+     */
+
+    public FillConfig getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * Returns the weight function this engine fills with.
+     *
+     * @return The custom weight function, or the table-backed default one.
+     */
+
+    public WeightFunction getWeightFunction()
+    {
+        return weightFunc;
+    }
+
+    /**
+     * Fills the hole of a grayscale image in place with the configured algorithm.
+     *
+     * @param fields The processed image fields containing hole and boundary pixels.
+     * @return A 2D array of Pixels representing the filled image.
+     */
+
+    public Pixel[][] fill(ProcessedImageFields fields)
+    {
+        return algorithm.evaluatePixels(fields, weightFunc);
+    }
+
+    /**
+     * Fills the hole of a grayscale image with the configured algorithm, without modifying the
+     * pixel array.
+     *
+     * @param fields The processed image fields containing hole and boundary pixels.
+     * @return A FillResult holding only the hole indices and their filled values.
+     */
+
+    public FillResult fillSparse(ProcessedImageFields fields)
+    {
+        return algorithm.evaluateHoles(fields, weightFunc);
+    }
+
+    /**
+     * Fills every channel of a colour image with the default algorithm.
+     *
+     * @param geometry The hole geometry of the mask.
+     * @param image The planar colour image to fill.
+     * @return A FillResult holding every channel's filled values.
+     */
+
+    public FillResult fillColor(HoleGeometry geometry, PlanarImage image)
+    {
+        return new ColorFillEngine(weightFunc).fill(geometry, image);
+    }
+
+    /**
+     * Returns the default weight of two pixels a squared distance apart.
+     *
+     * @param squaredDistance The squared Euclidean distance; distances beyond the largest table
+     *                        are computed directly.
+     * @return The weight.
+     */
+
+    private float weightOfSquaredDistance(long squaredDistance)
+    {
+        float[] table = weightTable;
+        if (squaredDistance < table.length)
+        {
+            return table[(int) squaredDistance];
+        }
+        if (squaredDistance >= MAX_TABLE_SIZE)
+        {
+            return computeWeight(squaredDistance);
+        }
+        int index = (int) squaredDistance;
+        table = extend(table, Math.min(MAX_TABLE_SIZE, Integer.highestOneBit(index) << 1));
+        weightTable = table;
+        return table[index];
+    }
+
+    private float[] extend(float[] table, int size)
+    {
+        float[] extended = Arrays.copyOf(table, size);
+        for (int d = table.length; d < size; d++)
+        {
+            extended[d] = computeWeight(d);
+        }
+        return extended;
+    }
+
+    /**
+     * Computes the default weight the way AlgorithmManager's weight function does: the
+     * distance is rounded to a float before it is raised to z.
+     */
+
+    private float computeWeight(long squaredDistance)
+    {
+        float distance = (float) Math.sqrt((float) squaredDistance);
+        return 1.0f / (float) (Math.pow(distance, config.getZ()) + config.getE());
+    }
+}
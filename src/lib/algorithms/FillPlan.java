@@ -0,0 +1,493 @@
+package lib.algorithms;
+
+import lib.entities.HoleGeometry;
+import lib.entities.Pixel;
+import lib.entities.ProcessedImageFields;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A precompiled hole-filling plan for a fixed mask.
+ * The weights of the default algorithm depend only on the hole geometry and the weight
+ * function, so they are evaluated once, normalised per hole pixel and stored in a sparse
+ * row-per-hole-pixel layout. Applying the plan to a new image is a single pass of multiply-adds
+ * over the boundary values. Plans can optionally keep only the strongest weights per hole pixel
+ * and quantise weights to 16 bits, and can be saved to and loaded from a compact binary file.
+ */
+
+public class FillPlan
+{
+    private static final int MAGIC = 0x46504C4E;
+    private static final int VERSION = 1;
+    private static final int FLAG_QUANTISED = 1;
+    private static final int QUANTISATION_LEVELS = 0xFFFF;
+    private static final String INVALID_PLAN_FILE = "Not a fill plan file: ";
+    private static final int MAX_ENTRIES = Integer.MAX_VALUE - 8;
+    private static final String SIZE_MISMATCH = "Image size does not match the plan: ";
+
+    private final HoleGeometry geometry;
+    private final int[] rowStarts;
+    private final int[] columns;
+    private final float[] weights;
+    private final char[] quantisedWeights;
+
+    private FillPlan(HoleGeometry geometry, int[] rowStarts, int[] columns, float[] weights,
+                     char[] quantisedWeights)
+    {
+        this.geometry = geometry;
+        this.rowStarts = rowStarts;
+        this.columns = columns;
+        this.weights = weights;
+        this.quantisedWeights = quantisedWeights;
+    }
+
+    /**
+     * Compiles a dense, full precision plan from a mask and the manager's weight function.
+     *
+     * @param fields The processed image fields of the mask.
+     * @param manager The AlgorithmManager whose weight function is used.
+     * @return The compiled FillPlan.
+     */
+
+    public static FillPlan compile(ProcessedImageFields fields, AlgorithmManager manager)
+    {
+        return compile(fields, manager, 0, false);
+    }
+
+    /**
+     * Compiles a plan from a mask and the manager's weight function.
+     *
+     * @param fields The processed image fields of the mask.
+     * @param manager The AlgorithmManager whose weight function is used.
+     * @param maxWeightsPerHole Keeps only this many of the largest weights per hole pixel,
+     *                          or all of them when 0.
+     * @param quantise Whether to store the weights as 16-bit fixed point values.
+     * @return The compiled FillPlan.
+     */
+
+    public static FillPlan compile(ProcessedImageFields fields, AlgorithmManager manager,
+                                   int maxWeightsPerHole, boolean quantise)
+    {
+        HoleGeometry geometry = HoleGeometry.fromFields(fields);
+        WeightFunction weightFunc = manager.getWeightFunc();
+        int holeCount = geometry.getHoleCount();
+        int boundCount = geometry.getBoundaryCount();
+        int perHole = maxWeightsPerHole > 0 ? Math.min(maxWeightsPerHole, boundCount)
+                : boundCount;
+        int capacity = Math.multiplyExact(holeCount, perHole);
+
+        Pixel[] bound = new Pixel[boundCount];
+        for (int b = 0; b < boundCount; b++)
+        {
+            int idx = geometry.getBoundaryIndex(b);
+            bound[b] = new Pixel(geometry.rowOf(idx), geometry.colOf(idx), 0);
+        }
+
+        int[] rowStarts = new int[holeCount + 1];
+        int[] columns = new int[capacity];
+        float[] weights = new float[capacity];
+        char[] quantised = quantise ? new char[capacity] : null;
+        float[] rowWeights = new float[boundCount];
+        float[] scratch = new float[boundCount];
+        int entry = 0;
+
+        for (int h = 0; h < holeCount; h++)
+        {
+            int idx = geometry.getHoleIndex(h);
+            Pixel u = new Pixel(geometry.rowOf(idx), geometry.colOf(idx), 0);
+            for (int b = 0; b < boundCount; b++)
+            {
+                rowWeights[b] = weightFunc.calculateWeight(u, bound[b]);
+            }
+
+            float cutoff = Float.NEGATIVE_INFINITY;
+            int ties = 0;
+            if (perHole < boundCount)
+            {
+                System.arraycopy(rowWeights, 0, scratch, 0, boundCount);
+                cutoff = kthLargest(scratch, perHole);
+                ties = perHole;
+                for (int b = 0; b < boundCount; b++)
+                {
+                    if (rowWeights[b] > cutoff)
+                    {
+                        ties--;
+                    }
+                }
+            }
+
+            rowStarts[h] = entry;
+            float sum = 0;
+            for (int b = 0; b < boundCount; b++)
+            {
+                float w = rowWeights[b];
+                if (w > cutoff || (w == cutoff && ties-- > 0))
+                {
+                    columns[entry] = b;
+                    weights[entry] = w;
+                    sum += w;
+                    entry++;
+                }
+            }
+            for (int i = rowStarts[h]; i < entry; i++)
+            {
+                weights[i] /= sum;
+            }
+            if (quantise)
+            {
+                quantiseRow(weights, quantised, rowStarts[h], entry);
+            }
+        }
+        rowStarts[holeCount] = entry;
+
+        return new FillPlan(geometry, rowStarts, columns, quantise ? null : weights, quantised);
+    }
+
+    /**
+     * Applies the plan to a new image of the same size, filling its hole pixels in place.
+     *
+     * @param pixels The 2D array of pixels of the image to fill.
+     * @return The same array with the hole pixels filled.
+     */
+
+    public Pixel[][] apply(Pixel[][] pixels)
+    {
+        if (pixels.length != geometry.getHeight() || pixels[0].length != geometry.getWidth())
+        {
+            throw new IllegalArgumentException(SIZE_MISMATCH + pixels[0].length + "x" +
+                    pixels.length);
+        }
+        int width = geometry.getWidth();
+        int[] boundIdx = geometry.getBoundaryIndices();
+        float[] boundValues = new float[boundIdx.length];
+        for (int b = 0; b < boundIdx.length; b++)
+        {
+            boundValues[b] = pixels[boundIdx[b] / width][boundIdx[b] % width].getValue();
+        }
+        int[] holeIdx = geometry.getHoleIndices();
+        for (int h = 0; h < holeIdx.length; h++)
+        {
+            pixels[holeIdx[h] / width][holeIdx[h] % width].setValue(evaluate(h, boundValues));
+        }
+        return pixels;
+    }
+
+    /**
+     * Applies the plan to a row-major raster of the same size, filling its hole values in place.
+     *
+     * @param raster The row-major intensity values of the image to fill.
+     * @return The same raster with the hole values filled.
+     */
+
+    public float[] apply(float[] raster)
+    {
+        if (raster.length != geometry.getWidth() * geometry.getHeight())
+        {
+            throw new IllegalArgumentException(SIZE_MISMATCH + raster.length);
+        }
+        int[] boundIdx = geometry.getBoundaryIndices();
+        float[] boundValues = new float[boundIdx.length];
+        for (int b = 0; b < boundIdx.length; b++)
+        {
+            boundValues[b] = raster[boundIdx[b]];
+        }
+        int[] holeIdx = geometry.getHoleIndices();
+        for (int h = 0; h < holeIdx.length; h++)
+        {
+            raster[holeIdx[h]] = evaluate(h, boundValues);
+        }
+        return raster;
+    }
+
+    /**
+     * Computes the filled value of a single hole pixel from the boundary values.
+     *
+     * @param hole The hole pixel's position in the plan.
+     * @param boundValues The boundary values, in the plan's boundary order.
+     * @return The filled value.
+     */
+
+    private float evaluate(int hole, float[] boundValues)
+    {
+        float numerator = 0;
+        if (quantisedWeights == null)
+        {
+            for (int i = rowStarts[hole]; i < rowStarts[hole + 1]; i++)
+            {
+                numerator += weights[i] * boundValues[columns[i]];
+            }
+            return numerator;
+        }
+        float denominator = 0;
+        for (int i = rowStarts[hole]; i < rowStarts[hole + 1]; i++)
+        {
+            float w = quantisedWeights[i];
+            numerator += w * boundValues[columns[i]];
+            denominator += w;
+        }
+        return numerator / denominator;
+    }
+
+    /**
+     * Saves the plan to a binary file. Indices are delta-encoded as variable length integers
+     * and weights are written as 32-bit floats or 16-bit fixed point values.
+     *
+     * @param path The file to write.
+     * @throws IOException If an error occurs while writing.
+     */
+
+    public void save(String path) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(path))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(quantisedWeights != null ? FLAG_QUANTISED : 0);
+            out.writeInt(geometry.getWidth());
+            out.writeInt(geometry.getHeight());
+            out.writeInt(geometry.getHoleCount());
+            out.writeInt(geometry.getBoundaryCount());
+            writeAscending(out, geometry.getHoleIndices(), 0, geometry.getHoleCount());
+            writeAscending(out, geometry.getBoundaryIndices(), 0, geometry.getBoundaryCount());
+            for (int h = 0; h < geometry.getHoleCount(); h++)
+            {
+                writeVarInt(out, rowStarts[h + 1] - rowStarts[h]);
+            }
+            for (int h = 0; h < geometry.getHoleCount(); h++)
+            {
+                writeAscending(out, columns, rowStarts[h], rowStarts[h + 1]);
+            }
+            for (int i = 0; i < rowStarts[geometry.getHoleCount()]; i++)
+            {
+                if (quantisedWeights != null)
+                {
+                    out.writeChar(quantisedWeights[i]);
+                }
+                else
+                {
+                    out.writeFloat(weights[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a plan previously written by {@link #save(String)}.
+     *
+     * @param path The file to read.
+     * @return The loaded FillPlan.
+     * @throws IOException If an error occurs while reading or the file is not a plan.
+     */
+
+    public static FillPlan load(String path) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(path))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                throw new IOException(INVALID_PLAN_FILE + path);
+            }
+            boolean quantise = (in.readInt() & FLAG_QUANTISED) != 0;
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE)
+            {
+                throw new IOException(INVALID_PLAN_FILE + path);
+            }
+            int pixels = width * height;
+            int holeCount = in.readInt();
+            int boundCount = in.readInt();
+            if (holeCount < 0 || holeCount > pixels || boundCount < 0 || boundCount > pixels)
+            {
+                throw new IOException(INVALID_PLAN_FILE + path);
+            }
+            int[] holeIndices = new int[holeCount];
+            int[] boundaryIndices = new int[boundCount];
+            readAscending(in, holeIndices, 0, holeCount, pixels, path);
+            readAscending(in, boundaryIndices, 0, boundCount, pixels, path);
+
+            int[] rowStarts = new int[holeCount + 1];
+            for (int h = 0; h < holeCount; h++)
+            {
+                int rowLength = readVarInt(in);
+                if (rowLength < 0 || rowLength > boundCount ||
+                        (long) rowStarts[h] + rowLength > MAX_ENTRIES)
+                {
+                    throw new IOException(INVALID_PLAN_FILE + path);
+                }
+                rowStarts[h + 1] = rowStarts[h] + rowLength;
+            }
+            int[] columns = new int[rowStarts[holeCount]];
+            for (int h = 0; h < holeCount; h++)
+            {
+                readAscending(in, columns, rowStarts[h], rowStarts[h + 1], boundCount, path);
+            }
+
+            int entries = rowStarts[holeIndices.length];
+            float[] weights = quantise ? null : new float[entries];
+            char[] quantised = quantise ? new char[entries] : null;
+            for (int i = 0; i < entries; i++)
+            {
+                if (quantise)
+                {
+                    quantised[i] = in.readChar();
+                }
+                else
+                {
+                    weights[i] = in.readFloat();
+                }
+            }
+            return new FillPlan(new HoleGeometry(width, height, holeIndices, boundaryIndices),
+                    rowStarts, columns, weights, quantised);
+        }
+    }
+
+    /**
+     * Returns the hole geometry the plan was compiled for.
+     *
+     * @return The HoleGeometry of the plan's mask.
+     */
+
+    public HoleGeometry getGeometry()
+    {
+        return geometry;
+    }
+
+    /**
+     * Returns the number of stored weights.
+     *
+     * @return The number of (hole, boundary) pairs kept by the plan.
+     */
+
+    public int getWeightCount()
+    {
+        return rowStarts[geometry.getHoleCount()];
+    }
+
+    private static void quantiseRow(float[] weights, char[] quantised, int from, int to)
+    {
+        int maxAt = from;
+        boolean anyNonZero = false;
+        for (int i = from; i < to; i++)
+        {
+            int q = Math.min(QUANTISATION_LEVELS, Math.round(weights[i] * QUANTISATION_LEVELS));
+            quantised[i] = (char) q;
+            anyNonZero |= q > 0;
+            if (weights[i] > weights[maxAt])
+            {
+                maxAt = i;
+            }
+        }
+        if (!anyNonZero && to > from)
+        {
+            quantised[maxAt] = 1;
+        }
+    }
+
+    /**
+     * Finds the k-th largest value, reordering the array (quickselect).
+     */
+
+    private static float kthLargest(float[] values, int k)
+    {
+        int lo = 0;
+        int hi = values.length - 1;
+        int target = k - 1;
+        while (lo < hi)
+        {
+            float pivot = values[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j)
+            {
+                while (values[i] > pivot) i++;
+                while (values[j] < pivot) j--;
+                if (i <= j)
+                {
+                    float tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j)
+            {
+                hi = j;
+            }
+            else if (target >= i)
+            {
+                lo = i;
+            }
+            else
+            {
+                break;
+            }
+        }
+        return values[target];
+    }
+
+    private static void writeAscending(DataOutputStream out, int[] values, int from, int to)
+            throws IOException
+    {
+        int previous = 0;
+        for (int i = from; i < to; i++)
+        {
+            writeVarInt(out, values[i] - previous);
+            previous = values[i];
+        }
+    }
+
+    /**
+     * Reads delta-encoded ascending values, each of which must be below a limit.
+     */
+
+    private static void readAscending(DataInputStream in, int[] values, int from, int to,
+                                      int limit, String path) throws IOException
+    {
+        long previous = 0;
+        for (int i = from; i < to; i++)
+        {
+            int delta = readVarInt(in);
+            previous += delta;
+            if (delta < 0 || previous >= limit)
+            {
+                throw new IOException(INVALID_PLAN_FILE + path);
+            }
+            values[i] = (int) previous;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException
+    {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,66 @@
+package lib.algorithms;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Signals that a FillScheduler did not accept a job, and why, so that callers can tell apart
+ * work to retry later from work that will never fit.
+ */
+
+public class FillRejectedException extends RejectedExecutionException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why a job was rejected.
+     */
+    public enum Reason
+    {
+        /** The queue is at capacity; the job may be resubmitted later. */
+        QUEUE_FULL,
+        /** The queued and running jobs hold too much of the memory budget; the job may be
+         *  resubmitted later. */
+        BUDGET_FULL,
+        /** The job's footprint exceeds the whole memory budget; it can never be admitted. */
+        OVER_BUDGET,
+        /** The scheduler has been closed. */
+        SHUTDOWN
+    }
+
+    private final Reason reason;
+
+    /**
+     * Constructs a FillRejectedException.
+     *
+     * @param reason Why the job was rejected.
+     * @param message A description of the rejection.
+     */
+
+    public FillRejectedException(Reason reason, String message)
+    {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * Returns why the job was rejected.
+     *
+     * @return The reason.
+     */
+
+    public Reason getReason()
+    {
+        return reason;
+    }
+
+    /**
+     * Checks whether resubmitting the job later may succeed.
+     *
+     * @return True if the queue or the memory budget was full.
+     */
+
+    public boolean isRetryable()
+    {
+        return reason == Reason.QUEUE_FULL || reason == Reason.BUDGET_FULL;
+    }
+}
@@ -0,0 +1,311 @@
+package lib.algorithms;
+
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
+import lib.entities.PlanarImage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules fills in front of AlgorithmManager by their estimated cost, so that a job with a
+ * giant hole can neither starve the others nor exhaust the heap.
+ * <ul>
+ *     <li>Admission: a job is accepted only while the footprints of the jobs already queued or
+ *     running plus its own fit in the memory budget, since a queued job's image is already
+ *     resident. A job whose footprint alone exceeds the budget is rejected as never
+ *     admissible. At most one job per worker thread runs at a time.</li>
+ *     <li>Order: the waiting job with the smallest CPU cost runs first. A job's cost is divided
+ *     by (1 + waited time / aging period), so a large job that keeps being overtaken eventually
+ *     reaches the front.</li>
+ *     <li>Backpressure: submissions beyond the queue capacity or the memory left are rejected
+ *     with a retryable FillRejectedException rather than queued without bound.</li>
+ * </ul>
+ */
+
+public class FillScheduler implements AutoCloseable
+{
+    private static final String QUEUE_FULL = "Fill queue is full: %d jobs waiting";
+    private static final String BUDGET_FULL = "Fill needs %d bytes, but only %d of the memory " +
+            "budget are free";
+    private static final String OVER_BUDGET = "Fill needs %d bytes, over the memory budget of " +
+            "%d bytes";
+    private static final String SHUTDOWN = "Fill scheduler is closed";
+    private static final String WORKER_NAME = "fill-scheduler-";
+
+    private final long memoryBudget;
+    private final int maxQueued;
+    private final long agingNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final List<Entry> queue = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private long reservedBytes;
+    private boolean closed;
+
+    /**
+     * Constructs a FillScheduler and starts its worker threads.
+     *
+     * @param threads The number of fills run at a time.
+     * @param memoryBudget The total footprint, in bytes, of the fills queued or running at a
+     *                     time.
+     * @param maxQueued The number of jobs that may wait for admission.
+     * @param agingMillis The waiting time that halves a job's effective cost.
+     */
+
+    public FillScheduler(int threads, long memoryBudget, int maxQueued, long agingMillis)
+    {
+        this.memoryBudget = memoryBudget;
+        this.maxQueued = Math.max(1, maxQueued);
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, agingMillis));
+        for (int t = 0; t < Math.max(1, threads); t++)
+        {
+            Thread worker = new Thread(this::work, WORKER_NAME + t);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Schedules a colour fill by its estimated cost.
+     *
+     * @param manager The algorithm manager providing the weight function.
+     * @param geometry The hole geometry of the mask.
+     * @param image The planar image to fill.
+     * @return A future of the fill result.
+     * @throws FillRejectedException If the queue or the memory budget is full, the fill can
+     *                               never fit in the budget, or the scheduler is closed.
+     */
+
+    public Future<FillResult> submit(AlgorithmManager manager, HoleGeometry geometry,
+                                     PlanarImage image)
+    {
+        return submit(FillCost.of(geometry, image),
+                () -> manager.runColorAlgorithm(geometry, image));
+    }
+
+    /**
+     * Schedules a colour fill on a shared engine by its estimated cost.
+     *
+     * @param engine The fill engine.
+     * @param geometry The hole geometry of the mask.
+     * @param image The planar image to fill.
+     * @return A future of the fill result.
+     * @throws FillRejectedException If the queue or the memory budget is full, the fill can
+     *                               never fit in the budget, or the scheduler is closed.
+     */
+
+    public Future<FillResult> submit(FillEngine engine, HoleGeometry geometry, PlanarImage image)
+    {
+        return submit(FillCost.of(geometry, image), () -> engine.fillColor(geometry, image));
+    }
+
+    /**
+     * Schedules any task with a given cost.
+     *
+     * @param cost The task's estimated cost.
+     * @param task The task.
+     * @param <T> The task's result type.
+     * @return A future of the task's result.
+     * @throws FillRejectedException If the queue or the memory budget is full, the task can
+     *                               never fit in the budget, or the scheduler is closed.
+     */
+
+    public <T> Future<T> submit(FillCost cost, Callable<T> task)
+    {
+        if (cost.getMemoryBytes() > memoryBudget)
+        {
+            throw new FillRejectedException(FillRejectedException.Reason.OVER_BUDGET,
+                    String.format(OVER_BUDGET, cost.getMemoryBytes(), memoryBudget));
+        }
+        FutureTask<T> future = new FutureTask<>(task);
+        lock.lock();
+        try
+        {
+            if (closed)
+            {
+                throw new FillRejectedException(FillRejectedException.Reason.SHUTDOWN, SHUTDOWN);
+            }
+            if (queue.size() >= maxQueued)
+            {
+                throw new FillRejectedException(FillRejectedException.Reason.QUEUE_FULL,
+                        String.format(QUEUE_FULL, queue.size()));
+            }
+            if (reservedBytes + cost.getMemoryBytes() > memoryBudget)
+            {
+                throw new FillRejectedException(FillRejectedException.Reason.BUDGET_FULL,
+                        String.format(BUDGET_FULL, cost.getMemoryBytes(),
+                                memoryBudget - reservedBytes));
+            }
+            queue.add(new Entry(cost, future, System.nanoTime()));
+            reservedBytes += cost.getMemoryBytes();
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * Returns the number of jobs waiting for admission.
+     *
+     * @return The queue length.
+     */
+
+    public int getQueuedCount()
+    {
+        lock.lock();
+        try
+        {
+            return queue.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the memory reserved by the queued and running jobs.
+     *
+     * @return The sum of their estimated footprints, in bytes.
+     */
+
+    public long getReservedBytes()
+    {
+        lock.lock();
+        try
+        {
+            return reservedBytes;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting jobs, cancels the waiting ones and lets the running ones finish.
+     */
+
+    @Override
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            closed = true;
+            for (Entry entry : queue)
+            {
+                entry.task.cancel(false);
+                reservedBytes -= entry.cost.getMemoryBytes();
+            }
+            queue.clear();
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs admitted jobs until the scheduler is closed.
+     */
+
+    private void work()
+    {
+        while (true)
+        {
+            Entry entry;
+            lock.lock();
+            try
+            {
+                entry = next();
+                while (entry == null && !closed)
+                {
+                    changed.awaitUninterruptibly();
+                    entry = next();
+                }
+                if (entry == null)
+                {
+                    return;
+                }
+                queue.remove(entry);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            try
+            {
+                entry.task.run();
+            }
+            finally
+            {
+                lock.lock();
+                try
+                {
+                    reservedBytes -= entry.cost.getMemoryBytes();
+                    changed.signalAll();
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the waiting job with the smallest aged cost. Must be called with the lock held.
+     *
+     * @return The job to run, or null if none is waiting.
+     */
+
+    private Entry next()
+    {
+        long now = System.nanoTime();
+        Entry best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Entry entry : queue)
+        {
+            double score = entry.cost.getCpu() / (1.0 + (double) (now - entry.enqueued) /
+                    agingNanos);
+            if (score < bestScore)
+            {
+                best = entry;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A job waiting for admission.
+     */
+
+    private static class Entry
+    {
+        private final FillCost cost;
+        private final FutureTask<?> task;
+        private final long enqueued;
+
+        private Entry(FillCost cost, FutureTask<?> task, long enqueued)
+        {
+            this.cost = cost;
+            this.task = task;
+            this.enqueued = enqueued;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package lib.algorithms;
 
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
 import lib.entities.Pixel;
 import lib.entities.ProcessedImageFields;
 
@@ -20,6 +22,45 @@ public abstract class FillingAlgorithm
     public Pixel[][] evaluatePixels(ProcessedImageFields fields,
                                     WeightFunction weightFunction){return fields.getPixelArray();}
 
+    /**
+     * Evaluates the hole pixels without modifying the pixel array and returns only their new
+     * values. Default implementation evaluates every hole pixel with evaluatePixel.
+     *
+     * @param fields Processed image data containing hole and boundary pixels.
+     * @param weightFunction The weight function used for the weighted average.
+     * @return A FillResult holding the hole indices and their filled values.
+     */
+
+    public FillResult evaluateHoles(ProcessedImageFields fields, WeightFunction weightFunction)
+    {
+        HoleGeometry geometry = HoleGeometry.fromFields(fields);
+        int[] holeIndices = geometry.getHoleIndices();
+        float[] values = new float[holeIndices.length];
+        for (int h = 0; h < holeIndices.length; h++)
+        {
+            values[h] = evaluatePixel(fields, weightFunction, geometry.rowOf(holeIndices[h]),
+                    geometry.colOf(holeIndices[h]));
+        }
+        return new FillResult(geometry.getWidth(), geometry.getHeight(), holeIndices, values);
+    }
+
+    /**
+     * Evaluates a single pixel without modifying the pixel array, so callers can fill only the
+     * pixels they need. Default implementation returns the pixel's current value.
+     *
+     * @param fields Processed image data containing hole and boundary pixels.
+     * @param weightFunction The weight function used for the weighted average.
+     * @param row Row index of the pixel.
+     * @param col Column index of the pixel.
+     * @return The pixel's filled value.
+     */
+
+    public float evaluatePixel(ProcessedImageFields fields, WeightFunction weightFunction,
+                               int row, int col)
+    {
+        return fields.getPixelArray()[row][col].getValue();
+    }
+
     /**
      * Returns the name of the algorithm.
      *
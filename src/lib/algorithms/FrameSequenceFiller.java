@@ -0,0 +1,166 @@
+package lib.algorithms;
+
+import lib.entities.HoleGeometry;
+import lib.entities.Pixel;
+import lib.entities.ProcessedImageFields;
+
+/**
+ * Fills a sequence of frames that share one mask, e.g. a video or a time-lapse with a fixed
+ * watermark. The weighted average is linear in the boundary values, so after the first frame
+ * only the boundary pixels whose value changed by more than a threshold contribute, through
+ * weight * delta, to the hole numerators. The denominators never change for a fixed mask.
+ * Mostly static footage therefore costs little more than writing the hole values per frame.
+ */
+
+public class FrameSequenceFiller
+{
+    private static final String SIZE_MISMATCH = "Frame size does not match the mask: ";
+
+    private final HoleGeometry geometry;
+    private final WeightFunction weightFunc;
+    private final float threshold;
+    private final Pixel[] hole;
+    private final Pixel[] bound;
+    private final double[] numerators;
+    private final double[] denominators;
+    private final float[] appliedBoundValues;
+    private final int[] changed;
+    private final float[] deltas;
+    private boolean started;
+    private int lastChangedCount;
+
+    /**
+     * Constructs a FrameSequenceFiller.
+     *
+     * @param maskFields The processed image fields of the shared mask.
+     * @param weightFunc The weight function used for the weighted average.
+     * @param threshold Boundary changes up to this absolute value are ignored until they add
+     *                  up to more than it.
+     */
+
+    public FrameSequenceFiller(ProcessedImageFields maskFields, WeightFunction weightFunc,
+                               float threshold)
+    {
+        this.geometry = HoleGeometry.fromFields(maskFields);
+        this.weightFunc = weightFunc;
+        this.threshold = threshold;
+        this.hole = toPixels(geometry.getHoleIndices());
+        this.bound = toPixels(geometry.getBoundaryIndices());
+        this.numerators = new double[hole.length];
+        this.denominators = new double[hole.length];
+        this.appliedBoundValues = new float[bound.length];
+        this.changed = new int[bound.length];
+        this.deltas = new float[bound.length];
+    }
+
+    /**
+     * Fills the hole pixels of the next frame in place.
+     *
+     * @param frame The 2D array of pixels of the frame, of the mask's size.
+     * @return The same array with the hole pixels filled.
+     */
+
+    public Pixel[][] nextFrame(Pixel[][] frame)
+    {
+        int width = geometry.getWidth();
+        if (frame.length != geometry.getHeight() || frame[0].length != width)
+        {
+            throw new IllegalArgumentException(SIZE_MISMATCH + frame[0].length + "x" +
+                    frame.length);
+        }
+        int[] boundIdx = geometry.getBoundaryIndices();
+        if (!started)
+        {
+            for (int b = 0; b < bound.length; b++)
+            {
+                appliedBoundValues[b] = frame[boundIdx[b] / width][boundIdx[b] % width]
+                        .getValue();
+            }
+            fillFirstFrame();
+            started = true;
+        }
+        else
+        {
+            int count = 0;
+            for (int b = 0; b < bound.length; b++)
+            {
+                float value = frame[boundIdx[b] / width][boundIdx[b] % width].getValue();
+                float delta = value - appliedBoundValues[b];
+                if (Math.abs(delta) > threshold)
+                {
+                    changed[count] = b;
+                    deltas[count] = delta;
+                    appliedBoundValues[b] = value;
+                    count++;
+                }
+            }
+            applyDeltas(count);
+        }
+
+        int[] holeIdx = geometry.getHoleIndices();
+        for (int h = 0; h < hole.length; h++)
+        {
+            frame[holeIdx[h] / width][holeIdx[h] % width].setValue(
+                    (float) (numerators[h] / denominators[h]));
+        }
+        return frame;
+    }
+
+    /**
+     * Returns how many boundary pixels contributed a delta to the last frame. The first frame
+     * counts all boundary pixels.
+     *
+     * @return The number of changed boundary pixels.
+     */
+
+    public int getLastChangedCount()
+    {
+        return lastChangedCount;
+    }
+
+    private void fillFirstFrame()
+    {
+        for (int h = 0; h < hole.length; h++)
+        {
+            double denominator = 0;
+            double numerator = 0;
+            for (int b = 0; b < bound.length; b++)
+            {
+                float currWeight = weightFunc.calculateWeight(hole[h], bound[b]);
+                numerator += currWeight * appliedBoundValues[b];
+                denominator += currWeight;
+            }
+            numerators[h] = numerator;
+            denominators[h] = denominator;
+        }
+        lastChangedCount = bound.length;
+    }
+
+    private void applyDeltas(int count)
+    {
+        if (count > 0)
+        {
+            for (int h = 0; h < hole.length; h++)
+            {
+                double numerator = numerators[h];
+                for (int i = 0; i < count; i++)
+                {
+                    numerator += weightFunc.calculateWeight(hole[h], bound[changed[i]]) *
+                            deltas[i];
+                }
+                numerators[h] = numerator;
+            }
+        }
+        lastChangedCount = count;
+    }
+
+    private Pixel[] toPixels(int[] indices)
+    {
+        Pixel[] pixels = new Pixel[indices.length];
+        for (int i = 0; i < indices.length; i++)
+        {
+            pixels[i] = new Pixel(geometry.rowOf(indices[i]), geometry.colOf(indices[i]), 0);
+        }
+        return pixels;
+    }
+}
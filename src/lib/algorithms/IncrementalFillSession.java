@@ -0,0 +1,304 @@
+package lib.algorithms;
+
+import lib.entities.Pixel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Keeps a hole-filling result alive while the mask is edited a few strokes at a time.
+ * For every hole pixel the numerator and denominator sums of the weighted average are kept,
+ * so an edit only subtracts the boundary terms that disappeared, adds the ones that appeared
+ * and computes the newly painted hole pixels, instead of filling the whole image again.
+ */
+
+public class IncrementalFillSession
+{
+    private static final float HOLE_VALUE = -1f;
+    private final int[][] DIRECTIONS = {
+            {-1, 0}, {0, 1}, {1, 0}, {0, -1}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}
+    };
+
+    private final Pixel[][] source;
+    private final Pixel[][] filled;
+    private final int connectivity;
+    private final WeightFunction weightFunc;
+    private final int height;
+    private final int width;
+
+    private final boolean[] hole;
+    private final boolean[] boundary;
+    private final double[] numerators;
+    private final double[] denominators;
+    private final LinkedHashSet<Pixel> holePixels = new LinkedHashSet<>();
+    private final LinkedHashSet<Pixel> boundaryPixels = new LinkedHashSet<>();
+
+    /**
+     * Opens a session over an image with an initially empty hole.
+     *
+     * @param source The grayscale image to fill. It is never modified by the session.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @param weightFunc The weight function used for the weighted average.
+     */
+
+    public IncrementalFillSession(Pixel[][] source, int connectivity, WeightFunction weightFunc)
+    {
+        this.source = source;
+        this.connectivity = connectivity;
+        this.weightFunc = weightFunc;
+        this.height = source.length;
+        this.width = source[0].length;
+        this.hole = new boolean[height * width];
+        this.boundary = new boolean[height * width];
+        this.numerators = new double[height * width];
+        this.denominators = new double[height * width];
+        this.filled = new Pixel[height][width];
+        for (int row = 0; row < height; row++)
+        {
+            for (int col = 0; col < width; col++)
+            {
+                filled[row][col] = new Pixel(row, col, source[row][col].getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds the given pixels to the hole, e.g. a newly painted stroke.
+     * Pixels outside the image or already in the hole are ignored.
+     *
+     * @param stroke Pixels whose coordinates should become part of the hole.
+     */
+
+    public void addToHole(Collection<Pixel> stroke)
+    {
+        List<Pixel> changed = new ArrayList<>();
+        for (Pixel p : stroke)
+        {
+            if (inBounds(p.getX(), p.getY()) && !hole[index(p.getX(), p.getY())])
+            {
+                Pixel sourcePixel = source[p.getX()][p.getY()];
+                hole[index(p.getX(), p.getY())] = true;
+                changed.add(sourcePixel);
+            }
+        }
+        if (changed.isEmpty())
+        {
+            return;
+        }
+        updateBoundary(changed);
+        for (Pixel h : changed)
+        {
+            holePixels.add(h);
+            accumulate(h);
+        }
+        refreshHoleValues();
+    }
+
+    /**
+     * Removes the given pixels from the hole, e.g. an erased stroke.
+     * Removed pixels get their original intensity back.
+     *
+     * @param stroke Pixels whose coordinates should no longer be part of the hole.
+     */
+
+    public void removeFromHole(Collection<Pixel> stroke)
+    {
+        List<Pixel> changed = new ArrayList<>();
+        for (Pixel p : stroke)
+        {
+            if (inBounds(p.getX(), p.getY()) && hole[index(p.getX(), p.getY())])
+            {
+                Pixel sourcePixel = source[p.getX()][p.getY()];
+                int idx = index(p.getX(), p.getY());
+                hole[idx] = false;
+                numerators[idx] = 0;
+                denominators[idx] = 0;
+                holePixels.remove(sourcePixel);
+                filled[p.getX()][p.getY()].setValue(sourcePixel.getValue());
+                changed.add(sourcePixel);
+            }
+        }
+        if (changed.isEmpty())
+        {
+            return;
+        }
+        updateBoundary(changed);
+        refreshHoleValues();
+    }
+
+    /**
+     * Returns the current value of a pixel: the filled value inside the hole and the original
+     * intensity elsewhere.
+     *
+     * @param row Row index of the pixel.
+     * @param col Column index of the pixel.
+     * @return The pixel's value.
+     */
+
+    public float getValue(int row, int col)
+    {
+        return filled[row][col].getValue();
+    }
+
+    /**
+     * Returns the filled image as maintained by the session. The array is updated in place by
+     * later edits.
+     *
+     * @return A 2D array of Pixels representing the filled image.
+     */
+
+    public Pixel[][] getPixelArray()
+    {
+        return filled;
+    }
+
+    /**
+     * Returns the pixels currently in the hole.
+     *
+     * @return A set of the source pixels that are part of the hole.
+     */
+
+    public LinkedHashSet<Pixel> getHolePixels()
+    {
+        return holePixels;
+    }
+
+    /**
+     * Returns the pixels currently on the hole's boundary.
+     *
+     * @return A set of the source pixels that are boundary pixels.
+     */
+
+    public LinkedHashSet<Pixel> getBoundaryPixels()
+    {
+        return boundaryPixels;
+    }
+
+    /**
+     * Recomputes the boundary status around the edited pixels and applies the resulting
+     * boundary terms to the hole pixels that existed before the edit.
+     *
+     * @param changed The pixels whose hole membership just changed.
+     */
+
+    private void updateBoundary(List<Pixel> changed)
+    {
+        LinkedHashSet<Pixel> candidates = new LinkedHashSet<>();
+        for (Pixel p : changed)
+        {
+            candidates.add(p);
+            for (int connection = 0; connection < connectivity; connection++)
+            {
+                int row = p.getX() + DIRECTIONS[connection][0];
+                int col = p.getY() + DIRECTIONS[connection][1];
+                if (inBounds(row, col))
+                {
+                    candidates.add(source[row][col]);
+                }
+            }
+        }
+
+        List<Pixel> added = new ArrayList<>();
+        List<Pixel> removed = new ArrayList<>();
+        for (Pixel c : candidates)
+        {
+            int idx = index(c.getX(), c.getY());
+            boolean isBoundary = !hole[idx] && hasHoleNeighbor(c.getX(), c.getY());
+            if (isBoundary && !boundary[idx])
+            {
+                added.add(c);
+            }
+            else if (!isBoundary && boundary[idx])
+            {
+                removed.add(c);
+            }
+            boundary[idx] = isBoundary;
+        }
+
+        for (Pixel h : holePixels)
+        {
+            int idx = index(h.getX(), h.getY());
+            double numerator = numerators[idx];
+            double denominator = denominators[idx];
+            for (Pixel v : removed)
+            {
+                float currWeight = weightFunc.calculateWeight(h, v);
+                numerator -= currWeight * v.getValue();
+                denominator -= currWeight;
+            }
+            for (Pixel v : added)
+            {
+                float currWeight = weightFunc.calculateWeight(h, v);
+                numerator += currWeight * v.getValue();
+                denominator += currWeight;
+            }
+            numerators[idx] = numerator;
+            denominators[idx] = denominator;
+        }
+
+        boundaryPixels.removeAll(removed);
+        boundaryPixels.addAll(added);
+    }
+
+    /**
+     * Computes the full numerator and denominator of a newly added hole pixel.
+     *
+     * @param h The new hole pixel.
+     */
+
+    private void accumulate(Pixel h)
+    {
+        double numerator = 0;
+        double denominator = 0;
+        for (Pixel v : boundaryPixels)
+        {
+            float currWeight = weightFunc.calculateWeight(h, v);
+            numerator += currWeight * v.getValue();
+            denominator += currWeight;
+        }
+        int idx = index(h.getX(), h.getY());
+        numerators[idx] = numerator;
+        denominators[idx] = denominator;
+    }
+
+    /**
+     * Writes numerator / denominator of every hole pixel into the filled image.
+     */
+
+    private void refreshHoleValues()
+    {
+        for (Pixel h : holePixels)
+        {
+            int idx = index(h.getX(), h.getY());
+            float value = denominators[idx] > 0 ? (float) (numerators[idx] / denominators[idx])
+                    : HOLE_VALUE;
+            filled[h.getX()][h.getY()].setValue(value);
+        }
+    }
+
+    private boolean hasHoleNeighbor(int rowIdx, int colIdx)
+    {
+        for (int connection = 0; connection < connectivity; connection++)
+        {
+            int row = rowIdx + DIRECTIONS[connection][0];
+            int col = colIdx + DIRECTIONS[connection][1];
+            if (inBounds(row, col) && hole[index(row, col)])
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inBounds(int row, int col)
+    {
+        return row >= 0 && row < height && col >= 0 && col < width;
+    }
+
+    private int index(int row, int col)
+    {
+        return row * width + col;
+    }
+}
@@ -0,0 +1,168 @@
+package lib.algorithms;
+
+import lib.entities.Pixel;
+import lib.entities.ProcessedImageFields;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A filled-image view that evaluates hole pixels only when a region is requested.
+ * The image is split into square tiles; a tile is filled on first access, using the algorithm's
+ * single-pixel evaluation for its hole pixels, and kept in a least-recently-used cache.
+ * Panning a viewport over the image therefore only pays for the tiles that become visible.
+ * The processed image fields are read but never modified.
+ */
+
+public class LazyFilledImage
+{
+    private final ProcessedImageFields fields;
+    private final FillingAlgorithm algorithm;
+    private final WeightFunction weightFunc;
+    private final int tileSize;
+    private final int height;
+    private final int width;
+    private final int tileColumns;
+    private final LinkedHashMap<Integer, float[]> tiles;
+    private long evaluatedHolePixels;
+
+    /**
+     * Constructs a LazyFilledImage.
+     *
+     * @param fields The processed image fields containing hole and boundary pixels.
+     * @param algorithm The algorithm evaluating single hole pixels.
+     * @param weightFunc The weight function used for the weighted average.
+     * @param tileSize The side length of a cached tile, in pixels.
+     * @param maxTiles The maximal number of tiles kept in the cache.
+     */
+
+    public LazyFilledImage(ProcessedImageFields fields, FillingAlgorithm algorithm,
+                           WeightFunction weightFunc, int tileSize, int maxTiles)
+    {
+        this.fields = fields;
+        this.algorithm = algorithm;
+        this.weightFunc = weightFunc;
+        this.tileSize = tileSize;
+        this.height = fields.getPixelArray().length;
+        this.width = fields.getPixelArray()[0].length;
+        this.tileColumns = (width + tileSize - 1) / tileSize;
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest)
+            {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+    /**
+     * Returns the filled value of a single pixel.
+     *
+     * @param row Row index of the pixel.
+     * @param col Column index of the pixel.
+     * @return The filled value.
+     */
+
+    public float getValue(int row, int col)
+    {
+        float[] tile = getTile(row / tileSize, col / tileSize);
+        return tile[(row % tileSize) * tileSize + col % tileSize];
+    }
+
+    /**
+     * Returns the filled values of a rectangular region, clipped to the image.
+     *
+     * @param row The region's top row.
+     * @param col The region's left column.
+     * @param regionHeight The region's height.
+     * @param regionWidth The region's width.
+     * @return The values of the region, indexed as values[row][col] relative to its corner.
+     */
+
+    public float[][] getRegion(int row, int col, int regionHeight, int regionWidth)
+    {
+        int top = Math.max(0, row);
+        int left = Math.max(0, col);
+        int bottom = Math.min(height, row + regionHeight);
+        int right = Math.min(width, col + regionWidth);
+        float[][] region = new float[Math.max(0, bottom - top)][Math.max(0, right - left)];
+
+        for (int tileRow = top / tileSize; tileRow * tileSize < bottom; tileRow++)
+        {
+            for (int tileCol = left / tileSize; tileCol * tileSize < right; tileCol++)
+            {
+                float[] tile = getTile(tileRow, tileCol);
+                int rowFrom = Math.max(top, tileRow * tileSize);
+                int rowTo = Math.min(bottom, (tileRow + 1) * tileSize);
+                int colFrom = Math.max(left, tileCol * tileSize);
+                int colTo = Math.min(right, (tileCol + 1) * tileSize);
+                for (int r = rowFrom; r < rowTo; r++)
+                {
+                    System.arraycopy(tile, (r - tileRow * tileSize) * tileSize +
+                            colFrom - tileCol * tileSize, region[r - top], colFrom - left,
+                            colTo - colFrom);
+                }
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Returns the number of hole pixels evaluated so far, including re-evaluations of evicted
+     * tiles.
+     *
+     * @return The number of evaluated hole pixels.
+     */
+
+    public synchronized long getEvaluatedHolePixels()
+    {
+        return evaluatedHolePixels;
+    }
+
+    /**
+     * Drops all cached tiles.
+     */
+
+    public synchronized void clear()
+    {
+        tiles.clear();
+    }
+
+    private synchronized float[] getTile(int tileRow, int tileCol)
+    {
+        int key = tileRow * tileColumns + tileCol;
+        float[] tile = tiles.get(key);
+        if (tile == null)
+        {
+            tile = computeTile(tileRow, tileCol);
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    private float[] computeTile(int tileRow, int tileCol)
+    {
+        float[] tile = new float[tileSize * tileSize];
+        Pixel[][] pixels = fields.getPixelArray();
+        int rowTo = Math.min(height, (tileRow + 1) * tileSize);
+        int colTo = Math.min(width, (tileCol + 1) * tileSize);
+        for (int row = tileRow * tileSize; row < rowTo; row++)
+        {
+            for (int col = tileCol * tileSize; col < colTo; col++)
+            {
+                int idx = (row - tileRow * tileSize) * tileSize + col - tileCol * tileSize;
+                if (fields.isHole(row, col))
+                {
+                    tile[idx] = algorithm.evaluatePixel(fields, weightFunc, row, col);
+                    evaluatedHolePixels++;
+                }
+                else
+                {
+                    tile[idx] = pixels[row][col].getValue();
+                }
+            }
+        }
+        return tile;
+    }
+}
@@ -0,0 +1,162 @@
+package lib.algorithms;
+
+import lib.entities.HoleGeometry;
+import lib.entities.Pixel;
+import lib.entities.ProcessedImageFields;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fills one image with the default weight function for many (z, e) configurations in a single
+ * pass over the hole-boundary pairs. Each distance is computed once, its integer powers are
+ * built by repeated multiplication up to the largest z, and every configuration's weight is
+ * derived from them, so a sweep costs little more than a single run.
+ */
+
+public class WeightSweep
+{
+    private static final String INVALID_CONFIGS = "z and e lists must be non-empty and of the " +
+            "same length";
+
+    private final int[] zValues;
+    private final float[] eValues;
+    private final int maxZ;
+
+    /**
+     * Constructs a WeightSweep over the given configurations.
+     *
+     * @param zValues The exponent of each configuration.
+     * @param eValues The small constant of each configuration, in the same order.
+     */
+
+    public WeightSweep(int[] zValues, float[] eValues)
+    {
+        if (zValues.length == 0 || zValues.length != eValues.length)
+        {
+            throw new IllegalArgumentException(INVALID_CONFIGS);
+        }
+        this.zValues = zValues.clone();
+        this.eValues = eValues.clone();
+        int max = 0;
+        for (int z : zValues)
+        {
+            max = Math.max(max, z);
+        }
+        this.maxZ = max;
+    }
+
+    /**
+     * Runs all configurations on the processed image fields. The fields are not modified.
+     *
+     * @param fields The processed image fields containing hole and boundary pixels.
+     * @return One filled copy of the pixel array per configuration, in configuration order.
+     */
+
+    public List<Pixel[][]> run(ProcessedImageFields fields)
+    {
+        HoleGeometry geometry = HoleGeometry.fromFields(fields);
+        Pixel[][] pixels = fields.getPixelArray();
+        int width = geometry.getWidth();
+        int[] boundIdx = geometry.getBoundaryIndices();
+        float[] boundValues = new float[boundIdx.length];
+        for (int b = 0; b < boundIdx.length; b++)
+        {
+            boundValues[b] = pixels[boundIdx[b] / width][boundIdx[b] % width].getValue();
+        }
+
+        float[][] holeValues = evaluate(geometry, boundValues);
+
+        List<Pixel[][]> results = new ArrayList<>();
+        int[] holeIdx = geometry.getHoleIndices();
+        for (float[] values : holeValues)
+        {
+            Pixel[][] copy = new Pixel[pixels.length][width];
+            for (int row = 0; row < pixels.length; row++)
+            {
+                for (int col = 0; col < width; col++)
+                {
+                    copy[row][col] = new Pixel(row, col, pixels[row][col].getValue());
+                }
+            }
+            for (int h = 0; h < holeIdx.length; h++)
+            {
+                copy[holeIdx[h] / width][holeIdx[h] % width].setValue(values[h]);
+            }
+            results.add(copy);
+        }
+        return results;
+    }
+
+    /**
+     * Computes the filled hole values of every configuration.
+     *
+     * @param geometry The hole geometry.
+     * @param boundValues The boundary values, in the geometry's boundary order.
+     * @return The filled values, indexed as values[config][hole].
+     */
+
+    public float[][] evaluate(HoleGeometry geometry, float[] boundValues)
+    {
+        int configs = zValues.length;
+        int[] holeIdx = geometry.getHoleIndices();
+        int[] boundIdx = geometry.getBoundaryIndices();
+        int[] boundRows = new int[boundIdx.length];
+        int[] boundCols = new int[boundIdx.length];
+        for (int b = 0; b < boundIdx.length; b++)
+        {
+            boundRows[b] = geometry.rowOf(boundIdx[b]);
+            boundCols[b] = geometry.colOf(boundIdx[b]);
+        }
+
+        float[][] values = new float[configs][holeIdx.length];
+        double[] powers = new double[maxZ + 1];
+        float[] numerators = new float[configs];
+        float[] denominators = new float[configs];
+
+        for (int h = 0; h < holeIdx.length; h++)
+        {
+            int row = geometry.rowOf(holeIdx[h]);
+            int col = geometry.colOf(holeIdx[h]);
+            Arrays.fill(numerators, 0);
+            Arrays.fill(denominators, 0);
+            for (int b = 0; b < boundIdx.length; b++)
+            {
+                float xVal = row - boundRows[b];
+                float yVal = col - boundCols[b];
+                float distance = (float) Math.sqrt(xVal * xVal + yVal * yVal);
+                powers[0] = 1;
+                for (int z = 1; z <= maxZ; z++)
+                {
+                    powers[z] = powers[z - 1] * distance;
+                }
+                float value = boundValues[b];
+                for (int k = 0; k < configs; k++)
+                {
+                    double power = zValues[k] >= 0 ? powers[zValues[k]]
+                            : Math.pow(distance, zValues[k]);
+                    float currWeight = 1.0f / (float) (power + eValues[k]);
+                    numerators[k] += currWeight * value;
+                    denominators[k] += currWeight;
+                }
+            }
+            for (int k = 0; k < configs; k++)
+            {
+                values[k][h] = numerators[k] / denominators[k];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of configurations in the sweep.
+     *
+     * @return The number of (z, e) pairs.
+     */
+
+    public int getConfigCount()
+    {
+        return zValues.length;
+    }
+}
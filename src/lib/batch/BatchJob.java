@@ -0,0 +1,118 @@
+package lib.batch;
+
+/**
+ * Describes one job of a batch: an image, its mask and the fill parameters.
+ */
+
+public class BatchJob
+{
+    /**
+     * The algorithm name that selects the colour fill instead of a grayscale algorithm.
+     */
+    public static final String COLOR_ALGORITHM = "color";
+
+    private final String imagePath;
+    private final String maskPath;
+    private final int connectivity;
+    private final int z;
+    private final float e;
+    private final String algorithm;
+
+    /**
+     * Constructs a BatchJob.
+     *
+     * @param imagePath Path to the image file.
+     * @param maskPath Path to the mask, or null if no mask was found for the image.
+     * @param connectivity The pixel connectivity type (4-connected or 8-connected).
+     * @param z The exponent parameter for the weight function.
+     * @param e A small constant added to avoid division by zero.
+     * @param algorithm The algorithm name, as accepted by AlgorithmManager.algorithmFactory,
+     *                  or "color".
+     */
+
+    public BatchJob(String imagePath, String maskPath, int connectivity, int z, float e,
+                    String algorithm)
+    {
+        this.imagePath = imagePath;
+        this.maskPath = maskPath;
+        this.connectivity = connectivity;
+        this.z = z;
+        this.e = e;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Returns the image path.
+     *
+     * @return Path to the image file.
+     */
+
+    public String getImagePath()
+    {
+        return imagePath;
+    }
+
+    /**
+     * Returns the mask path.
+     *
+     * @return Path to the mask, or null if no mask was found.
+     */
+
+    public String getMaskPath()
+    {
+        return maskPath;
+    }
+
+    /**
+     * Returns the pixel connectivity.
+     *
+     * @return 4 or 8.
+     */
+
+    public int getConnectivity()
+    {
+        return connectivity;
+    }
+
+    /**
+     * Getter for z.
+     * @return z.
+     */
+
+    public int getZ()
+    {
+        return z;
+    }
+
+    /**
+     * Getter for e.
+     * @return e.
+     */
+
+    public float getE()
+    {
+        return e;
+    }
+
+    /**
+     * Returns the algorithm name.
+     *
+     * @return The algorithm name.
+     */
+
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * Checks whether the job uses the colour fill.
+     *
+     * @return True if the algorithm is "color".
+     */
+
+    public boolean isColor()
+    {
+        return COLOR_ALGORITHM.equalsIgnoreCase(algorithm);
+    }
+}
@@ -0,0 +1,257 @@
+package lib.batch;
+
+import lib.io.MaskReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lists the jobs of a batch from one of three sources:
+ * <ul>
+ *     <li>A directory: every image is paired with the file named [image name]_mask.[any
+ *     extension] next to it. Outputs (_FILLED) and masks are not treated as images.</li>
+ *     <li>A CSV manifest (.csv) with the columns image, mask, z, e, connectivity, algorithm.
+ *     Blank lines and lines starting with '#' are skipped, and so is the first remaining
+ *     line when its first field is "image" (a header).</li>
+ *     <li>A JSON manifest (.json): an array of objects with the same keys.</li>
+ * </ul>
+ * Missing parameters take the manifest's defaults, and relative paths are resolved against the
+ * manifest's directory.
+ */
+
+public class BatchManifest
+{
+    private static final String DEFAULT_ALGORITHM = "HoleFillingAlgorithm";
+    private static final String MASK_SUFFIX = "_mask";
+    private static final String FILLED = "_FILLED";
+    private static final String CSV = ".csv";
+    private static final String JSON = ".json";
+    private static final String COMMENT = "#";
+    private static final String HEADER = "image";
+    private static final String IMAGE_KEY = "image";
+    private static final String MASK_KEY = "mask";
+    private static final String Z_KEY = "z";
+    private static final String E_KEY = "e";
+    private static final String CONNECTIVITY_KEY = "connectivity";
+    private static final String ALGORITHM_KEY = "algorithm";
+    private static final String BAD_ROW = "Malformed manifest entry: ";
+    private static final String NOT_AN_ARRAY = "A JSON manifest must be an array of jobs: ";
+    private static final String NO_SOURCE = "No such directory or manifest: ";
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "jpg", "jpeg", "bmp",
+            "gif", "tif", "tiff", "pgm", "ppm", "pnm", "pfm", "raw");
+
+    private final int connectivity;
+    private final int z;
+    private final float e;
+
+    /**
+     * Constructs a BatchManifest.
+     *
+     * @param connectivity The default pixel connectivity type (4-connected or 8-connected).
+     * @param z The default exponent parameter for the weight function.
+     * @param e The default constant added to avoid division by zero.
+     */
+
+    public BatchManifest(int connectivity, int z, float e)
+    {
+        this.connectivity = connectivity;
+        this.z = z;
+        this.e = e;
+    }
+
+    /**
+     * Lists the jobs of a directory or manifest.
+     *
+     * @param source Path to a directory, a .csv manifest or a .json manifest.
+     * @return The jobs, in directory-listing or manifest order.
+     * @throws IOException If the source cannot be read or a manifest is malformed.
+     */
+
+    public List<BatchJob> read(String source) throws IOException
+    {
+        Path path = Paths.get(source);
+        if (Files.isDirectory(path))
+        {
+            return fromDirectory(path);
+        }
+        if (!Files.isRegularFile(path))
+        {
+            throw new IOException(NO_SOURCE + source);
+        }
+        String lower = source.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(JSON))
+        {
+            return fromJson(path);
+        }
+        if (lower.endsWith(CSV))
+        {
+            return fromCsv(path);
+        }
+        throw new IOException(NO_SOURCE + source);
+    }
+
+    private List<BatchJob> fromDirectory(Path dir) throws IOException
+    {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir))
+        {
+            files = listing.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        List<BatchJob> jobs = new ArrayList<>();
+        for (Path file : files)
+        {
+            String base = baseName(file);
+            if (!IMAGE_EXTENSIONS.contains(extension(file)) || base.endsWith(MASK_SUFFIX) ||
+                    base.contains(FILLED))
+            {
+                continue;
+            }
+            String mask = null;
+            for (Path candidate : files)
+            {
+                if (baseName(candidate).equals(base + MASK_SUFFIX))
+                {
+                    mask = candidate.toString();
+                    break;
+                }
+            }
+            jobs.add(new BatchJob(file.toString(), mask, connectivity, z, e, DEFAULT_ALGORITHM));
+        }
+        return jobs;
+    }
+
+    private List<BatchJob> fromCsv(Path file) throws IOException
+    {
+        List<BatchJob> jobs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null)
+            {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith(COMMENT))
+                {
+                    continue;
+                }
+                String[] fields = trimmed.split(",", -1);
+                boolean header = first && fields[0].trim().equalsIgnoreCase(HEADER);
+                first = false;
+                if (header)
+                {
+                    continue;
+                }
+                if (fields.length < 2)
+                {
+                    throw new IOException(BAD_ROW + line);
+                }
+                jobs.add(job(file, fields[0].trim(), fields[1].trim(), field(fields, 2),
+                        field(fields, 3), field(fields, 4), field(fields, 5), line));
+            }
+        }
+        return jobs;
+    }
+
+    private List<BatchJob> fromJson(Path file) throws IOException
+    {
+        Object parsed = new JsonParser(Files.readString(file, StandardCharsets.UTF_8)).parse();
+        if (!(parsed instanceof List))
+        {
+            throw new IOException(NOT_AN_ARRAY + file);
+        }
+        List<BatchJob> jobs = new ArrayList<>();
+        for (Object entry : (List<?>) parsed)
+        {
+            if (!(entry instanceof Map))
+            {
+                throw new IOException(BAD_ROW + entry);
+            }
+            Map<?, ?> object = (Map<?, ?>) entry;
+            jobs.add(job(file, text(object.get(IMAGE_KEY)), text(object.get(MASK_KEY)),
+                    text(object.get(Z_KEY)), text(object.get(E_KEY)),
+                    text(object.get(CONNECTIVITY_KEY)), text(object.get(ALGORITHM_KEY)),
+                    String.valueOf(entry)));
+        }
+        return jobs;
+    }
+
+    private BatchJob job(Path manifest, String image, String mask, String zField, String eField,
+                         String connectivityField, String algorithm, String entry)
+            throws IOException
+    {
+        if (image.isEmpty() || mask.isEmpty())
+        {
+            throw new IOException(BAD_ROW + entry);
+        }
+        try
+        {
+            return new BatchJob(resolve(manifest, image), mask.equals(MaskReader.ALPHA_MASK) ?
+                    mask : resolve(manifest, mask),
+                    connectivityField.isEmpty() ? connectivity : parseInt(connectivityField),
+                    zField.isEmpty() ? z : parseInt(zField),
+                    eField.isEmpty() ? e : Float.parseFloat(eField),
+                    algorithm.isEmpty() ? DEFAULT_ALGORITHM : algorithm);
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IOException(BAD_ROW + entry);
+        }
+    }
+
+    /**
+     * Parses an integer field, accepting the "8.0" form JSON numbers are printed in.
+     */
+
+    private static int parseInt(String field)
+    {
+        double value = Double.parseDouble(field);
+        if (value != Math.rint(value))
+        {
+            throw new NumberFormatException(field);
+        }
+        return (int) value;
+    }
+
+    private static String resolve(Path manifest, String path)
+    {
+        Path parent = manifest.toAbsolutePath().getParent();
+        Path resolved = Paths.get(path);
+        return resolved.isAbsolute() || parent == null ? path : parent.resolve(resolved)
+                .toString();
+    }
+
+    private static String field(String[] fields, int index)
+    {
+        return index < fields.length ? fields[index].trim() : "";
+    }
+
+    private static String text(Object value)
+    {
+        return value == null ? "" : String.valueOf(value).trim();
+    }
+
+    private static String baseName(Path file)
+    {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private static String extension(Path file)
+    {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,248 @@
+package lib.batch;
+
+import lib.ImageLibraryManager;
+import lib.ImageProcessingException;
+import lib.algorithms.AlgorithmManager;
+import lib.entities.BufferAllocator;
+import lib.entities.BufferArena;
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
+import lib.entities.IntensityBuffer;
+import lib.entities.Pixel;
+import lib.entities.PlanarImage;
+import lib.entities.ProcessedImageFields;
+import lib.io.MaskReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the jobs of a batch in one JVM on a bounded pool of worker threads. Each job is run
+ * with an ImageLibraryManager that throws instead of exiting, so a bad file fails only its own
+ * job. When the pool's queue is full the submitting thread runs the job itself, which keeps the
+ * number of jobs held in memory bounded.
+ */
+
+public class BatchRunner
+{
+    private static final int NANOS_PER_MILLI = 1_000_000;
+    private static final int QUEUED_JOBS_PER_WORKER = 2;
+    private static final String NO_MASK = "No mask found for the image";
+    private static final String INVALID_CONNECTIVITY = "Invalid connectivity type: ";
+    private static final String SUMMARY_HEADER = "image,mask,algorithm,status,read_ms,fill_ms," +
+            "write_ms,message";
+    private static final int FOUR_CONNECTED = 4;
+    private static final int EIGHT_CONNECTED = 8;
+
+    private final int workers;
+
+    /**
+     * Constructs a BatchRunner.
+     *
+     * @param workers The number of worker threads.
+     */
+
+    public BatchRunner(int workers)
+    {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Runs every job and waits for all of them to finish.
+     *
+     * @param jobs The jobs to run.
+     * @return One summary per job, in the order of the jobs.
+     */
+
+    public List<JobSummary> run(List<BatchJob> jobs)
+    {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(workers * QUEUED_JOBS_PER_WORKER),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        List<Future<JobSummary>> futures = new ArrayList<>();
+        try
+        {
+            for (BatchJob job : jobs)
+            {
+                futures.add(pool.submit(() -> runJob(job)));
+            }
+            List<JobSummary> summaries = new ArrayList<>();
+            for (int j = 0; j < futures.size(); j++)
+            {
+                summaries.add(await(futures.get(j), jobs.get(j)));
+            }
+            return summaries;
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes the summaries as CSV, one line per job.
+     *
+     * @param summaries The job summaries.
+     * @param path Path to the CSV file.
+     * @throws IOException If the file cannot be written.
+     */
+
+    public static void writeSummary(List<JobSummary> summaries, String path) throws IOException
+    {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path),
+                StandardCharsets.UTF_8))
+        {
+            writer.write(SUMMARY_HEADER);
+            writer.newLine();
+            for (JobSummary summary : summaries)
+            {
+                BatchJob job = summary.getJob();
+                writer.write(csv(job.getImagePath()) + "," + csv(job.getMaskPath()) + "," +
+                        csv(job.getAlgorithm()) + "," + summary.getStatus() + "," +
+                        summary.getReadMillis() + "," + summary.getFillMillis() + "," +
+                        summary.getWriteMillis() + "," + csv(summary.getMessage()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Runs one job, turning any failure into a FAILED summary.
+     *
+     * @param job The job to run.
+     * @return The job's summary.
+     */
+
+    private JobSummary runJob(BatchJob job)
+    {
+        long start = System.nanoTime();
+        long read = 0;
+        long fill = 0;
+        try
+        {
+            if (job.getMaskPath() == null)
+            {
+                throw new IllegalArgumentException(NO_MASK);
+            }
+            if (job.getConnectivity() != FOUR_CONNECTED && job.getConnectivity() != EIGHT_CONNECTED)
+            {
+                throw new IllegalArgumentException(INVALID_CONNECTIVITY + job.getConnectivity());
+            }
+            ImageLibraryManager imgManager = new ImageLibraryManager(false);
+            AlgorithmManager algorithmManager = new AlgorithmManager(job.getConnectivity(),
+                    job.getZ(), job.getE());
+            if (job.isColor())
+            {
+                try (BufferAllocator allocator = BufferAllocator.pooled(BufferArena.shared()))
+                {
+                    HoleGeometry geometry;
+                    PlanarImage image;
+                    if (job.getMaskPath().equals(MaskReader.ALPHA_MASK))
+                    {
+                        image = imgManager.readColorImage(job.getImagePath(), true,
+                                IntensityBuffer.StorageMode.BYTE, allocator);
+                        geometry = imgManager.processAlphaMask(image, job.getConnectivity(),
+                                allocator);
+                        image = image.withoutAlpha();
+                    }
+                    else
+                    {
+                        geometry = imgManager.processMask(job.getMaskPath(),
+                                job.getConnectivity(), allocator);
+                        image = imgManager.readColorImage(job.getImagePath(), false,
+                                IntensityBuffer.StorageMode.BYTE, allocator);
+                    }
+                    read = System.nanoTime();
+                    FillResult result = algorithmManager.runColorAlgorithm(geometry, image);
+                    fill = System.nanoTime();
+                    if (!imgManager.patchImage(result, job.getImagePath()))
+                    {
+                        imgManager.saveImage(image, result, job.getImagePath());
+                    }
+                }
+            }
+            else
+            {
+                ProcessedImageFields fields = imgManager.processImage(job.getImagePath(),
+                        job.getMaskPath(), job.getConnectivity());
+                read = System.nanoTime();
+                algorithmManager.algorithmFactory(job.getAlgorithm());
+                Pixel[][] filledImage = algorithmManager.runAlgorithm(fields);
+                fill = System.nanoTime();
+                imgManager.saveImage(filledImage, job.getImagePath());
+            }
+            return summarize(job, JobSummary.Status.OK, "", start, read, fill);
+        }
+        catch (RuntimeException | IOException | OutOfMemoryError e)
+        {
+            String message = e instanceof ImageProcessingException ||
+                    e instanceof IllegalArgumentException ? e.getMessage() : e.toString();
+            return summarize(job, JobSummary.Status.FAILED, message, start, read, fill);
+        }
+    }
+
+    /**
+     * Builds a summary from the times a job started and finished reading and filling; a stage
+     * the job never finished runs until now.
+     */
+
+    private static JobSummary summarize(BatchJob job, JobSummary.Status status, String message,
+                                        long start, long read, long fill)
+    {
+        long end = System.nanoTime();
+        long readEnd = read == 0 ? end : read;
+        long fillEnd = fill == 0 ? end : fill;
+        return new JobSummary(job, status, message, millis(start, readEnd),
+                millis(readEnd, fillEnd), millis(fillEnd, end));
+    }
+
+    private static JobSummary await(Future<JobSummary> future, BatchJob job)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            return new JobSummary(job, JobSummary.Status.FAILED,
+                    String.valueOf(e.getCause()), 0, 0, 0);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new JobSummary(job, JobSummary.Status.FAILED, String.valueOf(e), 0, 0, 0);
+        }
+    }
+
+    private static long millis(long from, long to)
+    {
+        return (to - from) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Quotes a CSV field when it contains a separator, a quote or a line break.
+     */
+
+    private static String csv(String field)
+    {
+        if (field == null)
+        {
+            return "";
+        }
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0)
+        {
+            return field;
+        }
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,299 @@
+package lib.batch;
+
+import lib.ImageLibraryManager;
+import lib.ImageProcessingException;
+import lib.algorithms.AlgorithmManager;
+import lib.entities.BufferAllocator;
+import lib.entities.BufferArena;
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
+import lib.entities.IntensityBuffer;
+import lib.entities.MaskBitmap;
+import lib.entities.Pixel;
+import lib.entities.PlanarImage;
+import lib.entities.ProcessedImageFields;
+import lib.io.MaskReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the jobs of a batch as a pipeline of four stages: decode (read the image and the mask's
+ * hole bitmap), preprocess (extract the boundary), fill and encode (write the output). Each
+ * stage has its own pool of threads and hands its jobs to the next stage through a bounded
+ * queue, so reading, filling and writing of different jobs overlap while at most the jobs held
+ * by the stages and their queues are in memory: a full queue blocks the stage before it.
+ * Throughput approaches that of the slowest stage, which can be given more threads.
+ * A job that fails leaves the pipeline at the failing stage and is reported as FAILED.
+ */
+
+public class FillPipeline
+{
+    private static final int STAGES = 4;
+    private static final int NANOS_PER_MILLI = 1_000_000;
+    private static final String NO_MASK = "No mask found for the image";
+    private static final String INVALID_CONNECTIVITY = "Invalid connectivity type: ";
+    private static final String INVALID_THREADS = "Every stage needs at least one thread: ";
+    private static final int FOUR_CONNECTED = 4;
+    private static final int EIGHT_CONNECTED = 8;
+
+    private final int[] threads;
+    private final int queueCapacity;
+
+    /**
+     * Constructs a FillPipeline.
+     *
+     * @param decodeThreads Threads reading images and masks.
+     * @param preprocessThreads Threads extracting hole boundaries.
+     * @param fillThreads Threads filling holes.
+     * @param encodeThreads Threads writing outputs.
+     * @param queueCapacity The number of jobs each queue between two stages can hold.
+     */
+
+    public FillPipeline(int decodeThreads, int preprocessThreads, int fillThreads,
+                        int encodeThreads, int queueCapacity)
+    {
+        this.threads = new int[]{decodeThreads, preprocessThreads, fillThreads, encodeThreads};
+        for (int count : threads)
+        {
+            if (count < 1)
+            {
+                throw new IllegalArgumentException(INVALID_THREADS + Arrays.toString(threads));
+            }
+        }
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Runs every job through the pipeline and waits for all of them to leave it.
+     *
+     * @param jobs The jobs to run.
+     * @return One summary per job, in the order of the jobs.
+     */
+
+    public List<JobSummary> run(List<BatchJob> jobs)
+    {
+        JobSummary[] summaries = new JobSummary[jobs.size()];
+        CountDownLatch done = new CountDownLatch(jobs.size());
+        List<BlockingQueue<Work>> queues = new ArrayList<>();
+        for (int q = 0; q < STAGES; q++)
+        {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        List<ExecutorService> pools = new ArrayList<>();
+        try
+        {
+            for (int s = 0; s < STAGES; s++)
+            {
+                ExecutorService pool = Executors.newFixedThreadPool(threads[s]);
+                pools.add(pool);
+                BlockingQueue<Work> in = queues.get(s);
+                BlockingQueue<Work> out = s + 1 < STAGES ? queues.get(s + 1) : null;
+                int stage = s;
+                for (int t = 0; t < threads[s]; t++)
+                {
+                    pool.execute(() -> runStage(stage, in, out, summaries, done));
+                }
+            }
+            for (int j = 0; j < jobs.size(); j++)
+            {
+                queues.get(0).put(new Work(j, jobs.get(j)));
+            }
+            done.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            for (ExecutorService pool : pools)
+            {
+                pool.shutdownNow();
+            }
+        }
+        List<JobSummary> result = new ArrayList<>();
+        for (int j = 0; j < summaries.length; j++)
+        {
+            result.add(summaries[j] != null ? summaries[j] : new JobSummary(jobs.get(j),
+                    JobSummary.Status.FAILED, InterruptedException.class.getName(), 0, 0, 0));
+        }
+        return result;
+    }
+
+    /**
+     * Takes jobs from a stage's queue until the pipeline shuts down, runs the stage on them and
+     * passes them on; jobs leaving the pipeline, finished or failed, are summarized.
+     */
+
+    private void runStage(int stage, BlockingQueue<Work> in, BlockingQueue<Work> out,
+                          JobSummary[] summaries, CountDownLatch done)
+    {
+        try
+        {
+            while (true)
+            {
+                Work work = in.take();
+                long start = System.nanoTime();
+                boolean failed = false;
+                try
+                {
+                    process(stage, work);
+                }
+                catch (Throwable e)
+                {
+                    // Any failure, errors included, must still count the job as done, or run
+                    // would wait for it forever.
+                    work.failure = e instanceof ImageProcessingException ||
+                            e instanceof IllegalArgumentException ? e.getMessage() : e.toString();
+                    failed = true;
+                }
+                work.stageNanos[stage] = System.nanoTime() - start;
+                if (failed || out == null)
+                {
+                    summaries[work.index] = work.summarize();
+                    work.release();
+                    done.countDown();
+                }
+                else
+                {
+                    out.put(work);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void process(int stage, Work work)
+    {
+        BatchJob job = work.job;
+        switch (stage)
+        {
+            case 0:
+                if (job.getMaskPath() == null)
+                {
+                    throw new IllegalArgumentException(NO_MASK);
+                }
+                if (job.getConnectivity() != FOUR_CONNECTED &&
+                        job.getConnectivity() != EIGHT_CONNECTED)
+                {
+                    throw new IllegalArgumentException(INVALID_CONNECTIVITY +
+                            job.getConnectivity());
+                }
+                boolean alphaMask = job.getMaskPath().equals(MaskReader.ALPHA_MASK);
+                work.image = work.imgManager.readColorImage(job.getImagePath(), alphaMask,
+                        job.isColor() ? IntensityBuffer.StorageMode.BYTE
+                                : IntensityBuffer.StorageMode.FLOAT, work.allocator);
+                work.mask = work.imgManager.readMask(job.getMaskPath(), work.image);
+                work.image = work.image.withoutAlpha();
+                break;
+            case 1:
+                if (job.isColor())
+                {
+                    work.geometry = work.imgManager.processMask(work.mask, job.getConnectivity(),
+                            work.allocator);
+                }
+                else
+                {
+                    work.fields = work.imgManager.processImage(work.image, work.mask,
+                            job.getConnectivity());
+                    work.image = null;
+                }
+                work.mask = null;
+                break;
+            case 2:
+                AlgorithmManager algorithmManager = new AlgorithmManager(job.getConnectivity(),
+                        job.getZ(), job.getE());
+                if (job.isColor())
+                {
+                    work.result = algorithmManager.runColorAlgorithm(work.geometry, work.image);
+                    work.geometry = null;
+                }
+                else
+                {
+                    algorithmManager.algorithmFactory(job.getAlgorithm());
+                    work.filledImage = algorithmManager.runAlgorithm(work.fields);
+                    work.fields = null;
+                }
+                break;
+            default:
+                if (job.isColor())
+                {
+                    if (!work.imgManager.patchImage(work.result, job.getImagePath()))
+                    {
+                        work.imgManager.saveImage(work.image, work.result, job.getImagePath());
+                    }
+                }
+                else
+                {
+                    work.imgManager.saveImage(work.filledImage, job.getImagePath());
+                }
+        }
+    }
+
+    /**
+     * A job on its way through the pipeline, with whatever the stages so far have produced.
+     */
+
+    private static class Work
+    {
+        private final int index;
+        private final BatchJob job;
+        private final ImageLibraryManager imgManager = new ImageLibraryManager(false);
+        private final BufferAllocator allocator = BufferAllocator.pooled(BufferArena.shared());
+        private final long[] stageNanos = new long[STAGES];
+        private String failure;
+        private PlanarImage image;
+        private MaskBitmap mask;
+        private HoleGeometry geometry;
+        private ProcessedImageFields fields;
+        private FillResult result;
+        private Pixel[][] filledImage;
+
+        private Work(int index, BatchJob job)
+        {
+            this.index = index;
+            this.job = job;
+        }
+
+        /**
+         * Summarizes the job; decode and preprocess time are reported as reading time.
+         */
+
+        private JobSummary summarize()
+        {
+            return new JobSummary(job, failure == null ? JobSummary.Status.OK
+                    : JobSummary.Status.FAILED, failure == null ? "" : failure,
+                    (stageNanos[0] + stageNanos[1]) / NANOS_PER_MILLI,
+                    stageNanos[2] / NANOS_PER_MILLI, stageNanos[3] / NANOS_PER_MILLI);
+        }
+
+        private void release()
+        {
+            image = null;
+            mask = null;
+            geometry = null;
+            fields = null;
+            result = null;
+            filledImage = null;
+            try
+            {
+                allocator.close();
+            }
+            catch (IOException e)
+            {
+                // A heap allocator has no scratch files to delete.
+            }
+        }
+    }
+}
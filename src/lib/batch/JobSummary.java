@@ -0,0 +1,113 @@
+package lib.batch;
+
+/**
+ * Records how one batch job went: its status, an error message for failed jobs, and the time
+ * spent reading, filling and writing.
+ */
+
+public class JobSummary
+{
+    /**
+     * The outcome of a job.
+     */
+    public enum Status
+    {
+        OK,
+        FAILED
+    }
+
+    private final BatchJob job;
+    private final Status status;
+    private final String message;
+    private final long readMillis;
+    private final long fillMillis;
+    private final long writeMillis;
+
+    /**
+     * Constructs a JobSummary.
+     *
+     * @param job The job.
+     * @param status The outcome of the job.
+     * @param message The failure message, or an empty string.
+     * @param readMillis Milliseconds spent reading and preprocessing the image and mask.
+     * @param fillMillis Milliseconds spent filling the hole.
+     * @param writeMillis Milliseconds spent writing the output.
+     */
+
+    public JobSummary(BatchJob job, Status status, String message, long readMillis,
+                      long fillMillis, long writeMillis)
+    {
+        this.job = job;
+        this.status = status;
+        this.message = message;
+        this.readMillis = readMillis;
+        this.fillMillis = fillMillis;
+        this.writeMillis = writeMillis;
+    }
+
+    /**
+     * Returns the job.
+     *
+     * @return The job this summary describes.
+     */
+
+    public BatchJob getJob()
+    {
+        return job;
+    }
+
+    /**
+     * Returns the outcome of the job.
+     *
+     * @return OK or FAILED.
+     */
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Returns the failure message.
+     *
+     * @return The message, or an empty string for successful jobs.
+     */
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /**
+     * Returns the reading time.
+     *
+     * @return Milliseconds spent reading and preprocessing the image and mask.
+     */
+
+    public long getReadMillis()
+    {
+        return readMillis;
+    }
+
+    /**
+     * Returns the filling time.
+     *
+     * @return Milliseconds spent filling the hole.
+     */
+
+    public long getFillMillis()
+    {
+        return fillMillis;
+    }
+
+    /**
+     * Returns the writing time.
+     *
+     * @return Milliseconds spent writing the output.
+     */
+
+    public long getWriteMillis()
+    {
+        return writeMillis;
+    }
+}
@@ -0,0 +1,247 @@
+package lib.batch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the small JSON documents used by batch manifests. Objects become maps, arrays lists,
+ * numbers doubles, and true, false and null their Java counterparts.
+ */
+
+class JsonParser
+{
+    private static final String UNEXPECTED = "Unexpected JSON input at offset ";
+
+    private final String text;
+    private int pos;
+
+    /**
+     * Constructs a JsonParser over a document.
+     *
+     * @param text The JSON text.
+     */
+
+    JsonParser(String text)
+    {
+        this.text = text;
+    }
+
+    /**
+     * Parses the whole document.
+     *
+     * @return The parsed value.
+     * @throws IOException If the text is not a single well-formed JSON value.
+     */
+
+    Object parse() throws IOException
+    {
+        Object value = readValue();
+        skipWhitespace();
+        if (pos != text.length())
+        {
+            throw error();
+        }
+        return value;
+    }
+
+    private Object readValue() throws IOException
+    {
+        skipWhitespace();
+        if (pos >= text.length())
+        {
+            throw error();
+        }
+        char c = text.charAt(pos);
+        switch (c)
+        {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() throws IOException
+    {
+        Map<String, Object> object = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}')
+        {
+            pos++;
+            return object;
+        }
+        while (true)
+        {
+            skipWhitespace();
+            if (peek() != '"')
+            {
+                throw error();
+            }
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(key, readValue());
+            skipWhitespace();
+            if (peek() == ',')
+            {
+                pos++;
+                continue;
+            }
+            expect('}');
+            return object;
+        }
+    }
+
+    private List<Object> readArray() throws IOException
+    {
+        List<Object> array = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == ']')
+        {
+            pos++;
+            return array;
+        }
+        while (true)
+        {
+            array.add(readValue());
+            skipWhitespace();
+            if (peek() == ',')
+            {
+                pos++;
+                continue;
+            }
+            expect(']');
+            return array;
+        }
+    }
+
+    private String readString() throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (pos < text.length())
+        {
+            char c = text.charAt(pos++);
+            if (c == '"')
+            {
+                return sb.toString();
+            }
+            if (c != '\\')
+            {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length())
+            {
+                break;
+            }
+            char escaped = text.charAt(pos++);
+            switch (escaped)
+            {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > text.length())
+                    {
+                        throw error();
+                    }
+                    try
+                    {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        throw error();
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(escaped);
+            }
+        }
+        throw error();
+    }
+
+    private Object readLiteral(String literal, Object value) throws IOException
+    {
+        if (!text.startsWith(literal, pos))
+        {
+            throw error();
+        }
+        pos += literal.length();
+        return value;
+    }
+
+    private Double readNumber() throws IOException
+    {
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+        {
+            pos++;
+        }
+        try
+        {
+            return Double.valueOf(text.substring(start, pos));
+        }
+        catch (NumberFormatException e)
+        {
+            pos = start;
+            throw error();
+        }
+    }
+
+    private void expect(char c) throws IOException
+    {
+        if (peek() != c)
+        {
+            throw error();
+        }
+        pos++;
+    }
+
+    private char peek()
+    {
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private void skipWhitespace()
+    {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+        {
+            pos++;
+        }
+    }
+
+    private IOException error()
+    {
+        return new IOException(UNEXPECTED + pos);
+    }
+}
@@ -0,0 +1,240 @@
+package lib.entities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Allocates the large buffers of a job: intensity planes, index arrays and bitmaps.
+ * Buffers can live on the heap, in anonymous off-heap memory (direct buffers) or in a
+ * memory-mapped scratch file, so that the image planes, the mask bitmap and the hole and
+ * boundary indices of a large job stay off the heap. Scratch files are deleted when the
+ * allocator is closed. The fill result is still a heap array, of one value per channel and
+ * one index per hole pixel, so its size follows the hole rather than the image; outputs that
+ * are neither patched in place nor written by NativeImageCodec are also composed on the heap,
+ * at four bytes per image pixel.
+ * A pooled allocator takes its heap arrays from a BufferArena and releases them to it when
+ * closed, so consecutive jobs of a similar size reuse the same arrays. Its buffers must not be
+ * used after it is closed.
+ */
+
+public class BufferAllocator implements Closeable {
+    private static final String SCRATCH_PREFIX = "fillhole";
+    private static final String SCRATCH_SUFFIX = ".scratch";
+    private static final String TOO_LARGE = "Buffer too large for a single region: ";
+
+    /**
+     * Where the buffers are placed.
+     */
+
+    public enum Placement {
+        /** Java arrays on the heap. */
+        HEAP,
+        /** Anonymous off-heap memory. */
+        DIRECT,
+        /** A memory-mapped scratch file. */
+        MAPPED
+    }
+
+    private final Placement placement;
+    private final Path scratchDir;
+    private final BufferArena arena;
+    private final List<Path> scratchFiles = new ArrayList<>();
+    private final List<Object> taken = new ArrayList<>();
+
+    private BufferAllocator(Placement placement, Path scratchDir, BufferArena arena) {
+        this.placement = placement;
+        this.scratchDir = scratchDir;
+        this.arena = arena;
+    }
+
+    /**
+     * Returns an allocator placing buffers on the heap.
+     *
+     * @return A heap BufferAllocator.
+     */
+
+    public static BufferAllocator heap() {
+        return new BufferAllocator(Placement.HEAP, null, null);
+    }
+
+    /**
+     * Returns an allocator placing buffers on the heap in arrays taken from an arena. The
+     * arrays are released to the arena when the allocator is closed.
+     *
+     * @param arena The arena providing the arrays.
+     * @return A pooled heap BufferAllocator.
+     */
+
+    public static BufferAllocator pooled(BufferArena arena) {
+        return new BufferAllocator(Placement.HEAP, null, arena);
+    }
+
+    /**
+     * Returns an allocator placing buffers in anonymous off-heap memory.
+     *
+     * @return A direct BufferAllocator.
+     */
+
+    public static BufferAllocator offHeap() {
+        return new BufferAllocator(Placement.DIRECT, null, null);
+    }
+
+    /**
+     * Returns an allocator placing buffers in memory-mapped scratch files.
+     *
+     * @param scratchDir The directory for the scratch files.
+     * @return A mapped BufferAllocator.
+     */
+
+    public static BufferAllocator mapped(Path scratchDir) {
+        return new BufferAllocator(Placement.MAPPED, scratchDir, null);
+    }
+
+    /**
+     * Allocates a zeroed byte region of at most 2GB.
+     *
+     * @param bytes The region size.
+     * @return A ByteBuffer over the region, in native byte order.
+     * @throws IOException If a scratch file cannot be created or mapped.
+     */
+
+    public ByteBuffer allocate(long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(TOO_LARGE + bytes);
+        }
+        ByteBuffer buffer;
+        switch (placement) {
+            case DIRECT:
+                buffer = ByteBuffer.allocateDirect((int) bytes);
+                break;
+            case MAPPED:
+                buffer = map(bytes);
+                break;
+            default:
+                if (arena != null) {
+                    byte[] array = take(arena.takeBytes((int) bytes));
+                    Arrays.fill(array, 0, (int) bytes, (byte) 0);
+                    buffer = ByteBuffer.wrap(array, 0, (int) bytes).slice();
+                    break;
+                }
+                buffer = ByteBuffer.allocate((int) bytes);
+        }
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Allocates a zeroed buffer of row-major pixel indices.
+     *
+     * @param count The number of indices.
+     * @return An IntBuffer of the given capacity.
+     * @throws IOException If a scratch file cannot be created or mapped.
+     */
+
+    public IntBuffer allocateIndices(int count) throws IOException {
+        if (arena != null) {
+            int[] array = take(arena.takeInts(count));
+            Arrays.fill(array, 0, count, 0);
+            return IntBuffer.wrap(array, 0, count).slice();
+        }
+        if (placement == Placement.HEAP) {
+            return IntBuffer.allocate(count);
+        }
+        return allocate((long) count * Integer.BYTES).asIntBuffer();
+    }
+
+    /**
+     * Allocates a zeroed intensity plane.
+     *
+     * @param mode The storage format of the values.
+     * @param size The number of values.
+     * @return A new IntensityBuffer.
+     * @throws IOException If a scratch file cannot be created or mapped.
+     */
+
+    public IntensityBuffer allocateIntensities(IntensityBuffer.StorageMode mode, int size)
+            throws IOException {
+        if (arena != null) {
+            switch (mode) {
+                case HALF:
+                    short[] halves = take(arena.takeShorts(size));
+                    Arrays.fill(halves, 0, size, (short) 0);
+                    return new HalfIntensityBuffer(halves, size);
+                case BYTE:
+                    byte[] bytes = take(arena.takeBytes(size));
+                    Arrays.fill(bytes, 0, size, (byte) 0);
+                    return new ByteIntensityBuffer(bytes, size);
+                default:
+                    float[] floats = take(arena.takeFloats(size));
+                    Arrays.fill(floats, 0, size, 0f);
+                    return new FloatIntensityBuffer(floats, size);
+            }
+        }
+        if (placement == Placement.HEAP) {
+            return IntensityBuffer.allocate(mode, size);
+        }
+        return new OffHeapIntensityBuffer(this, mode, size);
+    }
+
+    /**
+     * Returns where this allocator places its buffers.
+     *
+     * @return The Placement.
+     */
+
+    public Placement getPlacement() { return placement; }
+
+    /**
+     * Deletes the scratch files, and releases a pooled allocator's arrays to its arena. Mapped
+     * regions stay valid until they are garbage collected.
+     *
+     * @throws IOException If a scratch file cannot be deleted.
+     */
+
+    @Override
+    public void close() throws IOException {
+        synchronized (taken) {
+            for (Object array : taken) {
+                if (array instanceof float[]) {
+                    arena.release((float[]) array);
+                } else if (array instanceof int[]) {
+                    arena.release((int[]) array);
+                } else if (array instanceof short[]) {
+                    arena.release((short[]) array);
+                } else {
+                    arena.release((byte[]) array);
+                }
+            }
+            taken.clear();
+        }
+        for (Path file : scratchFiles) {
+            Files.deleteIfExists(file);
+        }
+        scratchFiles.clear();
+    }
+
+    private <T> T take(T array) {
+        synchronized (taken) {
+            taken.add(array);
+        }
+        return array;
+    }
+
+    private ByteBuffer map(long bytes) throws IOException {
+        Path file = Files.createTempFile(scratchDir, SCRATCH_PREFIX, SCRATCH_SUFFIX);
+        scratchFiles.add(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package lib.entities;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Keeps arrays released by finished jobs for reuse by later jobs of a similar size, so that a
+ * batch or a service does not allocate its large buffers anew for every job.
+ * Arrays are handed out in size classes of eight steps per power of two, so a reused array is
+ * at most an eighth larger than requested. Arrays taken from an arena are not cleared.
+ * The arena is thread-safe, and retains at most a given number of bytes; arrays released
+ * beyond that are left to the garbage collector.
+ */
+
+public class BufferArena {
+    private static final int MIN_POOLED_LENGTH = 1024;
+    private static final int STEPS_PER_POWER = 8;
+    private static final long SHARED_FRACTION = 8;
+    private static final BufferArena SHARED =
+            new BufferArena(Runtime.getRuntime().maxMemory() / SHARED_FRACTION);
+
+    private final long maxRetainedBytes;
+    private final Pool<float[]> floats = new Pool<>(float[]::new, a -> a.length, Float.BYTES);
+    private final Pool<int[]> ints = new Pool<>(int[]::new, a -> a.length, Integer.BYTES);
+    private final Pool<short[]> shorts = new Pool<>(short[]::new, a -> a.length, Short.BYTES);
+    private final Pool<byte[]> bytes = new Pool<>(byte[]::new, a -> a.length, Byte.BYTES);
+    private long retainedBytes;
+
+    /**
+     * Constructs an empty BufferArena.
+     *
+     * @param maxRetainedBytes The most bytes of released arrays to keep.
+     */
+
+    public BufferArena(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Returns the arena shared by the whole process, retaining up to an eighth of the maximum
+     * heap size.
+     *
+     * @return The shared BufferArena.
+     */
+
+    public static BufferArena shared() { return SHARED; }
+
+    /**
+     * Returns the length of the arrays handed out for a requested length.
+     *
+     * @param length The requested length.
+     * @return The size class length, at least the requested length.
+     */
+
+    public static int classLength(int length) {
+        if (length <= MIN_POOLED_LENGTH) {
+            return length;
+        }
+        int step = Math.max(1, Integer.highestOneBit(length - 1) / STEPS_PER_POWER);
+        long rounded = ((long) length + step - 1) / step * step;
+        return rounded > Integer.MAX_VALUE ? length : (int) rounded;
+    }
+
+    /**
+     * Takes a float array of at least a given length.
+     *
+     * @param length The least length.
+     * @return A reused or new array, not cleared.
+     */
+
+    public float[] takeFloats(int length) { return floats.take(length); }
+
+    /**
+     * Takes an int array of at least a given length.
+     *
+     * @param length The least length.
+     * @return A reused or new array, not cleared.
+     */
+
+    public int[] takeInts(int length) { return ints.take(length); }
+
+    /**
+     * Takes a short array of at least a given length.
+     *
+     * @param length The least length.
+     * @return A reused or new array, not cleared.
+     */
+
+    public short[] takeShorts(int length) { return shorts.take(length); }
+
+    /**
+     * Takes a byte array of at least a given length.
+     *
+     * @param length The least length.
+     * @return A reused or new array, not cleared.
+     */
+
+    public byte[] takeBytes(int length) { return bytes.take(length); }
+
+    /**
+     * Releases a float array for reuse. The caller must no longer use it.
+     *
+     * @param array The array.
+     */
+
+    public void release(float[] array) { floats.release(array); }
+
+    /**
+     * Releases an int array for reuse. The caller must no longer use it.
+     *
+     * @param array The array.
+     */
+
+    public void release(int[] array) { ints.release(array); }
+
+    /**
+     * Releases a short array for reuse. The caller must no longer use it.
+     *
+     * @param array The array.
+     */
+
+    public void release(short[] array) { shorts.release(array); }
+
+    /**
+     * Releases a byte array for reuse. The caller must no longer use it.
+     *
+     * @param array The array.
+     */
+
+    public void release(byte[] array) { bytes.release(array); }
+
+    /**
+     * Returns the number of bytes held by released arrays.
+     *
+     * @return The retained bytes.
+     */
+
+    public synchronized long getRetainedBytes() { return retainedBytes; }
+
+    /**
+     * Drops every retained array.
+     */
+
+    public void clear() {
+        floats.clear();
+        ints.clear();
+        shorts.clear();
+        bytes.clear();
+    }
+
+    /**
+     * The free lists of one array type, by size class.
+     */
+
+    private class Pool<T> {
+        private final Map<Integer, ArrayDeque<T>> free = new HashMap<>();
+        private final IntFunction<T> factory;
+        private final ToIntFunction<T> lengthOf;
+        private final int elementBytes;
+
+        Pool(IntFunction<T> factory, ToIntFunction<T> lengthOf, int elementBytes) {
+            this.factory = factory;
+            this.lengthOf = lengthOf;
+            this.elementBytes = elementBytes;
+        }
+
+        T take(int length) {
+            int classLength = classLength(length);
+            if (classLength > MIN_POOLED_LENGTH) {
+                synchronized (BufferArena.this) {
+                    ArrayDeque<T> list = free.get(classLength);
+                    T array = list == null ? null : list.poll();
+                    if (array != null) {
+                        retainedBytes -= (long) classLength * elementBytes;
+                        return array;
+                    }
+                }
+            }
+            return factory.apply(classLength);
+        }
+
+        void release(T array) {
+            int length = lengthOf.applyAsInt(array);
+            long arrayBytes = (long) length * elementBytes;
+            if (length <= MIN_POOLED_LENGTH || classLength(length) != length) {
+                return;
+            }
+            synchronized (BufferArena.this) {
+                if (retainedBytes + arrayBytes > maxRetainedBytes) {
+                    return;
+                }
+                free.computeIfAbsent(length, l -> new ArrayDeque<>()).push(array);
+                retainedBytes += arrayBytes;
+            }
+        }
+
+        void clear() {
+            synchronized (BufferArena.this) {
+                for (Map.Entry<Integer, ArrayDeque<T>> entry : free.entrySet()) {
+                    retainedBytes -= (long) entry.getKey() * elementBytes
+                            * entry.getValue().size();
+                }
+                free.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package lib.entities;
+
+/**
+ * An intensity buffer storing unsigned 8-bit values, a quarter of the size of floats.
+ * Values read from 8-bit sources are stored exactly.
+ */
+
+public class ByteIntensityBuffer extends IntensityBuffer {
+    private static final int MAX_NUM_COLOR = 255;
+
+    private final byte[] values;
+    private final int size;
+
+    /**
+     * Constructs a zeroed ByteIntensityBuffer.
+     *
+     * @param size The number of values.
+     */
+
+    public ByteIntensityBuffer(int size) {
+        this(new byte[size], size);
+    }
+
+    /**
+     * Constructs a ByteIntensityBuffer over the start of a zeroed array, e.g. one reused from a
+     * BufferArena.
+     *
+     * @param values An array of at least size values.
+     * @param size The number of values.
+     */
+
+    ByteIntensityBuffer(byte[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public float get(int index) { return (values[index] & 0xFF) / (float) MAX_NUM_COLOR; }
+
+    @Override
+    public void set(int index, float value) {
+        values[index] = (byte) Math.max(0, Math.min(MAX_NUM_COLOR,
+                Math.round(value * MAX_NUM_COLOR)));
+    }
+
+    /**
+     * Returns the raw 8-bit value at an index.
+     *
+     * @param index The row-major index.
+     * @return The value between 0 and 255.
+     */
+
+    public int getRaw(int index) { return values[index] & 0xFF; }
+
+    /**
+     * Sets the raw 8-bit value at an index.
+     *
+     * @param index The row-major index.
+     * @param value The value between 0 and 255.
+     */
+
+    public void setRaw(int index, int value) { values[index] = (byte) value; }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public StorageMode getStorageMode() { return StorageMode.BYTE; }
+}
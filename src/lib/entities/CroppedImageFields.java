@@ -0,0 +1,91 @@
+package lib.entities;
+
+import java.util.HashSet;
+
+/**
+ * Processed image fields covering only a window of a larger image: the bounding box of the
+ * hole grown by one pixel, which contains every hole and boundary pixel. Pixel coordinates are
+ * relative to the window; the window's offset and the full image size are kept so results can
+ * be mapped back to the full image.
+ */
+
+public class CroppedImageFields extends ProcessedImageFields {
+    private final int rowOffset;
+    private final int colOffset;
+    private final int fullWidth;
+    private final int fullHeight;
+
+    /**
+     * Constructs a CroppedImageFields object.
+     *
+     * @param pixelArray The 2D array of pixels of the window.
+     * @param holePixels The hole pixels, in window coordinates.
+     * @param boundaryPixels The boundary pixels, in window coordinates.
+     * @param rowOffset The full-image row of the window's top row.
+     * @param colOffset The full-image column of the window's left column.
+     * @param fullWidth The full image width.
+     * @param fullHeight The full image height.
+     */
+
+    public CroppedImageFields(Pixel[][] pixelArray, HashSet<Pixel> holePixels,
+                              HashSet<Pixel> boundaryPixels, int rowOffset, int colOffset,
+                              int fullWidth, int fullHeight) {
+        super(pixelArray, holePixels, boundaryPixels);
+        this.rowOffset = rowOffset;
+        this.colOffset = colOffset;
+        this.fullWidth = fullWidth;
+        this.fullHeight = fullHeight;
+    }
+
+    /**
+     * Maps a fill result computed on the window to full-image indices.
+     *
+     * @param windowResult A FillResult in window coordinates.
+     * @return The same values with indices relative to the full image.
+     */
+
+    public FillResult toFullImage(FillResult windowResult) {
+        int windowWidth = windowResult.getWidth();
+        int[] windowIndices = windowResult.getHoleIndices();
+        int[] indices = new int[windowIndices.length];
+        for (int i = 0; i < indices.length; i++) {
+            int row = windowIndices[i] / windowWidth + rowOffset;
+            int col = windowIndices[i] % windowWidth + colOffset;
+            indices[i] = row * fullWidth + col;
+        }
+        return new FillResult(fullWidth, fullHeight, windowResult.getChannels(), indices,
+                windowResult.getValues());
+    }
+
+    /**
+     * Returns the full-image row of the window's top row.
+     *
+     * @return The row offset.
+     */
+
+    public int getRowOffset() { return rowOffset; }
+
+    /**
+     * Returns the full-image column of the window's left column.
+     *
+     * @return The column offset.
+     */
+
+    public int getColOffset() { return colOffset; }
+
+    /**
+     * Returns the full image width.
+     *
+     * @return The width in pixels.
+     */
+
+    public int getFullWidth() { return fullWidth; }
+
+    /**
+     * Returns the full image height.
+     *
+     * @return The height in pixels.
+     */
+
+    public int getFullHeight() { return fullHeight; }
+}
@@ -0,0 +1,226 @@
+package lib.entities;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Stores the outcome of a hole-filling run sparsely: only the row-major indices of the hole
+ * pixels and their new values, as primitive arrays. Multi-channel results interleave the
+ * channels of each hole pixel (values[h * channels + c]). A result can be cached, written to a
+ * stream and applied to any raster of the same size. Written results start with a magic number
+ * and a format version, and are validated when read back.
+ */
+
+public class FillResult {
+    private static final String SIZE_MISMATCH = "Raster size does not match the result: ";
+    private static final int MAGIC = 0x46524553;
+    private static final int VERSION = 2;
+    private static final int MAX_CHANNELS = 4;
+    private static final String INVALID_RESULT = "Not a valid fill result: ";
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final int[] holeIndices;
+    private final float[] values;
+
+    /**
+     * Constructs a FillResult object.
+     *
+     * @param width The image width.
+     * @param height The image height.
+     * @param holeIndices Row-major indices of the filled pixels.
+     * @param values The filled value of each pixel, in the same order.
+     */
+
+    public FillResult(int width, int height, int[] holeIndices, float[] values) {
+        this(width, height, 1, holeIndices, values);
+    }
+
+    /**
+     * Constructs a multi-channel FillResult object.
+     *
+     * @param width The image width.
+     * @param height The image height.
+     * @param channels The number of channels per filled pixel.
+     * @param holeIndices Row-major indices of the filled pixels.
+     * @param values The filled values, channels interleaved per pixel.
+     */
+
+    public FillResult(int width, int height, int channels, int[] holeIndices, float[] values) {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.holeIndices = holeIndices;
+        this.values = values;
+    }
+
+    /**
+     * Writes the filled values into a pixel array of the same size. Multi-channel results
+     * write their first channel.
+     *
+     * @param pixelArray The 2D array of pixels to update.
+     * @return The same array.
+     */
+
+    public Pixel[][] applyTo(Pixel[][] pixelArray) {
+        if (pixelArray.length != height || pixelArray[0].length != width) {
+            throw new IllegalArgumentException(SIZE_MISMATCH + pixelArray[0].length + "x" +
+                    pixelArray.length);
+        }
+        for (int i = 0; i < holeIndices.length; i++) {
+            pixelArray[holeIndices[i] / width][holeIndices[i] % width].setValue(
+                    values[i * channels]);
+        }
+        return pixelArray;
+    }
+
+    /**
+     * Writes the filled values into a row-major raster of the same size. Multi-channel results
+     * write their first channel.
+     *
+     * @param raster The row-major intensity values to update.
+     * @return The same raster.
+     */
+
+    public float[] applyTo(float[] raster) {
+        if (raster.length != width * height) {
+            throw new IllegalArgumentException(SIZE_MISMATCH + raster.length);
+        }
+        for (int i = 0; i < holeIndices.length; i++) {
+            raster[holeIndices[i]] = values[i * channels];
+        }
+        return raster;
+    }
+
+    /**
+     * Writes the filled values into the planes of a planar image of the same size.
+     *
+     * @param image The planar image to update.
+     * @return The same image.
+     */
+
+    public PlanarImage applyTo(PlanarImage image) {
+        if (image.getHeight() != height || image.getWidth() != width) {
+            throw new IllegalArgumentException(SIZE_MISMATCH + image.getWidth() + "x" +
+                    image.getHeight());
+        }
+        int copied = Math.min(channels, image.getChannels());
+        for (int c = 0; c < copied; c++) {
+            IntensityBuffer plane = image.getPlane(c);
+            for (int i = 0; i < holeIndices.length; i++) {
+                plane.set(holeIndices[i], values[i * channels + c]);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Writes the result to a stream.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If an error occurs while writing.
+     */
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(channels);
+        out.writeInt(holeIndices.length);
+        for (int index : holeIndices) {
+            out.writeInt(index);
+        }
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    /**
+     * Reads a result previously written by {@link #writeTo(DataOutputStream)}.
+     *
+     * @param in The stream to read from.
+     * @return The FillResult read.
+     * @throws IOException If an error occurs while reading, or the stream does not hold a
+     *                     valid result of this format version.
+     */
+
+    public static FillResult readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(INVALID_RESULT + "bad magic number");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException(INVALID_RESULT + "unsupported version " + version);
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        int channels = in.readInt();
+        int count = in.readInt();
+        long pixels = (long) width * height;
+        if (width <= 0 || height <= 0 || pixels > Integer.MAX_VALUE) {
+            throw new IOException(INVALID_RESULT + "size " + width + "x" + height);
+        }
+        if (channels < 1 || channels > MAX_CHANNELS) {
+            throw new IOException(INVALID_RESULT + channels + " channels");
+        }
+        if (count < 0 || count > pixels || (long) count * channels > Integer.MAX_VALUE) {
+            throw new IOException(INVALID_RESULT + count + " filled pixels");
+        }
+        int[] holeIndices = new int[count];
+        float[] values = new float[count * channels];
+        for (int i = 0; i < count; i++) {
+            int index = in.readInt();
+            if (index < 0 || index >= pixels) {
+                throw new IOException(INVALID_RESULT + "pixel index " + index);
+            }
+            holeIndices[i] = index;
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readFloat();
+        }
+        return new FillResult(width, height, channels, holeIndices, values);
+    }
+
+    /**
+     * Returns the image width.
+     *
+     * @return The width in pixels.
+     */
+
+    public int getWidth() { return width; }
+
+    /**
+     * Returns the image height.
+     *
+     * @return The height in pixels.
+     */
+
+    public int getHeight() { return height; }
+
+    /**
+     * Returns the number of channels per filled pixel.
+     *
+     * @return The channel count.
+     */
+
+    public int getChannels() { return channels; }
+
+    /**
+     * Returns the row-major indices of the filled pixels.
+     *
+     * @return The hole indices.
+     */
+
+    public int[] getHoleIndices() { return holeIndices; }
+
+    /**
+     * Returns the filled values.
+     *
+     * @return The values, in the order of the hole indices, channels interleaved.
+     */
+
+    public float[] getValues() { return values; }
+}
@@ -0,0 +1,45 @@
+package lib.entities;
+
+/**
+ * An intensity buffer storing 32-bit floats.
+ */
+
+public class FloatIntensityBuffer extends IntensityBuffer {
+    private final float[] values;
+    private final int size;
+
+    /**
+     * Constructs a zeroed FloatIntensityBuffer.
+     *
+     * @param size The number of values.
+     */
+
+    public FloatIntensityBuffer(int size) {
+        this(new float[size], size);
+    }
+
+    /**
+     * Constructs a FloatIntensityBuffer over the start of a zeroed array, e.g. one reused from a
+     * BufferArena.
+     *
+     * @param values An array of at least size values.
+     * @param size The number of values.
+     */
+
+    FloatIntensityBuffer(float[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public float get(int index) { return values[index]; }
+
+    @Override
+    public void set(int index, float value) { values[index] = value; }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public StorageMode getStorageMode() { return StorageMode.FLOAT; }
+}
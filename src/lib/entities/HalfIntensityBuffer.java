@@ -0,0 +1,108 @@
+package lib.entities;
+
+/**
+ * An intensity buffer storing IEEE 754 half precision floats, half the size of floats.
+ * Normalized intensities keep about three significant decimal digits.
+ */
+
+public class HalfIntensityBuffer extends IntensityBuffer {
+    private final short[] values;
+    private final int size;
+
+    /**
+     * Constructs a zeroed HalfIntensityBuffer.
+     *
+     * @param size The number of values.
+     */
+
+    public HalfIntensityBuffer(int size) {
+        this(new short[size], size);
+    }
+
+    /**
+     * Constructs a HalfIntensityBuffer over the start of a zeroed array, e.g. one reused from a
+     * BufferArena.
+     *
+     * @param values An array of at least size values.
+     * @param size The number of values.
+     */
+
+    HalfIntensityBuffer(short[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public float get(int index) { return halfToFloat(values[index]); }
+
+    @Override
+    public void set(int index, float value) { values[index] = floatToHalf(value); }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public StorageMode getStorageMode() { return StorageMode.HALF; }
+
+    /**
+     * Converts a half precision value to a float.
+     *
+     * @param half The half precision bits.
+     * @return The float value.
+     */
+
+    static float halfToFloat(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        if (exponent == 0) {
+            float subnormal = mantissa * 0x1p-24f;
+            return sign == 0 ? subnormal : -subnormal;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * Converts a float to the nearest half precision value.
+     *
+     * @param value The float value.
+     * @return The half precision bits.
+     */
+
+    static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 112;
+        int mantissa = bits & 0x7FFFFF;
+        if (((bits >>> 23) & 0xFF) == 0xFF) {
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) half;
+    }
+}
@@ -0,0 +1,167 @@
+package lib.entities;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Stores the geometry of a hole independently of any image values: the image size and the
+ * row-major indices (row * width + col) of the hole and boundary pixels, in ascending order.
+ * The indices can be kept in heap arrays or in off-heap buffers.
+ */
+
+public class HoleGeometry {
+    private final int width;
+    private final int height;
+    private final IntBuffer holeIndices;
+    private final IntBuffer boundaryIndices;
+
+    /**
+     * Constructs a HoleGeometry object.
+     *
+     * @param width The image width.
+     * @param height The image height.
+     * @param holeIndices Row-major indices of the hole pixels, in ascending order.
+     * @param boundaryIndices Row-major indices of the boundary pixels, in ascending order.
+     */
+
+    public HoleGeometry(int width, int height, int[] holeIndices, int[] boundaryIndices) {
+        this(width, height, IntBuffer.wrap(holeIndices), IntBuffer.wrap(boundaryIndices));
+    }
+
+    /**
+     * Constructs a HoleGeometry object over index buffers, e.g. off-heap ones.
+     *
+     * @param width The image width.
+     * @param height The image height.
+     * @param holeIndices Row-major indices of the hole pixels, in ascending order.
+     * @param boundaryIndices Row-major indices of the boundary pixels, in ascending order.
+     */
+
+    public HoleGeometry(int width, int height, IntBuffer holeIndices, IntBuffer boundaryIndices) {
+        this.width = width;
+        this.height = height;
+        this.holeIndices = holeIndices;
+        this.boundaryIndices = boundaryIndices;
+    }
+
+    /**
+     * Extracts the geometry of processed image fields.
+     *
+     * @param fields The processed image fields containing hole and boundary pixels.
+     * @return The HoleGeometry of the fields.
+     */
+
+    public static HoleGeometry fromFields(ProcessedImageFields fields) {
+        Pixel[][] pixels = fields.getPixelArray();
+        int width = pixels[0].length;
+        return new HoleGeometry(width, pixels.length, toIndices(fields.getHolePixels(), width),
+                toIndices(fields.getBoundaryPixels(), width));
+    }
+
+    private static int[] toIndices(Set<Pixel> pixels, int width) {
+        int[] indices = new int[pixels.size()];
+        int i = 0;
+        for (Pixel p : pixels) {
+            indices[i++] = p.getX() * width + p.getY();
+        }
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    /**
+     * Returns the image width.
+     *
+     * @return The width in pixels.
+     */
+
+    public int getWidth() { return width; }
+
+    /**
+     * Returns the image height.
+     *
+     * @return The height in pixels.
+     */
+
+    public int getHeight() { return height; }
+
+    /**
+     * Returns the row-major indices of the hole pixels. Off-heap indices are copied to a new
+     * array.
+     *
+     * @return The hole indices, in ascending order.
+     */
+
+    public int[] getHoleIndices() { return toArray(holeIndices); }
+
+    /**
+     * Returns the row-major indices of the boundary pixels. Off-heap indices are copied to a
+     * new array.
+     *
+     * @return The boundary indices, in ascending order.
+     */
+
+    public int[] getBoundaryIndices() { return toArray(boundaryIndices); }
+
+    /**
+     * Returns the row-major index of a single hole pixel.
+     *
+     * @param i The hole pixel's position.
+     * @return Its row-major index.
+     */
+
+    public int getHoleIndex(int i) { return holeIndices.get(i); }
+
+    /**
+     * Returns the row-major index of a single boundary pixel.
+     *
+     * @param i The boundary pixel's position.
+     * @return Its row-major index.
+     */
+
+    public int getBoundaryIndex(int i) { return boundaryIndices.get(i); }
+
+    /**
+     * Returns the number of hole pixels.
+     *
+     * @return The hole size.
+     */
+
+    public int getHoleCount() { return holeIndices.limit(); }
+
+    /**
+     * Returns the number of boundary pixels.
+     *
+     * @return The boundary size.
+     */
+
+    public int getBoundaryCount() { return boundaryIndices.limit(); }
+
+    /**
+     * Converts a row-major index to its row.
+     *
+     * @param index A row-major pixel index.
+     * @return The row of the pixel.
+     */
+
+    public int rowOf(int index) { return index / width; }
+
+    /**
+     * Converts a row-major index to its column.
+     *
+     * @param index A row-major pixel index.
+     * @return The column of the pixel.
+     */
+
+    public int colOf(int index) { return index % width; }
+
+    private static int[] toArray(IntBuffer indices) {
+        if (indices.hasArray() && indices.arrayOffset() == 0
+                && indices.array().length == indices.limit()) {
+            return indices.array();
+        }
+        int[] copy = new int[indices.limit()];
+        indices.duplicate().rewind().get(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,76 @@
+package lib.entities;
+
+/**
+ * A row-major buffer of normalized intensity values (between 0 and 1).
+ * Implementations choose how the values are stored; callers always read and write floats, so
+ * compact storage only widens values inside the kernels that use them.
+ */
+
+public abstract class IntensityBuffer {
+
+    /**
+     * The storage formats a buffer can use.
+     */
+
+    public enum StorageMode {
+        /** 32-bit floats, exact. */
+        FLOAT,
+        /** 16-bit IEEE half floats. */
+        HALF,
+        /** Unsigned 8-bit values, exact for 8-bit sources. */
+        BYTE
+    }
+
+    /**
+     * Allocates a zeroed buffer.
+     *
+     * @param mode The storage format.
+     * @param size The number of values.
+     * @return A new IntensityBuffer.
+     */
+
+    public static IntensityBuffer allocate(StorageMode mode, int size) {
+        switch (mode) {
+            case HALF:
+                return new HalfIntensityBuffer(size);
+            case BYTE:
+                return new ByteIntensityBuffer(size);
+            default:
+                return new FloatIntensityBuffer(size);
+        }
+    }
+
+    /**
+     * Returns the value at an index.
+     *
+     * @param index The row-major index.
+     * @return The intensity value.
+     */
+
+    public abstract float get(int index);
+
+    /**
+     * Sets the value at an index, rounding it to the storage format.
+     *
+     * @param index The row-major index.
+     * @param value The new intensity value.
+     */
+
+    public abstract void set(int index, float value);
+
+    /**
+     * Returns the number of values in the buffer.
+     *
+     * @return The buffer size.
+     */
+
+    public abstract int size();
+
+    /**
+     * Returns the storage format of the buffer.
+     *
+     * @return The StorageMode.
+     */
+
+    public abstract StorageMode getStorageMode();
+}
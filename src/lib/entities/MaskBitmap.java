@@ -0,0 +1,161 @@
+package lib.entities;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores a hole mask as one bit per pixel, row-major, together with the number of hole pixels
+ * and their bounding box. A bitmap can be filled from any mask form (an image, run-length
+ * spans, polygons or an alpha channel), so hole and boundary extraction never needs a
+ * full-resolution mask image.
+ */
+
+public class MaskBitmap {
+    private final int width;
+    private final int height;
+    private final ByteBuffer bits;
+    private int holeCount;
+    private int top;
+    private int bottom = -1;
+    private int left;
+    private int right = -1;
+
+    /**
+     * Constructs an empty MaskBitmap on the heap.
+     *
+     * @param width The mask width.
+     * @param height The mask height.
+     */
+
+    public MaskBitmap(int width, int height) {
+        this(width, height, ByteBuffer.allocate((int) (((long) width * height + 7) / 8)));
+    }
+
+    /**
+     * Constructs an empty MaskBitmap over a zeroed buffer, e.g. an off-heap one.
+     *
+     * @param width The mask width.
+     * @param height The mask height.
+     * @param bits A zeroed buffer of at least (width * height + 7) / 8 bytes.
+     */
+
+    public MaskBitmap(int width, int height, ByteBuffer bits) {
+        this.width = width;
+        this.height = height;
+        this.bits = bits;
+        this.top = height;
+        this.left = width;
+    }
+
+    /**
+     * Marks a pixel as part of the hole.
+     *
+     * @param row Row index of the pixel.
+     * @param col Column index of the pixel.
+     */
+
+    public void setHole(int row, int col) {
+        int idx = row * width + col;
+        byte current = bits.get(idx >>> 3);
+        if ((current & (1 << (idx & 7))) != 0) {
+            return;
+        }
+        bits.put(idx >>> 3, (byte) (current | (1 << (idx & 7))));
+        holeCount++;
+        top = Math.min(top, row);
+        bottom = Math.max(bottom, row);
+        left = Math.min(left, col);
+        right = Math.max(right, col);
+    }
+
+    /**
+     * Marks a horizontal run of pixels as part of the hole. The run is clipped to the mask.
+     *
+     * @param row Row index of the run.
+     * @param startCol Column index of the first pixel.
+     * @param length Number of pixels in the run.
+     */
+
+    public void setSpan(int row, int startCol, int length) {
+        if (row < 0 || row >= height) {
+            return;
+        }
+        int from = Math.max(0, startCol);
+        int to = (int) Math.min(width, (long) startCol + length);
+        for (int col = from; col < to; col++) {
+            setHole(row, col);
+        }
+    }
+
+    /**
+     * Checks whether a pixel is part of the hole.
+     *
+     * @param idx The row-major pixel index.
+     * @return True for hole pixels.
+     */
+
+    public boolean isHole(int idx) { return (bits.get(idx >>> 3) & (1 << (idx & 7))) != 0; }
+
+    /**
+     * Returns the underlying bits, bit (idx % 8) of byte (idx / 8) for pixel idx.
+     *
+     * @return The bit buffer.
+     */
+
+    public ByteBuffer getBits() { return bits; }
+
+    /**
+     * Returns the number of hole pixels.
+     *
+     * @return The hole pixel count.
+     */
+
+    public int getHoleCount() { return holeCount; }
+
+    /**
+     * Returns the first row containing hole pixels.
+     *
+     * @return The top row of the hole's bounding box, or the height if there is no hole.
+     */
+
+    public int getTop() { return top; }
+
+    /**
+     * Returns the last row containing hole pixels.
+     *
+     * @return The bottom row of the hole's bounding box, or -1 if there is no hole.
+     */
+
+    public int getBottom() { return bottom; }
+
+    /**
+     * Returns the first column containing hole pixels.
+     *
+     * @return The left column of the hole's bounding box, or the width if there is no hole.
+     */
+
+    public int getLeft() { return left; }
+
+    /**
+     * Returns the last column containing hole pixels.
+     *
+     * @return The right column of the hole's bounding box, or -1 if there is no hole.
+     */
+
+    public int getRight() { return right; }
+
+    /**
+     * Returns the mask width.
+     *
+     * @return The width in pixels.
+     */
+
+    public int getWidth() { return width; }
+
+    /**
+     * Returns the mask height.
+     *
+     * @return The height in pixels.
+     */
+
+    public int getHeight() { return height; }
+}
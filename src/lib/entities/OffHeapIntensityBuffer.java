@@ -0,0 +1,82 @@
+package lib.entities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An intensity buffer stored outside the Java heap, in direct or memory-mapped regions
+ * obtained from a BufferAllocator. The buffer is split into regions of at most 1GB, so planes
+ * larger than a single ByteBuffer are supported.
+ */
+
+public class OffHeapIntensityBuffer extends IntensityBuffer {
+    private static final int REGION_SHIFT = 30;
+    private static final int MAX_NUM_COLOR = 255;
+
+    private final StorageMode mode;
+    private final int size;
+    private final int shift;
+    private final int valuesPerRegionMask;
+    private final ByteBuffer[] regions;
+
+    /**
+     * Constructs a zeroed OffHeapIntensityBuffer.
+     *
+     * @param allocator The allocator providing the off-heap regions.
+     * @param mode The storage format of the values.
+     * @param size The number of values.
+     * @throws IOException If a region cannot be allocated.
+     */
+
+    public OffHeapIntensityBuffer(BufferAllocator allocator, StorageMode mode, int size)
+            throws IOException {
+        this.mode = mode;
+        this.size = size;
+        int bytesShift = mode == StorageMode.FLOAT ? 2 : mode == StorageMode.HALF ? 1 : 0;
+        this.shift = REGION_SHIFT - bytesShift;
+        this.valuesPerRegionMask = (1 << shift) - 1;
+        int regionCount = (int) (((long) size + valuesPerRegionMask) >> shift);
+        this.regions = new ByteBuffer[Math.max(1, regionCount)];
+        for (int r = 0; r < regions.length; r++) {
+            long values = Math.min((long) size - ((long) r << shift), 1L << shift);
+            regions[r] = allocator.allocate(Math.max(0, values) << bytesShift);
+        }
+    }
+
+    @Override
+    public float get(int index) {
+        ByteBuffer region = regions[index >>> shift];
+        int offset = index & valuesPerRegionMask;
+        switch (mode) {
+            case BYTE:
+                return (region.get(offset) & 0xFF) / (float) MAX_NUM_COLOR;
+            case HALF:
+                return HalfIntensityBuffer.halfToFloat(region.getShort(offset << 1));
+            default:
+                return region.getFloat(offset << 2);
+        }
+    }
+
+    @Override
+    public void set(int index, float value) {
+        ByteBuffer region = regions[index >>> shift];
+        int offset = index & valuesPerRegionMask;
+        switch (mode) {
+            case BYTE:
+                region.put(offset, (byte) Math.max(0, Math.min(MAX_NUM_COLOR,
+                        Math.round(value * MAX_NUM_COLOR))));
+                break;
+            case HALF:
+                region.putShort(offset << 1, HalfIntensityBuffer.floatToHalf(value));
+                break;
+            default:
+                region.putFloat(offset << 2, value);
+        }
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public StorageMode getStorageMode() { return mode; }
+}
@@ -0,0 +1,146 @@
+package lib.entities;
+
+/**
+ * Stores an image as planar buffers: one row-major intensity plane per channel, with
+ * intensities normalized between 0 and 1. Channels are ordered red, green, blue and,
+ * optionally, alpha; single-channel images are grayscale. Planes can use compact storage,
+ * in which case values are widened to float only when read.
+ */
+
+public class PlanarImage {
+    public static final int RED = 0;
+    public static final int GREEN = 1;
+    public static final int BLUE = 2;
+    public static final int ALPHA = 3;
+
+    private final int width;
+    private final int height;
+    private final IntensityBuffer[] planes;
+
+    /**
+     * Constructs a PlanarImage with zeroed float planes.
+     *
+     * @param width The image width.
+     * @param height The image height.
+     * @param channels The number of channels (1 for grayscale, 3 for RGB, 4 for RGBA).
+     */
+
+    public PlanarImage(int width, int height, int channels) {
+        this(width, height, channels, IntensityBuffer.StorageMode.FLOAT);
+    }
+
+    /**
+     * Constructs a PlanarImage with zeroed planes of the given storage format.
+     *
+     * @param width The image width.
+     * @param height The image height.
+     * @param channels The number of channels (1 for grayscale, 3 for RGB, 4 for RGBA).
+     * @param mode The storage format of the planes.
+     */
+
+    public PlanarImage(int width, int height, int channels, IntensityBuffer.StorageMode mode) {
+        this.width = width;
+        this.height = height;
+        this.planes = new IntensityBuffer[channels];
+        for (int c = 0; c < channels; c++) {
+            planes[c] = IntensityBuffer.allocate(mode, width * height);
+        }
+    }
+
+    /**
+     * Constructs a PlanarImage over existing planes, e.g. off-heap ones.
+     *
+     * @param width The image width.
+     * @param height The image height.
+     * @param planes One row-major plane per channel.
+     */
+
+    public PlanarImage(int width, int height, IntensityBuffer[] planes) {
+        this.width = width;
+        this.height = height;
+        this.planes = planes;
+    }
+
+    /**
+     * Returns the value of a channel at a row-major index.
+     *
+     * @param channel The channel.
+     * @param index The row-major pixel index.
+     * @return The intensity value.
+     */
+
+    public float get(int channel, int index) { return planes[channel].get(index); }
+
+    /**
+     * Sets the value of a channel at a row-major index.
+     *
+     * @param channel The channel.
+     * @param index The row-major pixel index.
+     * @param value The new intensity value.
+     */
+
+    public void set(int channel, int index, float value) { planes[channel].set(index, value); }
+
+    /**
+     * Returns the buffer of a single channel.
+     *
+     * @param channel The channel.
+     * @return The row-major plane of the channel.
+     */
+
+    public IntensityBuffer getPlane(int channel) { return planes[channel]; }
+
+    /**
+     * Returns the storage format of the planes.
+     *
+     * @return The StorageMode.
+     */
+
+    public IntensityBuffer.StorageMode getStorageMode() { return planes[0].getStorageMode(); }
+
+    /**
+     * Returns the number of channels.
+     *
+     * @return The channel count.
+     */
+
+    public int getChannels() { return planes.length; }
+
+    /**
+     * Returns whether the image has an alpha channel.
+     *
+     * @return True if the image has four channels.
+     */
+
+    public boolean hasAlpha() { return planes.length > ALPHA; }
+
+    /**
+     * Returns a view of the colour channels without the alpha channel, sharing the planes.
+     *
+     * @return An RGB view, or this image if it has no alpha channel.
+     */
+
+    public PlanarImage withoutAlpha() {
+        if (!hasAlpha()) {
+            return this;
+        }
+        return new PlanarImage(width, height, new IntensityBuffer[]{planes[RED], planes[GREEN],
+                planes[BLUE]});
+    }
+
+    /**
+     * Returns the image width.
+     *
+     * @return The width in pixels.
+     */
+
+    public int getWidth() { return width; }
+
+    /**
+     * Returns the image height.
+     *
+     * @return The height in pixels.
+     */
+
+    public int getHeight() { return height; }
+}
@@ -11,6 +11,7 @@ public class ProcessedImageFields {
     private final Pixel[][] pixelArray;
     private final HashSet<Pixel> holePixels;
     private final HashSet<Pixel> boundaryPixels;
+    private volatile boolean[] holeBitmap;
 
     /**
      * Constructs a ProcessedImageFields object.
@@ -50,4 +51,26 @@ public class ProcessedImageFields {
      */
 
     public HashSet<Pixel> getBoundaryPixels() { return boundaryPixels; }
+
+    /**
+     * Checks whether a position belongs to the hole. The lookup bitmap is built from the hole
+     * pixels on first use.
+     *
+     * @param row Row index of the pixel.
+     * @param col Column index of the pixel.
+     * @return True if the pixel is a hole pixel, otherwise false.
+     */
+
+    public boolean isHole(int row, int col) {
+        int width = pixelArray[0].length;
+        boolean[] bitmap = holeBitmap;
+        if (bitmap == null) {
+            bitmap = new boolean[pixelArray.length * width];
+            for (Pixel p : holePixels) {
+                bitmap[p.getX() * width + p.getY()] = true;
+            }
+            holeBitmap = bitmap;
+        }
+        return bitmap[row * width + col];
+    }
 }
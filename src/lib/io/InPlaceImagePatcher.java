@@ -0,0 +1,420 @@
+package lib.io;
+
+import lib.entities.FillResult;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the filled version of an uncompressed image by copying the source file and patching
+ * only the bytes of the hole pixels in a memory-mapped view of the copy, so the cost of saving
+ * grows with the hole rather than with the image. Supported layouts are 24/32-bit BI_RGB BMP
+ * (bottom-up or top-down), binary PGM/PPM (P5/P6, 8 or 16-bit) and uncompressed 8-bit TIFF in
+ * chunky strips (grayscale or RGB). Other files are reported as not patchable and left alone.
+ */
+
+public class InPlaceImagePatcher
+{
+    private static final String SIZE_MISMATCH = "Image size does not match the result: ";
+    private static final String TOO_LARGE = "File too large to map: ";
+    private static final double RED_FACTOR = 0.299;
+    private static final double GREEN_FACTOR = 0.587;
+    private static final double BLUE_FACTOR = 0.114;
+    private static final int[] BGR = {2, 1, 0};
+    private static final int[] RGB = {0, 1, 2};
+    private static final int[] GRAY = {0};
+    private static final int BMP_HEADER_SIZE = 54;
+    private static final int TIFF_WIDTH = 256;
+    private static final int TIFF_HEIGHT = 257;
+    private static final int TIFF_BITS_PER_SAMPLE = 258;
+    private static final int TIFF_COMPRESSION = 259;
+    private static final int TIFF_PHOTOMETRIC = 262;
+    private static final int TIFF_STRIP_OFFSETS = 273;
+    private static final int TIFF_SAMPLES_PER_PIXEL = 277;
+    private static final int TIFF_ROWS_PER_STRIP = 278;
+    private static final int TIFF_PLANAR_CONFIG = 284;
+    private static final int TIFF_TILE_WIDTH = 322;
+    private static final int TIFF_SHORT = 3;
+    private static final int TIFF_LONG = 4;
+
+    /**
+     * Copies an image file and writes the filled hole values into the copy.
+     *
+     * @param sourcePath Path to the original image.
+     * @param outputPath Path of the filled copy.
+     * @param result The fill result of the image's hole, grayscale or colour.
+     * @return True if the image was patched, false if its layout is not supported, in which
+     * case nothing is written.
+     * @throws IOException If an error occurs while copying or writing.
+     */
+
+    public boolean patch(String sourcePath, String outputPath, FillResult result)
+            throws IOException
+    {
+        Path source = Paths.get(sourcePath);
+        Path output = Paths.get(outputPath);
+        Layout layout;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ))
+        {
+            MappedByteBuffer mapped = map(channel, FileChannel.MapMode.READ_ONLY);
+            layout = parse(mapped);
+            if (layout != null && !layout.fitsIn(mapped.limit()))
+            {
+                layout = null;
+            }
+        }
+        if (layout == null)
+        {
+            return false;
+        }
+        if (layout.width != result.getWidth() || layout.height != result.getHeight())
+        {
+            throw new IllegalArgumentException(SIZE_MISMATCH + layout.width + "x" +
+                    layout.height);
+        }
+
+        Files.copy(source, output, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            MappedByteBuffer mapped = map(channel, FileChannel.MapMode.READ_WRITE);
+            writeHole(mapped, layout, result);
+            mapped.force();
+        }
+        return true;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode)
+            throws IOException
+    {
+        if (channel.size() > Integer.MAX_VALUE)
+        {
+            throw new IOException(TOO_LARGE + channel.size());
+        }
+        return channel.map(mode, 0, channel.size());
+    }
+
+    private static void writeHole(ByteBuffer file, Layout layout, FillResult result)
+    {
+        int channels = result.getChannels();
+        int[] holeIndices = result.getHoleIndices();
+        float[] values = result.getValues();
+        int bytesPerSample = layout.maxValue > 0xFF ? 2 : 1;
+        for (int h = 0; h < holeIndices.length; h++)
+        {
+            int row = holeIndices[h] / layout.width;
+            int col = holeIndices[h] % layout.width;
+            long pixel = layout.rowOffsets[row] + (long) col * layout.pixelStride;
+            int base = h * channels;
+            for (int k = 0; k < layout.channelOrder.length; k++)
+            {
+                float value;
+                if (channels < 3)
+                {
+                    value = values[base];
+                }
+                else if (layout.channelOrder.length == 1)
+                {
+                    value = (float) (values[base] * RED_FACTOR + values[base + 1] * GREEN_FACTOR
+                            + values[base + 2] * BLUE_FACTOR);
+                }
+                else
+                {
+                    value = values[base + layout.channelOrder[k]];
+                }
+                int sample = Math.max(0, Math.min(layout.maxValue,
+                        Math.round(value * layout.maxValue)));
+                int position = (int) (pixel + (long) k * bytesPerSample);
+                if (bytesPerSample == 2)
+                {
+                    file.put(position, (byte) (sample >> 8));
+                    file.put(position + 1, (byte) sample);
+                }
+                else
+                {
+                    file.put(position, (byte) sample);
+                }
+            }
+        }
+    }
+
+    private static Layout parse(ByteBuffer file)
+    {
+        if (file.limit() < 8)
+        {
+            return null;
+        }
+        int first = file.get(0) & 0xFF;
+        int second = file.get(1) & 0xFF;
+        if (first == 'B' && second == 'M')
+        {
+            return parseBmp(file);
+        }
+        if (first == 'P' && (second == '5' || second == '6'))
+        {
+            return parsePnm(file, second == '6');
+        }
+        if ((first == 'I' && second == 'I') || (first == 'M' && second == 'M'))
+        {
+            return parseTiff(file);
+        }
+        return null;
+    }
+
+    private static Layout parseBmp(ByteBuffer file)
+    {
+        if (file.limit() < BMP_HEADER_SIZE)
+        {
+            return null;
+        }
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        int dataOffset = file.getInt(10);
+        int width = file.getInt(18);
+        int height = file.getInt(22);
+        int bitCount = file.getShort(28);
+        int compression = file.getInt(30);
+        if (compression != 0 || (bitCount != 24 && bitCount != 32) || width <= 0 || height == 0)
+        {
+            return null;
+        }
+        boolean topDown = height < 0;
+        height = Math.abs(height);
+        long stride = ((long) bitCount * width + 31) / 32 * 4;
+        long[] rowOffsets = new long[height];
+        for (int row = 0; row < height; row++)
+        {
+            rowOffsets[row] = dataOffset + stride * (topDown ? row : height - 1 - row);
+        }
+        return new Layout(width, height, bitCount / 8, BGR, 0xFF, rowOffsets);
+    }
+
+    private static Layout parsePnm(ByteBuffer file, boolean color)
+    {
+        int[] position = {2};
+        int width = readPnmNumber(file, position);
+        int height = readPnmNumber(file, position);
+        int maxValue = readPnmNumber(file, position);
+        if (width <= 0 || height <= 0 || maxValue <= 0 || maxValue > 0xFFFF)
+        {
+            return null;
+        }
+        int dataOffset = position[0] + 1;
+        int samples = color ? 3 : 1;
+        int pixelStride = samples * (maxValue > 0xFF ? 2 : 1);
+        long[] rowOffsets = new long[height];
+        for (int row = 0; row < height; row++)
+        {
+            rowOffsets[row] = dataOffset + (long) row * width * pixelStride;
+        }
+        return new Layout(width, height, pixelStride, color ? RGB : GRAY, maxValue, rowOffsets);
+    }
+
+    /**
+     * Reads a decimal header field of a PNM file, skipping whitespace and comments.
+     *
+     * @return The number, or -1 if the header is malformed. The position is left on the
+     * whitespace following the number.
+     */
+
+    private static int readPnmNumber(ByteBuffer file, int[] position)
+    {
+        int pos = position[0];
+        while (pos < file.limit())
+        {
+            int c = file.get(pos);
+            if (c == '#')
+            {
+                while (pos < file.limit() && file.get(pos) != '\n')
+                {
+                    pos++;
+                }
+            }
+            else if (Character.isWhitespace(c))
+            {
+                pos++;
+            }
+            else
+            {
+                break;
+            }
+        }
+        long value = 0;
+        int digits = 0;
+        while (pos < file.limit() && Character.isDigit(file.get(pos)) && digits < 10)
+        {
+            value = value * 10 + file.get(pos) - '0';
+            pos++;
+            digits++;
+        }
+        position[0] = pos;
+        return digits == 0 || value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    private static Layout parseTiff(ByteBuffer file)
+    {
+        file.order(file.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        if (file.getShort(2) != 42)
+        {
+            return null;
+        }
+        long ifd = file.getInt(4) & 0xFFFFFFFFL;
+        if (ifd + 2 > file.limit())
+        {
+            return null;
+        }
+        int width = 0;
+        int height = 0;
+        int samples = 1;
+        int photometric = -1;
+        int rowsPerStrip = Integer.MAX_VALUE;
+        long[] stripOffsets = null;
+        int entries = file.getShort((int) ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++)
+        {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > file.limit())
+            {
+                return null;
+            }
+            int tag = file.getShort(entry) & 0xFFFF;
+            long[] values = readTiffValues(file, entry);
+            if (values == null || values.length == 0)
+            {
+                continue;
+            }
+            switch (tag)
+            {
+                case TIFF_WIDTH:
+                    width = (int) values[0];
+                    break;
+                case TIFF_HEIGHT:
+                    height = (int) values[0];
+                    break;
+                case TIFF_BITS_PER_SAMPLE:
+                    for (long bits : values)
+                    {
+                        if (bits != 8)
+                        {
+                            return null;
+                        }
+                    }
+                    break;
+                case TIFF_COMPRESSION:
+                    if (values[0] != 1)
+                    {
+                        return null;
+                    }
+                    break;
+                case TIFF_PHOTOMETRIC:
+                    photometric = (int) values[0];
+                    break;
+                case TIFF_STRIP_OFFSETS:
+                    stripOffsets = values;
+                    break;
+                case TIFF_SAMPLES_PER_PIXEL:
+                    samples = (int) values[0];
+                    break;
+                case TIFF_ROWS_PER_STRIP:
+                    rowsPerStrip = (int) Math.min(Integer.MAX_VALUE, values[0]);
+                    break;
+                case TIFF_PLANAR_CONFIG:
+                    if (values[0] != 1)
+                    {
+                        return null;
+                    }
+                    break;
+                case TIFF_TILE_WIDTH:
+                    return null;
+                default:
+                    break;
+            }
+        }
+        boolean gray = photometric == 1 && samples == 1;
+        boolean rgb = photometric == 2 && (samples == 3 || samples == 4);
+        if ((!gray && !rgb) || width <= 0 || height <= 0 || stripOffsets == null)
+        {
+            return null;
+        }
+        long rowBytes = (long) width * samples;
+        long[] rowOffsets = new long[height];
+        for (int row = 0; row < height; row++)
+        {
+            int strip = row / rowsPerStrip;
+            if (strip >= stripOffsets.length)
+            {
+                return null;
+            }
+            rowOffsets[row] = stripOffsets[strip] + (long) (row % rowsPerStrip) * rowBytes;
+        }
+        return new Layout(width, height, samples, gray ? GRAY : RGB, 0xFF, rowOffsets);
+    }
+
+    private static long[] readTiffValues(ByteBuffer file, int entry)
+    {
+        int type = file.getShort(entry + 2) & 0xFFFF;
+        long count = file.getInt(entry + 4) & 0xFFFFFFFFL;
+        int size = type == TIFF_SHORT ? 2 : type == TIFF_LONG ? 4 : 0;
+        if (size == 0 || count > Integer.MAX_VALUE / size)
+        {
+            return null;
+        }
+        long start = count * size <= 4 ? entry + 8 : file.getInt(entry + 8) & 0xFFFFFFFFL;
+        if (start + count * size > file.limit())
+        {
+            return null;
+        }
+        long[] values = new long[(int) count];
+        for (int i = 0; i < count; i++)
+        {
+            int pos = (int) start + i * size;
+            values[i] = size == 2 ? file.getShort(pos) & 0xFFFF : file.getInt(pos) & 0xFFFFFFFFL;
+        }
+        return values;
+    }
+
+    /**
+     * Describes where the samples of each pixel are stored in an uncompressed file.
+     */
+
+    private static final class Layout
+    {
+        private final int width;
+        private final int height;
+        private final int pixelStride;
+        private final int[] channelOrder;
+        private final int maxValue;
+        private final long[] rowOffsets;
+
+        private Layout(int width, int height, int pixelStride, int[] channelOrder, int maxValue,
+                       long[] rowOffsets)
+        {
+            this.width = width;
+            this.height = height;
+            this.pixelStride = pixelStride;
+            this.channelOrder = channelOrder;
+            this.maxValue = maxValue;
+            this.rowOffsets = rowOffsets;
+        }
+
+        private boolean fitsIn(long fileSize)
+        {
+            long rowBytes = (long) width * pixelStride;
+            for (long offset : rowOffsets)
+            {
+                if (offset < 0 || offset + rowBytes > fileSize)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
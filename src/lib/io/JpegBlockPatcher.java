@@ -0,0 +1,1159 @@
+package lib.io;
+
+import lib.entities.FillResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the filled version of a baseline JPEG without re-encoding the blocks outside the hole.
+ * The entropy-coded data is Huffman-decoded into quantized DCT coefficients; only the blocks
+ * that contain filled samples are transformed back to samples, updated, transformed and
+ * re-quantized with the original quantization tables. All scans are then Huffman-coded again
+ * from the coefficients, so untouched blocks decode to exactly the same samples, and restart
+ * intervals without changed blocks are copied byte for byte. If an original Huffman table lacks
+ * a symbol a changed block needs, the scan is coded with optimized tables instead, written
+ * before it and followed by the original ones. Progressive, arithmetic-coded, 12-bit and CMYK
+ * files are reported as not patchable.
+ */
+
+public class JpegBlockPatcher
+{
+    private static final String SIZE_MISMATCH = "Image size does not match the result: ";
+    private static final String CORRUPT = "Corrupt JPEG data";
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63};
+    private static final double[][] DCT = new double[8][8];
+    private static final int BLOCK = 64;
+    private static final int MAX_DC = 2047;
+    private static final int MAX_AC = 1023;
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOF0 = 0xC0;
+    private static final int SOF1 = 0xC1;
+    private static final int DHT = 0xC4;
+    private static final int DQT = 0xDB;
+    private static final int DRI = 0xDD;
+    private static final int SOS = 0xDA;
+    private static final int RST0 = 0xD0;
+    private static final int APP14 = 0xEE;
+    private static final int TEM = 0x01;
+
+    static
+    {
+        for (int u = 0; u < 8; u++)
+        {
+            double scale = u == 0 ? Math.sqrt(0.125) : 0.5;
+            for (int x = 0; x < 8; x++)
+            {
+                DCT[u][x] = scale * Math.cos((2 * x + 1) * u * Math.PI / 16);
+            }
+        }
+    }
+
+    /**
+     * Writes a copy of a JPEG file whose hole blocks are replaced by the filled values.
+     *
+     * @param sourcePath Path to the original JPEG.
+     * @param outputPath Path of the filled copy.
+     * @param result The fill result of the image's hole, grayscale or colour.
+     * @return True if the image was written, false if the file is not a supported baseline
+     * JPEG, in which case nothing is written.
+     * @throws IOException If the file cannot be read or written, or its data is corrupt.
+     */
+
+    public boolean patch(String sourcePath, String outputPath, FillResult result)
+            throws IOException
+    {
+        byte[] data = Files.readAllBytes(Paths.get(sourcePath));
+        Frame frame = parse(data);
+        if (frame == null)
+        {
+            return false;
+        }
+        if (frame.width != result.getWidth() || frame.height != result.getHeight())
+        {
+            throw new IllegalArgumentException(SIZE_MISMATCH + frame.width + "x" + frame.height);
+        }
+        updateHoleBlocks(frame, result);
+        try (OutputStream out = Files.newOutputStream(Paths.get(outputPath)))
+        {
+            write(data, frame, out);
+        }
+        return true;
+    }
+
+    private static Frame parse(byte[] data) throws IOException
+    {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI)
+        {
+            return null;
+        }
+        HuffmanTable[] dcTables = new HuffmanTable[4];
+        HuffmanTable[] acTables = new HuffmanTable[4];
+        int[][] quantTables = new int[4][];
+        int restartInterval = 0;
+        boolean adobeRgb = false;
+        Frame frame = null;
+        int pos = 2;
+        while (pos + 4 <= data.length)
+        {
+            if ((data[pos] & 0xFF) != 0xFF)
+            {
+                throw new IOException(CORRUPT);
+            }
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xFF)
+            {
+                pos++;
+                continue;
+            }
+            if (marker == EOI)
+            {
+                break;
+            }
+            if (marker == TEM || (marker >= RST0 && marker < RST0 + 8))
+            {
+                pos += 2;
+                continue;
+            }
+            int length = readShort(data, pos + 2);
+            int segment = pos + 4;
+            int end = pos + 2 + length;
+            if (end > data.length)
+            {
+                throw new IOException(CORRUPT);
+            }
+            if (marker == SOF0 || marker == SOF1)
+            {
+                frame = parseFrame(data, segment, adobeRgb);
+                if (frame == null)
+                {
+                    return null;
+                }
+            }
+            else if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8 &&
+                    marker != 0xCC)
+            {
+                return null;
+            }
+            else if (marker == DHT)
+            {
+                parseHuffmanTables(data, segment, end, dcTables, acTables);
+            }
+            else if (marker == DQT)
+            {
+                parseQuantTables(data, segment, end, quantTables);
+            }
+            else if (marker == DRI)
+            {
+                restartInterval = readShort(data, segment);
+            }
+            else if (marker == APP14 && length >= 14 && data[segment] == 'A' &&
+                    data[segment + 1] == 'd' && data[segment + 2] == 'o')
+            {
+                adobeRgb = data[segment + 11] == 0;
+                if (frame != null)
+                {
+                    frame.rgb = frame.components.size() == 3 && adobeRgb;
+                }
+            }
+            else if (marker == SOS)
+            {
+                if (frame == null)
+                {
+                    throw new IOException(CORRUPT);
+                }
+                Scan scan = parseScan(data, pos, segment, end, frame, dcTables, acTables,
+                        quantTables, restartInterval);
+                decodeScan(data, frame, scan);
+                frame.scans.add(scan);
+                pos = scan.dataEnd;
+                continue;
+            }
+            pos = end;
+        }
+        return frame == null || frame.scans.isEmpty() ? null : frame;
+    }
+
+    private static Frame parseFrame(byte[] data, int segment, boolean adobeRgb)
+    {
+        int precision = data[segment] & 0xFF;
+        int height = readShort(data, segment + 1);
+        int width = readShort(data, segment + 3);
+        int count = data[segment + 5] & 0xFF;
+        if (precision != 8 || height == 0 || width == 0 || (count != 1 && count != 3))
+        {
+            return null;
+        }
+        Frame frame = new Frame(width, height);
+        for (int i = 0; i < count; i++)
+        {
+            int base = segment + 6 + i * 3;
+            Component component = new Component(data[base] & 0xFF, (data[base + 1] >> 4) & 0x0F,
+                    data[base + 1] & 0x0F, data[base + 2] & 0x0F);
+            if (component.h < 1 || component.h > 4 || component.v < 1 || component.v > 4)
+            {
+                return null;
+            }
+            frame.components.add(component);
+            frame.hMax = Math.max(frame.hMax, component.h);
+            frame.vMax = Math.max(frame.vMax, component.v);
+        }
+        frame.mcusX = (width + 8 * frame.hMax - 1) / (8 * frame.hMax);
+        frame.mcusY = (height + 8 * frame.vMax - 1) / (8 * frame.vMax);
+        for (Component component : frame.components)
+        {
+            if (frame.hMax % component.h != 0 || frame.vMax % component.v != 0)
+            {
+                return null;
+            }
+            component.blocksPerLine = frame.mcusX * component.h;
+            int blocksPerColumn = frame.mcusY * component.v;
+            int componentWidth = (width * component.h + frame.hMax - 1) / frame.hMax;
+            int componentHeight = (height * component.v + frame.vMax - 1) / frame.vMax;
+            component.scanBlocksX = (componentWidth + 7) / 8;
+            component.scanBlocksY = (componentHeight + 7) / 8;
+            component.coefficients = new short[component.blocksPerLine * blocksPerColumn * BLOCK];
+        }
+        frame.rgb = count == 3 && (adobeRgb || (frame.components.get(0).id == 'R' &&
+                frame.components.get(1).id == 'G' && frame.components.get(2).id == 'B'));
+        return frame;
+    }
+
+    private static void parseHuffmanTables(byte[] data, int pos, int end, HuffmanTable[] dc,
+                                           HuffmanTable[] ac) throws IOException
+    {
+        while (pos < end)
+        {
+            int tableClass = (data[pos] >> 4) & 0x0F;
+            int id = data[pos] & 0x0F;
+            int[] bits = new int[17];
+            int total = 0;
+            for (int l = 1; l <= 16; l++)
+            {
+                bits[l] = data[pos + l] & 0xFF;
+                total += bits[l];
+            }
+            if (id > 3 || tableClass > 1 || pos + 17 + total > end)
+            {
+                throw new IOException(CORRUPT);
+            }
+            int[] values = new int[total];
+            for (int i = 0; i < total; i++)
+            {
+                values[i] = data[pos + 17 + i] & 0xFF;
+            }
+            HuffmanTable table = new HuffmanTable(bits, values);
+            if (tableClass == 0)
+            {
+                dc[id] = table;
+            }
+            else
+            {
+                ac[id] = table;
+            }
+            pos += 17 + total;
+        }
+    }
+
+    private static void parseQuantTables(byte[] data, int pos, int end, int[][] tables)
+            throws IOException
+    {
+        while (pos < end)
+        {
+            boolean wide = ((data[pos] >> 4) & 0x0F) != 0;
+            int id = data[pos] & 0x0F;
+            if (id > 3)
+            {
+                throw new IOException(CORRUPT);
+            }
+            int[] table = new int[BLOCK];
+            pos++;
+            for (int k = 0; k < BLOCK; k++)
+            {
+                table[k] = wide ? readShort(data, pos + 2 * k) : data[pos + k] & 0xFF;
+            }
+            tables[id] = table;
+            pos += wide ? 2 * BLOCK : BLOCK;
+        }
+    }
+
+    private static Scan parseScan(byte[] data, int markerStart, int segment, int end, Frame frame,
+                                  HuffmanTable[] dcTables, HuffmanTable[] acTables,
+                                  int[][] quantTables, int restartInterval) throws IOException
+    {
+        int count = data[segment] & 0xFF;
+        Scan scan = new Scan(markerStart, end, restartInterval);
+        for (int i = 0; i < count; i++)
+        {
+            int id = data[segment + 1 + 2 * i] & 0xFF;
+            int tables = data[segment + 2 + 2 * i] & 0xFF;
+            Component component = null;
+            for (Component candidate : frame.components)
+            {
+                if (candidate.id == id)
+                {
+                    component = candidate;
+                }
+            }
+            int dcSlot = (tables >> 4) & 0x03;
+            int acSlot = tables & 0x03;
+            if (component == null || dcTables[dcSlot] == null || acTables[acSlot] == null ||
+                    quantTables[component.quantId] == null)
+            {
+                throw new IOException(CORRUPT);
+            }
+            component.quantTable = quantTables[component.quantId];
+            scan.components.add(component);
+            scan.dcSlots.add(dcSlot);
+            scan.acSlots.add(acSlot);
+            scan.dcTables.add(dcTables[dcSlot]);
+            scan.acTables.add(acTables[acSlot]);
+        }
+        return scan;
+    }
+
+    private static void decodeScan(byte[] data, Frame frame, Scan scan) throws IOException
+    {
+        int mcus = mcuCount(frame, scan);
+        int interval = scan.restartInterval > 0 ? scan.restartInterval : mcus;
+        BitReader in = new BitReader(data, scan.dataStart);
+        int[] predictions = new int[scan.components.size()];
+        for (int first = 0; first < mcus; first += interval)
+        {
+            int start = in.position();
+            Arrays.fill(predictions, 0);
+            int last = Math.min(mcus, first + interval);
+            for (int mcu = first; mcu < last; mcu++)
+            {
+                visitMcu(frame, scan, mcu, (index, component, offset) ->
+                        decodeBlock(in, scan, index, component, offset, predictions));
+            }
+            int markerPos = in.alignToMarker();
+            scan.intervals.add(new int[]{start, markerPos});
+            if (last < mcus)
+            {
+                int marker = markerPos + 1 < data.length ? data[markerPos + 1] & 0xFF : 0;
+                if (marker < RST0 || marker >= RST0 + 8)
+                {
+                    throw new IOException(CORRUPT);
+                }
+                in.seek(markerPos + 2);
+            }
+            else
+            {
+                scan.dataEnd = markerPos;
+            }
+        }
+    }
+
+    private static void decodeBlock(BitReader in, Scan scan, int index, Component component,
+                                    int offset, int[] predictions) throws IOException
+    {
+        short[] coefficients = component.coefficients;
+        int size = scan.dcTables.get(index).decode(in);
+        predictions[index] += size == 0 ? 0 : extend(in.readBits(size), size);
+        coefficients[offset] = (short) predictions[index];
+        HuffmanTable ac = scan.acTables.get(index);
+        int k = 1;
+        while (k < BLOCK)
+        {
+            int symbol = ac.decode(in);
+            int run = symbol >> 4;
+            int bits = symbol & 0x0F;
+            if (bits == 0)
+            {
+                if (run != 15)
+                {
+                    break;
+                }
+                k += 16;
+                continue;
+            }
+            k += run;
+            if (k >= BLOCK)
+            {
+                throw new IOException(CORRUPT);
+            }
+            coefficients[offset + k] = (short) extend(in.readBits(bits), bits);
+            k++;
+        }
+    }
+
+    private static void updateHoleBlocks(Frame frame, FillResult result)
+    {
+        int channels = result.getChannels();
+        float[] values = result.getValues();
+        int[] holeIndices = result.getHoleIndices();
+        int count = frame.components.size();
+        for (int c = 0; c < count; c++)
+        {
+            Component component = frame.components.get(c);
+            int factorH = frame.hMax / component.h;
+            int factorV = frame.vMax / component.v;
+            Map<Integer, float[]> blocks = new HashMap<>();
+            for (int h = 0; h < holeIndices.length; h++)
+            {
+                int sampleX = holeIndices[h] % frame.width / factorH;
+                int sampleY = holeIndices[h] / frame.width / factorV;
+                int block = (sampleY >> 3) * component.blocksPerLine + (sampleX >> 3);
+                float[] sums = blocks.computeIfAbsent(block, key -> new float[2 * BLOCK]);
+                int sample = (sampleY & 7) * 8 + (sampleX & 7);
+                sums[sample] += componentValue(frame, c, values, h * channels, channels);
+                sums[BLOCK + sample]++;
+            }
+            double[] samples = new double[BLOCK];
+            int covered = factorH * factorV;
+            for (Map.Entry<Integer, float[]> entry : blocks.entrySet())
+            {
+                int offset = entry.getKey() * BLOCK;
+                float[] sums = entry.getValue();
+                toSamples(component, offset, samples);
+                for (int s = 0; s < BLOCK; s++)
+                {
+                    float filled = sums[BLOCK + s];
+                    if (filled > 0)
+                    {
+                        samples[s] = (sums[s] + (covered - filled) * samples[s]) / covered;
+                    }
+                }
+                fromSamples(component, offset, samples);
+                frame.modifiedBlocks.computeIfAbsent(component, key -> new BitSet())
+                        .set(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Converts the filled value of a hole pixel to a sample of a JPEG component, in 0-255.
+     */
+
+    private static float componentValue(Frame frame, int component, float[] values, int base,
+                                        int channels)
+    {
+        float red = values[base] * 255;
+        float green = channels >= 3 ? values[base + 1] * 255 : red;
+        float blue = channels >= 3 ? values[base + 2] * 255 : red;
+        if (frame.rgb)
+        {
+            return component == 0 ? red : component == 1 ? green : blue;
+        }
+        switch (component)
+        {
+            case 0:
+                return 0.299f * red + 0.587f * green + 0.114f * blue;
+            case 1:
+                return -0.168736f * red - 0.331264f * green + 0.5f * blue + 128;
+            default:
+                return 0.5f * red - 0.418688f * green - 0.081312f * blue + 128;
+        }
+    }
+
+    private static void toSamples(Component component, int offset, double[] samples)
+    {
+        double[] natural = new double[BLOCK];
+        for (int k = 0; k < BLOCK; k++)
+        {
+            natural[ZIGZAG[k]] = component.coefficients[offset + k] * component.quantTable[k];
+        }
+        double[] rows = new double[BLOCK];
+        for (int v = 0; v < 8; v++)
+        {
+            for (int x = 0; x < 8; x++)
+            {
+                double sum = 0;
+                for (int u = 0; u < 8; u++)
+                {
+                    sum += DCT[u][x] * natural[v * 8 + u];
+                }
+                rows[v * 8 + x] = sum;
+            }
+        }
+        for (int y = 0; y < 8; y++)
+        {
+            for (int x = 0; x < 8; x++)
+            {
+                double sum = 0;
+                for (int v = 0; v < 8; v++)
+                {
+                    sum += DCT[v][y] * rows[v * 8 + x];
+                }
+                samples[y * 8 + x] = Math.max(0, Math.min(255, Math.round(sum + 128)));
+            }
+        }
+    }
+
+    private static void fromSamples(Component component, int offset, double[] samples)
+    {
+        double[] rows = new double[BLOCK];
+        for (int y = 0; y < 8; y++)
+        {
+            for (int u = 0; u < 8; u++)
+            {
+                double sum = 0;
+                for (int x = 0; x < 8; x++)
+                {
+                    sum += DCT[u][x] * (samples[y * 8 + x] - 128);
+                }
+                rows[y * 8 + u] = sum;
+            }
+        }
+        for (int k = 0; k < BLOCK; k++)
+        {
+            int v = ZIGZAG[k] / 8;
+            int u = ZIGZAG[k] % 8;
+            double sum = 0;
+            for (int y = 0; y < 8; y++)
+            {
+                sum += DCT[v][y] * rows[y * 8 + u];
+            }
+            int limit = k == 0 ? MAX_DC : MAX_AC;
+            long quantized = Math.round(sum / component.quantTable[k]);
+            component.coefficients[offset + k] = (short) Math.max(-limit,
+                    Math.min(limit, quantized));
+        }
+    }
+
+    private static void write(byte[] data, Frame frame, OutputStream out) throws IOException
+    {
+        int copyFrom = 0;
+        for (Scan scan : frame.scans)
+        {
+            List<HuffmanTable> dcTables = scan.dcTables;
+            List<HuffmanTable> acTables = scan.acTables;
+            byte[] encoded = encodeScan(data, frame, scan, dcTables, acTables, true, null);
+            byte[] optimized = null;
+            if (encoded == null)
+            {
+                long[][] dcFrequencies = new long[4][257];
+                long[][] acFrequencies = new long[4][257];
+                encodeScan(data, frame, scan, dcTables, acTables, false,
+                        new long[][][]{dcFrequencies, acFrequencies});
+                HuffmanTable[] dcOptimal = new HuffmanTable[4];
+                HuffmanTable[] acOptimal = new HuffmanTable[4];
+                List<HuffmanTable> dcUsed = new ArrayList<>();
+                List<HuffmanTable> acUsed = new ArrayList<>();
+                for (int i = 0; i < scan.components.size(); i++)
+                {
+                    int dcSlot = scan.dcSlots.get(i);
+                    int acSlot = scan.acSlots.get(i);
+                    if (dcOptimal[dcSlot] == null)
+                    {
+                        dcOptimal[dcSlot] = HuffmanTable.optimal(dcFrequencies[dcSlot]);
+                    }
+                    if (acOptimal[acSlot] == null)
+                    {
+                        acOptimal[acSlot] = HuffmanTable.optimal(acFrequencies[acSlot]);
+                    }
+                    dcUsed.add(dcOptimal[dcSlot]);
+                    acUsed.add(acOptimal[acSlot]);
+                }
+                encoded = encodeScan(data, frame, scan, dcUsed, acUsed, false, null);
+                optimized = huffmanSegment(scan, dcUsed, acUsed);
+            }
+            out.write(data, copyFrom, scan.markerStart - copyFrom);
+            if (optimized != null)
+            {
+                out.write(optimized);
+            }
+            out.write(data, scan.markerStart, scan.dataStart - scan.markerStart);
+            out.write(encoded);
+            if (optimized != null)
+            {
+                out.write(huffmanSegment(scan, scan.dcTables, scan.acTables));
+            }
+            copyFrom = scan.dataEnd;
+        }
+        out.write(data, copyFrom, data.length - copyFrom);
+    }
+
+    /**
+     * Huffman-codes a scan from the coefficients, copying unchanged restart intervals.
+     *
+     * @return The entropy-coded data, or null if a table lacks a needed symbol. In counting
+     * mode (frequencies given) symbols are only counted and null is returned.
+     */
+
+    private static byte[] encodeScan(byte[] data, Frame frame, Scan scan,
+                                     List<HuffmanTable> dcTables, List<HuffmanTable> acTables,
+                                     boolean copyUnchanged, long[][][] frequencies)
+            throws IOException
+    {
+        int mcus = mcuCount(frame, scan);
+        int interval = scan.restartInterval > 0 ? scan.restartInterval : mcus;
+        BitWriter out = new BitWriter(scan.dataEnd - scan.dataStart + 1024, frequencies,
+                scan.dcSlots, scan.acSlots);
+        int[] predictions = new int[scan.components.size()];
+        boolean[] changed = new boolean[1];
+        for (int first = 0, number = 0; first < mcus; first += interval, number++)
+        {
+            int last = Math.min(mcus, first + interval);
+            changed[0] = !copyUnchanged;
+            for (int mcu = first; mcu < last && !changed[0]; mcu++)
+            {
+                visitMcu(frame, scan, mcu, (index, component, offset) ->
+                {
+                    BitSet modified = frame.modifiedBlocks.get(component);
+                    changed[0] |= modified != null && modified.get(offset / BLOCK);
+                });
+            }
+            if (changed[0])
+            {
+                Arrays.fill(predictions, 0);
+                for (int mcu = first; mcu < last; mcu++)
+                {
+                    visitMcu(frame, scan, mcu, (index, component, offset) ->
+                            out.encodeBlock(component.coefficients, offset, index,
+                                    predictions, dcTables.get(index), acTables.get(index)));
+                }
+                out.flushBits();
+            }
+            else
+            {
+                int[] range = scan.intervals.get(number);
+                out.writeRaw(data, range[0], range[1] - range[0]);
+            }
+            if (last < mcus)
+            {
+                out.writeMarker(RST0 + number % 8);
+            }
+        }
+        return out.missingSymbol || frequencies != null ? null : out.toByteArray();
+    }
+
+    private static byte[] huffmanSegment(Scan scan, List<HuffmanTable> dcTables,
+                                         List<HuffmanTable> acTables)
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        BitSet written = new BitSet();
+        for (int i = 0; i < scan.components.size(); i++)
+        {
+            int dcSlot = scan.dcSlots.get(i);
+            int acSlot = scan.acSlots.get(i);
+            if (!written.get(dcSlot))
+            {
+                written.set(dcSlot);
+                dcTables.get(i).writeTo(body, dcSlot);
+            }
+            if (!written.get(4 + acSlot))
+            {
+                written.set(4 + acSlot);
+                acTables.get(i).writeTo(body, 0x10 | acSlot);
+            }
+        }
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        segment.write(0xFF);
+        segment.write(DHT);
+        segment.write((body.size() + 2) >> 8);
+        segment.write(body.size() + 2);
+        segment.write(body.toByteArray(), 0, body.size());
+        return segment.toByteArray();
+    }
+
+    private static int mcuCount(Frame frame, Scan scan)
+    {
+        if (scan.components.size() == 1)
+        {
+            Component component = scan.components.get(0);
+            return component.scanBlocksX * component.scanBlocksY;
+        }
+        return frame.mcusX * frame.mcusY;
+    }
+
+    private static void visitMcu(Frame frame, Scan scan, int mcu, BlockVisitor visitor)
+            throws IOException
+    {
+        if (scan.components.size() == 1)
+        {
+            Component component = scan.components.get(0);
+            int blockX = mcu % component.scanBlocksX;
+            int blockY = mcu / component.scanBlocksX;
+            visitor.visit(0, component, (blockY * component.blocksPerLine + blockX) * BLOCK);
+            return;
+        }
+        int mcuX = mcu % frame.mcusX;
+        int mcuY = mcu / frame.mcusX;
+        for (int i = 0; i < scan.components.size(); i++)
+        {
+            Component component = scan.components.get(i);
+            for (int y = 0; y < component.v; y++)
+            {
+                for (int x = 0; x < component.h; x++)
+                {
+                    int blockX = mcuX * component.h + x;
+                    int blockY = mcuY * component.v + y;
+                    visitor.visit(i, component,
+                            (blockY * component.blocksPerLine + blockX) * BLOCK);
+                }
+            }
+        }
+    }
+
+    private static int extend(int value, int size)
+    {
+        return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+    }
+
+    private static int readShort(byte[] data, int pos)
+    {
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    private interface BlockVisitor
+    {
+        void visit(int index, Component component, int offset) throws IOException;
+    }
+
+    private static final class Frame
+    {
+        private final int width;
+        private final int height;
+        private final List<Component> components = new ArrayList<>();
+        private final List<Scan> scans = new ArrayList<>();
+        private final Map<Component, BitSet> modifiedBlocks = new HashMap<>();
+        private int hMax = 1;
+        private int vMax = 1;
+        private int mcusX;
+        private int mcusY;
+        private boolean rgb;
+
+        private Frame(int width, int height)
+        {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static final class Component
+    {
+        private final int id;
+        private final int h;
+        private final int v;
+        private final int quantId;
+        private int blocksPerLine;
+        private int scanBlocksX;
+        private int scanBlocksY;
+        private int[] quantTable;
+        private short[] coefficients;
+
+        private Component(int id, int h, int v, int quantId)
+        {
+            this.id = id;
+            this.h = h;
+            this.v = v;
+            this.quantId = quantId;
+        }
+    }
+
+    private static final class Scan
+    {
+        private final int markerStart;
+        private final int dataStart;
+        private final int restartInterval;
+        private final List<Component> components = new ArrayList<>();
+        private final List<Integer> dcSlots = new ArrayList<>();
+        private final List<Integer> acSlots = new ArrayList<>();
+        private final List<HuffmanTable> dcTables = new ArrayList<>();
+        private final List<HuffmanTable> acTables = new ArrayList<>();
+        private final List<int[]> intervals = new ArrayList<>();
+        private int dataEnd;
+
+        private Scan(int markerStart, int dataStart, int restartInterval)
+        {
+            this.markerStart = markerStart;
+            this.dataStart = dataStart;
+            this.restartInterval = restartInterval;
+        }
+    }
+
+    /**
+     * A Huffman table given by its code counts per length and symbols, with decoding limits and
+     * the code of every symbol.
+     */
+
+    private static final class HuffmanTable
+    {
+        private final int[] bits;
+        private final int[] values;
+        private final int[] maxCode = new int[18];
+        private final int[] minCode = new int[17];
+        private final int[] valuePointer = new int[17];
+        private final int[] codes = new int[256];
+        private final int[] sizes = new int[256];
+
+        private HuffmanTable(int[] bits, int[] values)
+        {
+            this.bits = bits;
+            this.values = values;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++)
+            {
+                valuePointer[length] = k;
+                minCode[length] = code;
+                for (int i = 0; i < bits[length]; i++)
+                {
+                    codes[values[k]] = code;
+                    sizes[values[k]] = length;
+                    code++;
+                    k++;
+                }
+                maxCode[length] = bits[length] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+            maxCode[17] = Integer.MAX_VALUE;
+        }
+
+        private int decode(BitReader in) throws IOException
+        {
+            int code = in.readBits(1);
+            int length = 1;
+            while (code > maxCode[length])
+            {
+                code = (code << 1) | in.readBits(1);
+                length++;
+                if (length > 16)
+                {
+                    throw new IOException(CORRUPT);
+                }
+            }
+            return values[valuePointer[length] + code - minCode[length]];
+        }
+
+        private void writeTo(ByteArrayOutputStream out, int classAndId)
+        {
+            out.write(classAndId);
+            for (int length = 1; length <= 16; length++)
+            {
+                out.write(bits[length]);
+            }
+            for (int value : values)
+            {
+                out.write(value);
+            }
+        }
+
+        /**
+         * Builds a table with code lengths of at most 16 bits from symbol frequencies, as in
+         * section K.2 of the JPEG standard.
+         */
+
+        private static HuffmanTable optimal(long[] counts)
+        {
+            long[] frequency = counts.clone();
+            frequency[256] = 1;
+            int[] codeSize = new int[257];
+            int[] others = new int[257];
+            Arrays.fill(others, -1);
+            while (true)
+            {
+                int first = -1;
+                long smallest = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++)
+                {
+                    if (frequency[i] > 0 && frequency[i] <= smallest)
+                    {
+                        smallest = frequency[i];
+                        first = i;
+                    }
+                }
+                int second = -1;
+                smallest = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++)
+                {
+                    if (frequency[i] > 0 && frequency[i] <= smallest && i != first)
+                    {
+                        smallest = frequency[i];
+                        second = i;
+                    }
+                }
+                if (second < 0)
+                {
+                    break;
+                }
+                frequency[first] += frequency[second];
+                frequency[second] = 0;
+                codeSize[first]++;
+                while (others[first] >= 0)
+                {
+                    first = others[first];
+                    codeSize[first]++;
+                }
+                others[first] = second;
+                codeSize[second]++;
+                while (others[second] >= 0)
+                {
+                    second = others[second];
+                    codeSize[second]++;
+                }
+            }
+            int[] lengthCounts = new int[33];
+            for (int i = 0; i <= 256; i++)
+            {
+                if (codeSize[i] > 0)
+                {
+                    lengthCounts[Math.min(32, codeSize[i])]++;
+                }
+            }
+            for (int i = 32; i > 16; i--)
+            {
+                while (lengthCounts[i] > 0)
+                {
+                    int j = i - 2;
+                    while (lengthCounts[j] == 0)
+                    {
+                        j--;
+                    }
+                    lengthCounts[i] -= 2;
+                    lengthCounts[i - 1]++;
+                    lengthCounts[j + 1] += 2;
+                    lengthCounts[j]--;
+                }
+            }
+            int longest = 16;
+            while (longest > 0 && lengthCounts[longest] == 0)
+            {
+                longest--;
+            }
+            if (longest > 0)
+            {
+                lengthCounts[longest]--;
+            }
+            int[] bits = new int[17];
+            System.arraycopy(lengthCounts, 1, bits, 1, 16);
+            List<Integer> symbols = new ArrayList<>();
+            for (int length = 1; length <= 32; length++)
+            {
+                for (int symbol = 0; symbol < 256; symbol++)
+                {
+                    if (codeSize[symbol] == length)
+                    {
+                        symbols.add(symbol);
+                    }
+                }
+            }
+            int[] values = new int[symbols.size()];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = symbols.get(i);
+            }
+            return new HuffmanTable(bits, values);
+        }
+    }
+
+    /**
+     * Reads entropy-coded bits, removing stuffed zero bytes and stopping at markers.
+     */
+
+    private static final class BitReader
+    {
+        private final byte[] data;
+        private int pos;
+        private int buffer;
+        private int count;
+
+        private BitReader(byte[] data, int pos)
+        {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        private int readBits(int bits)
+        {
+            int value = 0;
+            for (int i = 0; i < bits; i++)
+            {
+                if (count == 0)
+                {
+                    buffer = 0;
+                    if (pos < data.length && (data[pos] & 0xFF) != 0xFF)
+                    {
+                        buffer = data[pos++] & 0xFF;
+                    }
+                    else if (pos + 1 < data.length && data[pos + 1] == 0)
+                    {
+                        buffer = 0xFF;
+                        pos += 2;
+                    }
+                    count = 8;
+                }
+                count--;
+                value = (value << 1) | ((buffer >> count) & 1);
+            }
+            return value;
+        }
+
+        /**
+         * Drops the remaining bits of the current byte and returns the position of the next
+         * marker.
+         */
+
+        private int alignToMarker()
+        {
+            count = 0;
+            while (pos + 1 < data.length && ((data[pos] & 0xFF) != 0xFF || data[pos + 1] == 0 ||
+                    (data[pos + 1] & 0xFF) == 0xFF))
+            {
+                pos += (data[pos] & 0xFF) == 0xFF && data[pos + 1] == 0 ? 2 : 1;
+            }
+            return Math.min(pos, data.length);
+        }
+
+        private int position()
+        {
+            return pos;
+        }
+
+        private void seek(int position)
+        {
+            pos = position;
+            count = 0;
+        }
+    }
+
+    /**
+     * Writes Huffman-coded blocks with byte stuffing, or only counts their symbols.
+     */
+
+    private static final class BitWriter
+    {
+        private final ByteArrayOutputStream out;
+        private final long[][][] frequencies;
+        private final List<Integer> dcSlots;
+        private final List<Integer> acSlots;
+        private long buffer;
+        private int count;
+        private boolean missingSymbol;
+
+        private BitWriter(int capacity, long[][][] frequencies, List<Integer> dcSlots,
+                          List<Integer> acSlots)
+        {
+            this.out = new ByteArrayOutputStream(Math.max(32, capacity));
+            this.frequencies = frequencies;
+            this.dcSlots = dcSlots;
+            this.acSlots = acSlots;
+        }
+
+        private void encodeBlock(short[] coefficients, int offset, int index, int[] predictions,
+                                 HuffmanTable dc, HuffmanTable ac)
+        {
+            int diff = coefficients[offset] - predictions[index];
+            predictions[index] = coefficients[offset];
+            int size = bitSize(diff);
+            writeSymbol(dc, size, 0, dcSlots.get(index));
+            writeValue(diff, size);
+            int run = 0;
+            for (int k = 1; k < BLOCK; k++)
+            {
+                int value = coefficients[offset + k];
+                if (value == 0)
+                {
+                    run++;
+                    continue;
+                }
+                while (run > 15)
+                {
+                    writeSymbol(ac, 0xF0, 1, acSlots.get(index));
+                    run -= 16;
+                }
+                size = bitSize(value);
+                writeSymbol(ac, (run << 4) | size, 1, acSlots.get(index));
+                writeValue(value, size);
+                run = 0;
+            }
+            if (run > 0)
+            {
+                writeSymbol(ac, 0x00, 1, acSlots.get(index));
+            }
+        }
+
+        private void writeSymbol(HuffmanTable table, int symbol, int tableClass, int slot)
+        {
+            if (frequencies != null)
+            {
+                frequencies[tableClass][slot][symbol]++;
+                return;
+            }
+            if (table.sizes[symbol] == 0)
+            {
+                missingSymbol = true;
+                return;
+            }
+            writeBits(table.codes[symbol], table.sizes[symbol]);
+        }
+
+        private void writeValue(int value, int size)
+        {
+            if (size > 0 && frequencies == null)
+            {
+                writeBits(value < 0 ? value + (1 << size) - 1 : value, size);
+            }
+        }
+
+        private void writeBits(int value, int size)
+        {
+            buffer = (buffer << size) | (value & ((1L << size) - 1));
+            count += size;
+            while (count >= 8)
+            {
+                count -= 8;
+                int b = (int) (buffer >> count) & 0xFF;
+                out.write(b);
+                if (b == 0xFF)
+                {
+                    out.write(0);
+                }
+            }
+        }
+
+        private void flushBits()
+        {
+            if (count > 0 && frequencies == null)
+            {
+                writeBits(0x7F, 8 - count);
+            }
+            count = 0;
+            buffer = 0;
+        }
+
+        private void writeRaw(byte[] data, int from, int length)
+        {
+            if (frequencies == null)
+            {
+                out.write(data, from, length);
+            }
+        }
+
+        private void writeMarker(int marker)
+        {
+            if (frequencies == null)
+            {
+                out.write(0xFF);
+                out.write(marker);
+            }
+        }
+
+        private byte[] toByteArray()
+        {
+            return out.toByteArray();
+        }
+
+        private static int bitSize(int value)
+        {
+            return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+        }
+    }
+}
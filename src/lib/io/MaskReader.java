@@ -0,0 +1,261 @@
+package lib.io;
+
+import lib.entities.MaskBitmap;
+import lib.entities.PlanarImage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Builds hole bitmaps from compact mask forms, without decoding a full-resolution mask image:
+ * <ul>
+ *     <li>Run-length spans (.rle): a "width height" line, then lines of
+ *     "row startCol length [startCol length ...]".</li>
+ *     <li>Polygons (.poly): a "width height" line, then one polygon per line as
+ *     "x,y x,y x,y ..." with x the column and y the row. Polygons are rasterised with the
+ *     even-odd rule at pixel centres, and pixels covered by any polygon are holes.</li>
+ *     <li>The alpha channel of the image itself: transparent pixels are holes.</li>
+ * </ul>
+ * Blank lines and lines starting with '#' are ignored.
+ */
+
+public class MaskReader
+{
+    /**
+     * The mask argument that selects the alpha channel of the input image.
+     */
+    public static final String ALPHA_MASK = "alpha";
+
+    private static final float THRESHOLD_FOR_MASKING = 0.5f;
+    private static final String COMMENT = "#";
+    private static final String MISSING_SIZE = "Missing mask size line in: ";
+    private static final String BAD_LINE = "Malformed mask line: ";
+    private static final String NO_ALPHA = "The image has no alpha channel";
+
+    /**
+     * Checks whether a mask argument names a compact mask form.
+     *
+     * @param maskPath The mask argument.
+     * @return True for .rle and .poly files and for the alpha keyword.
+     */
+
+    public static boolean supports(String maskPath)
+    {
+        String lower = maskPath.toLowerCase(Locale.ROOT);
+        return lower.equals(ALPHA_MASK) || lower.endsWith(".rle") || lower.endsWith(".poly");
+    }
+
+    /**
+     * Reads a .rle or .poly mask file.
+     *
+     * @param maskPath Path to the mask file.
+     * @return The hole bitmap.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+
+    public MaskBitmap read(String maskPath) throws IOException
+    {
+        return maskPath.toLowerCase(Locale.ROOT).endsWith(".poly") ? readPolygons(maskPath)
+                : readRle(maskPath);
+    }
+
+    /**
+     * Reads a run-length-encoded mask. Spans are clipped to the mask.
+     *
+     * @param maskPath Path to the .rle file.
+     * @return The hole bitmap.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+
+    public MaskBitmap readRle(String maskPath) throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(maskPath),
+                StandardCharsets.US_ASCII))
+        {
+            MaskBitmap mask = readSize(reader, maskPath);
+            String line;
+            while ((line = nextLine(reader)) != null)
+            {
+                String[] fields = line.split("\\s+");
+                if (fields.length < 3 || fields.length % 2 == 0)
+                {
+                    throw new IOException(BAD_LINE + line);
+                }
+                int row = parse(fields[0], line);
+                for (int f = 1; f < fields.length; f += 2)
+                {
+                    mask.setSpan(row, parse(fields[f], line), parse(fields[f + 1], line));
+                }
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * Reads a polygon mask, rasterising each polygon straight into the hole bitmap.
+     *
+     * @param maskPath Path to the .poly file.
+     * @return The hole bitmap.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+
+    public MaskBitmap readPolygons(String maskPath) throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(maskPath),
+                StandardCharsets.US_ASCII))
+        {
+            MaskBitmap mask = readSize(reader, maskPath);
+            String line;
+            while ((line = nextLine(reader)) != null)
+            {
+                String[] vertices = line.split("\\s+");
+                if (vertices.length < 3)
+                {
+                    throw new IOException(BAD_LINE + line);
+                }
+                double[] xs = new double[vertices.length];
+                double[] ys = new double[vertices.length];
+                for (int v = 0; v < vertices.length; v++)
+                {
+                    String[] coords = vertices[v].split(",");
+                    if (coords.length != 2)
+                    {
+                        throw new IOException(BAD_LINE + line);
+                    }
+                    try
+                    {
+                        xs[v] = Double.parseDouble(coords[0]);
+                        ys[v] = Double.parseDouble(coords[1]);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        throw new IOException(BAD_LINE + line);
+                    }
+                }
+                fillPolygon(mask, xs, ys);
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * Builds a mask from the alpha channel of an image: pixels less than half opaque are holes.
+     *
+     * @param image An image read with its alpha channel.
+     * @return The hole bitmap.
+     * @throws IOException If the image has no alpha channel.
+     */
+
+    public MaskBitmap fromAlpha(PlanarImage image) throws IOException
+    {
+        if (!image.hasAlpha())
+        {
+            throw new IOException(NO_ALPHA);
+        }
+        int width = image.getWidth();
+        MaskBitmap mask = new MaskBitmap(width, image.getHeight());
+        for (int row = 0; row < image.getHeight(); row++)
+        {
+            int base = row * width;
+            for (int col = 0; col < width; col++)
+            {
+                if (image.get(PlanarImage.ALPHA, base + col) < THRESHOLD_FOR_MASKING)
+                {
+                    mask.setHole(row, col);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Rasterises a polygon with the even-odd rule: a pixel is covered when its centre lies
+     * between an odd and the following even crossing of its row's centre line.
+     */
+
+    private static void fillPolygon(MaskBitmap mask, double[] xs, double[] ys)
+    {
+        double minY = Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (double y : ys)
+        {
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        int firstRow = (int) Math.max(0, Math.ceil(minY - 0.5));
+        int lastRow = (int) Math.min(mask.getHeight() - 1, Math.floor(maxY - 0.5));
+        double[] crossings = new double[xs.length];
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            double centre = row + 0.5;
+            int count = 0;
+            for (int v = 0, prev = xs.length - 1; v < xs.length; prev = v++)
+            {
+                if ((ys[v] <= centre) != (ys[prev] <= centre))
+                {
+                    crossings[count++] = xs[prev] + (centre - ys[prev]) * (xs[v] - xs[prev]) /
+                            (ys[v] - ys[prev]);
+                }
+            }
+            Arrays.sort(crossings, 0, count);
+            for (int c = 0; c + 1 < count; c += 2)
+            {
+                int startCol = (int) Math.ceil(crossings[c] - 0.5);
+                int endCol = (int) Math.ceil(crossings[c + 1] - 0.5);
+                mask.setSpan(row, startCol, endCol - startCol);
+            }
+        }
+    }
+
+    private static MaskBitmap readSize(BufferedReader reader, String maskPath) throws IOException
+    {
+        String line = nextLine(reader);
+        if (line == null)
+        {
+            throw new IOException(MISSING_SIZE + maskPath);
+        }
+        String[] fields = line.split("\\s+");
+        if (fields.length != 2)
+        {
+            throw new IOException(BAD_LINE + line);
+        }
+        int width = parse(fields[0], line);
+        int height = parse(fields[1], line);
+        if (width <= 0 || height <= 0)
+        {
+            throw new IOException(BAD_LINE + line);
+        }
+        return new MaskBitmap(width, height);
+    }
+
+    private static String nextLine(BufferedReader reader) throws IOException
+    {
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith(COMMENT))
+            {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private static int parse(String field, String line) throws IOException
+    {
+        try
+        {
+            return Integer.parseInt(field);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException(BAD_LINE + line);
+        }
+    }
+}
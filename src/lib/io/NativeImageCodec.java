@@ -0,0 +1,607 @@
+package lib.io;
+
+import lib.entities.BufferAllocator;
+import lib.entities.ByteIntensityBuffer;
+import lib.entities.FillResult;
+import lib.entities.IntensityBuffer;
+import lib.entities.PlanarImage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reads and writes simple image formats straight between files and planar intensity buffers,
+ * through NIO channels and without AWT or ImageIO:
+ * binary PGM (P5) and PPM (P6) with 8 or 16-bit samples, PFM float images (Pf grayscale, PF
+ * colour, rows stored bottom to top) and a headered raw format (.raw). A raw file starts with
+ * the magic "FHRW", then the version, width, height, channel count and sample size in bytes
+ * (1 for 8-bit, 4 for float), all as little-endian ints, followed by the planes one after the
+ * other in row-major order.
+ */
+
+public class NativeImageCodec
+{
+    private static final String PGM = "pgm";
+    private static final String PPM = "ppm";
+    private static final String PNM = "pnm";
+    private static final String PFM = "pfm";
+    private static final String RAW = "raw";
+    private static final int RAW_MAGIC = 0x57524846;
+    private static final int RAW_VERSION = 1;
+    private static final int RAW_HEADER_BYTES = 24;
+    private static final int IO_BUFFER_BYTES = 1 << 20;
+    private static final int MAX_HEADER_BYTES = 1024;
+    private static final int MAX_NUM_COLOR = 255;
+    private static final double RED_FACTOR = 0.299;
+    private static final double GREEN_FACTOR = 0.587;
+    private static final double BLUE_FACTOR = 0.114;
+    private static final String UNSUPPORTED = "Unsupported image file: ";
+    private static final String UNSUPPORTED_DATA = "Unsupported image data";
+    private static final String TRUNCATED = "Truncated image data";
+
+    /**
+     * Checks whether a path has an extension handled by this codec.
+     *
+     * @param path The image path.
+     * @return True for .pgm, .ppm, .pnm, .pfm and .raw files.
+     */
+
+    public static boolean supports(String path)
+    {
+        String extension = extensionOf(path);
+        return extension.equals(PGM) || extension.equals(PPM) || extension.equals(PNM) ||
+                extension.equals(PFM) || extension.equals(RAW);
+    }
+
+    /**
+     * Reads an image into planes obtained from an allocator. Grayscale files give one plane,
+     * colour files three. 8-bit samples are kept as they are in BYTE planes.
+     *
+     * @param path Path to the image file.
+     * @param mode The storage format of the planes.
+     * @param allocator The allocator providing the planes.
+     * @return The PlanarImage read.
+     * @throws IOException If the file cannot be read or is not a supported image.
+     */
+
+    public PlanarImage read(String path, IntensityBuffer.StorageMode mode,
+                            BufferAllocator allocator) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+        {
+            return read(channel, mode, allocator);
+        }
+    }
+
+    /**
+     * Reads an image from a channel, e.g. standard input, into planes obtained from an
+     * allocator. The format is recognized from the first bytes of the data.
+     *
+     * @param channel The channel to read from; it is read to the end of the image but not
+     * closed.
+     * @param mode The storage format of the planes.
+     * @param allocator The allocator providing the planes.
+     * @return The PlanarImage read.
+     * @throws IOException If the data cannot be read or is not a supported image.
+     */
+
+    public PlanarImage read(ReadableByteChannel channel, IntensityBuffer.StorageMode mode,
+                            BufferAllocator allocator) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES);
+        int read;
+        do
+        {
+            read = channel.read(buffer);
+        }
+        while (read > 0 && buffer.position() < MAX_HEADER_BYTES);
+        buffer.flip();
+        Format format = readHeader(buffer);
+        if (format == null || format.dataOffset > buffer.limit())
+        {
+            throw new IOException(UNSUPPORTED_DATA);
+        }
+        buffer.position((int) format.dataOffset);
+        buffer.order(format.order);
+
+        int size = format.width * format.height;
+        IntensityBuffer[] planes = new IntensityBuffer[format.channels];
+        for (int c = 0; c < format.channels; c++)
+        {
+            planes[c] = allocator.allocateIntensities(mode, size);
+        }
+        PlanarImage image = new PlanarImage(format.width, format.height, planes);
+        readSamples(channel, buffer, format, image);
+        return image;
+    }
+
+    /**
+     * Checks whether data starts like a file handled by this codec.
+     *
+     * @param head The first bytes of the data.
+     * @return True for binary PGM/PPM, PFM and raw data.
+     */
+
+    public static boolean recognizes(byte[] head)
+    {
+        return head.length >= 2 && readHeader(ByteBuffer.wrap(head)) != null;
+    }
+
+    private static Format readHeader(ByteBuffer header)
+    {
+        if (header.limit() < 2)
+        {
+            return null;
+        }
+        int first = header.get(0);
+        int second = header.get(1);
+        if (first == 'P' && (second == '5' || second == '6'))
+        {
+            return readNetpbmHeader(header, second == '6');
+        }
+        if (first == 'P' && (second == 'f' || second == 'F'))
+        {
+            return readPfmHeader(header, second == 'F');
+        }
+        ByteBuffer little = header.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (header.limit() >= RAW_HEADER_BYTES && little.getInt(0) == RAW_MAGIC)
+        {
+            return readRawHeader(little);
+        }
+        return null;
+    }
+
+    /**
+     * Writes an image, choosing the format from the path's extension. PGM output collapses
+     * colour images to luminance, PPM output repeats gray values in all channels.
+     *
+     * @param image The image to write.
+     * @param path The output path.
+     * @throws IOException If an error occurs while writing.
+     */
+
+    public void write(PlanarImage image, String path) throws IOException
+    {
+        write(image, null, path);
+    }
+
+    /**
+     * Writes an image with the filled values of a result in place of its hole pixels. The
+     * image itself is not modified.
+     *
+     * @param image The image to write.
+     * @param result The fill result overriding the hole pixels, or null.
+     * @param path The output path.
+     * @throws IOException If an error occurs while writing.
+     */
+
+    public void write(PlanarImage image, FillResult result, String path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            write(image, result, extensionOf(path), channel);
+        }
+    }
+
+    /**
+     * Writes an image in a given format to a channel, e.g. standard output, with the filled
+     * values of a result in place of its hole pixels.
+     *
+     * @param image The image to write.
+     * @param result The fill result overriding the hole pixels, or null.
+     * @param extension The format: pgm, ppm, pnm, pfm or raw.
+     * @param channel The channel to write to; it is not closed.
+     * @throws IOException If an error occurs while writing.
+     */
+
+    public void write(PlanarImage image, FillResult result, String extension,
+                      WritableByteChannel channel) throws IOException
+    {
+        extension = extension.toLowerCase(Locale.ROOT);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean color = image.getChannels() > PlanarImage.BLUE;
+        Format format;
+        byte[] header;
+        switch (extension)
+        {
+            case PGM:
+            case PPM:
+            case PNM:
+                boolean ppm = extension.equals(PPM) || (extension.equals(PNM) && color);
+                format = new Format(width, height, ppm ? 3 : 1, 1, MAX_NUM_COLOR, false, false,
+                        ByteOrder.BIG_ENDIAN, 0, false);
+                header = ((ppm ? "P6\n" : "P5\n") + width + " " + height + "\n" + MAX_NUM_COLOR +
+                        "\n").getBytes(StandardCharsets.US_ASCII);
+                break;
+            case PFM:
+                format = new Format(width, height, color ? 3 : 1, 4, 1, true, true,
+                        ByteOrder.LITTLE_ENDIAN, 0, false);
+                header = ((color ? "PF\n" : "Pf\n") + width + " " + height + "\n-1.0\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+                break;
+            case RAW:
+                boolean bytes = image.getStorageMode() == IntensityBuffer.StorageMode.BYTE;
+                format = new Format(width, height, image.getChannels(), bytes ? 1 : 4,
+                        MAX_NUM_COLOR, !bytes, false, ByteOrder.LITTLE_ENDIAN, 0, true);
+                ByteBuffer raw = ByteBuffer.allocate(RAW_HEADER_BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                raw.putInt(RAW_MAGIC).putInt(RAW_VERSION).putInt(width).putInt(height)
+                        .putInt(format.channels).putInt(format.sampleBytes);
+                header = raw.array();
+                break;
+            default:
+                throw new IOException(UNSUPPORTED + extension);
+        }
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        while (headerBuffer.hasRemaining())
+        {
+            channel.write(headerBuffer);
+        }
+        writeSamples(channel, format, image, result);
+    }
+
+    private static Format readNetpbmHeader(ByteBuffer header, boolean color)
+    {
+        int[] position = {2};
+        int width = readNumber(header, position);
+        int height = readNumber(header, position);
+        int maxValue = readNumber(header, position);
+        if (!validSize(width, height) || maxValue <= 0 || maxValue > 0xFFFF)
+        {
+            return null;
+        }
+        return new Format(width, height, color ? 3 : 1, maxValue > 0xFF ? 2 : 1, maxValue,
+                false, false, ByteOrder.BIG_ENDIAN, position[0] + 1, false);
+    }
+
+    private static Format readPfmHeader(ByteBuffer header, boolean color)
+    {
+        int[] position = {2};
+        int width = readNumber(header, position);
+        int height = readNumber(header, position);
+        String scale = readToken(header, position);
+        if (!validSize(width, height) || scale.isEmpty())
+        {
+            return null;
+        }
+        ByteOrder order;
+        try
+        {
+            order = Double.parseDouble(scale) < 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+        return new Format(width, height, color ? 3 : 1, 4, 1, true, true, order,
+                position[0] + 1, false);
+    }
+
+    /**
+     * Checks that a header's dimensions are positive and that the pixel count, computed in
+     * long, fits the int indices of the planes.
+     */
+
+    private static boolean validSize(int width, int height)
+    {
+        return width > 0 && height > 0 && (long) width * height <= Integer.MAX_VALUE;
+    }
+
+    private static Format readRawHeader(ByteBuffer header)
+    {
+        int version = header.getInt(4);
+        int width = header.getInt(8);
+        int height = header.getInt(12);
+        int channels = header.getInt(16);
+        int sampleBytes = header.getInt(20);
+        if (version != RAW_VERSION || !validSize(width, height) || channels < 1 ||
+                channels > 4 || (sampleBytes != 1 && sampleBytes != 4))
+        {
+            return null;
+        }
+        return new Format(width, height, channels, sampleBytes, MAX_NUM_COLOR, sampleBytes == 4,
+                false, ByteOrder.LITTLE_ENDIAN, RAW_HEADER_BYTES, true);
+    }
+
+    /**
+     * Reads samples in the file's interleaving (interleaved for Netpbm and PFM, planar for
+     * raw) and stores them in the planes.
+     */
+
+    private static void readSamples(ReadableByteChannel channel, ByteBuffer buffer,
+                                    Format format, PlanarImage image) throws IOException
+    {
+        long size = (long) format.width * format.height;
+        long total = size * format.channels;
+        boolean planar = format.planar;
+        for (long s = 0; s < total; s++)
+        {
+            while (buffer.remaining() < format.sampleBytes)
+            {
+                buffer.compact();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0)
+                {
+                    throw new IOException(TRUNCATED);
+                }
+            }
+            int c = (int) (planar ? s / size : s % format.channels);
+            long pixel = planar ? s % size : s / format.channels;
+            int row = (int) (pixel / format.width);
+            int col = (int) (pixel % format.width);
+            int index = (format.bottomUp ? format.height - 1 - row : row) * format.width + col;
+            IntensityBuffer plane = image.getPlane(c);
+            if (format.floating)
+            {
+                plane.set(index, buffer.getFloat());
+            }
+            else
+            {
+                int sample = format.sampleBytes == 2 ? buffer.getShort() & 0xFFFF
+                        : buffer.get() & 0xFF;
+                if (plane instanceof ByteIntensityBuffer && format.maxValue == MAX_NUM_COLOR)
+                {
+                    ((ByteIntensityBuffer) plane).setRaw(index, sample);
+                }
+                else
+                {
+                    plane.set(index, sample / (float) format.maxValue);
+                }
+            }
+        }
+    }
+
+    private static void writeSamples(WritableByteChannel channel, Format format, PlanarImage image,
+                                     FillResult result) throws IOException
+    {
+        int width = format.width;
+        Overlay overlay = result == null ? null : new Overlay(result);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES).order(format.order);
+        float[] pixel = new float[Math.max(3, image.getChannels())];
+        int passes = format.planar ? format.channels : 1;
+        for (int pass = 0; pass < passes; pass++)
+        {
+            int from = format.planar ? pass : 0;
+            int to = format.planar ? pass + 1 : format.channels;
+            for (int fileRow = 0; fileRow < format.height; fileRow++)
+            {
+                int row = format.bottomUp ? format.height - 1 - fileRow : fileRow;
+                if (overlay != null)
+                {
+                    overlay.startRow(row * width);
+                }
+                for (int col = 0; col < width; col++)
+                {
+                    int index = row * width + col;
+                    for (int c = 0; c < image.getChannels(); c++)
+                    {
+                        pixel[c] = image.get(c, index);
+                    }
+                    if (overlay != null)
+                    {
+                        overlay.apply(index, pixel);
+                    }
+                    for (int c = from; c < to; c++)
+                    {
+                        if (buffer.remaining() < format.sampleBytes)
+                        {
+                            flush(channel, buffer);
+                        }
+                        float value = sampleFor(image, format, pixel, c);
+                        if (format.floating)
+                        {
+                            buffer.putFloat(value);
+                        }
+                        else
+                        {
+                            buffer.put((byte) Math.max(0, Math.min(MAX_NUM_COLOR,
+                                    Math.round(value * MAX_NUM_COLOR))));
+                        }
+                    }
+                }
+            }
+        }
+        flush(channel, buffer);
+    }
+
+    private static float sampleFor(PlanarImage image, Format format, float[] pixel, int channel)
+    {
+        boolean color = image.getChannels() > PlanarImage.BLUE;
+        if (format.planar)
+        {
+            return pixel[channel];
+        }
+        if (format.channels == 1)
+        {
+            return color ? (float) (pixel[PlanarImage.RED] * RED_FACTOR +
+                    pixel[PlanarImage.GREEN] * GREEN_FACTOR + pixel[PlanarImage.BLUE] *
+                    BLUE_FACTOR) : pixel[0];
+        }
+        return color ? pixel[channel] : pixel[0];
+    }
+
+    private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int readNumber(ByteBuffer header, int[] position)
+    {
+        String token = readToken(header, position);
+        try
+        {
+            return token.isEmpty() ? -1 : Integer.parseInt(token);
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads a whitespace-separated header token, skipping comments. The position is left on
+     * the whitespace following the token.
+     */
+
+    private static String readToken(ByteBuffer header, int[] position)
+    {
+        int pos = position[0];
+        while (pos < header.limit())
+        {
+            int c = header.get(pos);
+            if (c == '#')
+            {
+                while (pos < header.limit() && header.get(pos) != '\n')
+                {
+                    pos++;
+                }
+            }
+            else if (Character.isWhitespace(c))
+            {
+                pos++;
+            }
+            else
+            {
+                break;
+            }
+        }
+        StringBuilder token = new StringBuilder();
+        while (pos < header.limit() && !Character.isWhitespace(header.get(pos)))
+        {
+            token.append((char) header.get(pos));
+            pos++;
+        }
+        position[0] = pos;
+        return token.toString();
+    }
+
+    private static String extensionOf(String path)
+    {
+        int dot = path.lastIndexOf('.');
+        return dot < 0 ? "" : path.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Describes the sample layout of a file.
+     */
+
+    private static final class Format
+    {
+        private final int width;
+        private final int height;
+        private final int channels;
+        private final int sampleBytes;
+        private final int maxValue;
+        private final boolean floating;
+        private final boolean bottomUp;
+        private final ByteOrder order;
+        private final long dataOffset;
+        private final boolean planar;
+
+        private Format(int width, int height, int channels, int sampleBytes, int maxValue,
+                       boolean floating, boolean bottomUp, ByteOrder order, long dataOffset,
+                       boolean planar)
+        {
+            this.width = width;
+            this.height = height;
+            this.channels = channels;
+            this.sampleBytes = sampleBytes;
+            this.maxValue = maxValue;
+            this.floating = floating;
+            this.bottomUp = bottomUp;
+            this.order = order;
+            this.dataOffset = dataOffset;
+            this.planar = planar;
+        }
+    }
+
+    /**
+     * Looks up the filled values of a result for pixels visited row by row.
+     */
+
+    private static final class Overlay
+    {
+        private final int[] indices;
+        private final float[] values;
+        private final int channels;
+        private int cursor;
+
+        private Overlay(FillResult result)
+        {
+            int[] holeIndices = result.getHoleIndices();
+            float[] holeValues = result.getValues();
+            channels = result.getChannels();
+            boolean sorted = true;
+            for (int h = 1; h < holeIndices.length && sorted; h++)
+            {
+                sorted = holeIndices[h - 1] < holeIndices[h];
+            }
+            if (sorted)
+            {
+                indices = holeIndices;
+                values = holeValues;
+                return;
+            }
+            long[] keyed = new long[holeIndices.length];
+            for (int h = 0; h < keyed.length; h++)
+            {
+                keyed[h] = ((long) holeIndices[h] << 32) | h;
+            }
+            Arrays.sort(keyed);
+            indices = new int[keyed.length];
+            values = new float[holeValues.length];
+            for (int h = 0; h < keyed.length; h++)
+            {
+                indices[h] = (int) (keyed[h] >>> 32);
+                System.arraycopy(holeValues, (int) keyed[h] * channels, values, h * channels,
+                        channels);
+            }
+        }
+
+        private void startRow(int rowStart)
+        {
+            int found = Arrays.binarySearch(indices, rowStart);
+            cursor = found >= 0 ? found : -found - 1;
+        }
+
+        /**
+         * Replaces the channels of a pixel, visited in increasing order within a row, with its
+         * filled values if it is a hole pixel. Grayscale values fill the three colour channels.
+         */
+
+        private void apply(int index, float[] pixel)
+        {
+            while (cursor < indices.length && indices[cursor] < index)
+            {
+                cursor++;
+            }
+            if (cursor == indices.length || indices[cursor] != index)
+            {
+                return;
+            }
+            int base = cursor * channels;
+            int copied = channels < 3 ? 3 : Math.min(channels, pixel.length);
+            for (int c = 0; c < copied; c++)
+            {
+                pixel[c] = values[base + (channels < 3 ? 0 : c)];
+            }
+        }
+    }
+}
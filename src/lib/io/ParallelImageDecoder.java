@@ -0,0 +1,344 @@
+package lib.io;
+
+import lib.entities.BufferAllocator;
+import lib.entities.ByteIntensityBuffer;
+import lib.entities.IntensityBuffer;
+import lib.entities.PlanarImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes an image straight into planar intensity buffers, splitting it into regions that are
+ * decoded concurrently, each thread with its own ImageReader and input stream.
+ * Tiled images (e.g. tiled TIFF) are split along their tiles; other images are split into one
+ * horizontal strip per thread. Formats whose readers must decode every row above a strip
+ * (PNG, JPEG, GIF) and small images are decoded as a single region on the calling thread.
+ */
+
+public class ParallelImageDecoder
+{
+    private static final int MIN_PARALLEL_PIXELS = 1 << 20;
+    private static final int MAX_NUM_COLOR = 255;
+    private static final double RED_FACTOR = 0.299;
+    private static final double GREEN_FACTOR = 0.587;
+    private static final double BLUE_FACTOR = 0.114;
+    private static final int[] SHIFTS = {16, 8, 0, 24};
+    private static final String NO_READER = "No image reader for: ";
+    private static final Set<String> SEQUENTIAL_FORMATS = Set.of("png", "jpeg", "gif");
+
+    private final int threads;
+
+    /**
+     * Constructs a ParallelImageDecoder.
+     *
+     * @param threads The number of decoding threads.
+     */
+
+    public ParallelImageDecoder(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Decodes an image into planar buffers.
+     *
+     * @param path Path to the image file.
+     * @param channels 1 for grayscale, 3 for RGB or 4 for RGBA; sources without an alpha
+     *                 channel are decoded into 3 planes when 4 are asked for.
+     * @param mode The storage format of the planes.
+     * @param allocator The allocator providing the planes.
+     * @return The decoded PlanarImage.
+     * @throws IOException If an error occurs while decoding.
+     */
+
+    public PlanarImage decode(String path, int channels, IntensityBuffer.StorageMode mode,
+                              BufferAllocator allocator) throws IOException
+    {
+        return decodeSource(new File(path), channels, mode, allocator);
+    }
+
+    /**
+     * Decodes an encoded image held in memory, e.g. one read from standard input.
+     *
+     * @param encoded The encoded image file contents.
+     * @param channels 1 for grayscale, 3 for RGB or 4 for RGBA; sources without an alpha
+     *                 channel are decoded into 3 planes when 4 are asked for.
+     * @param mode The storage format of the planes.
+     * @param allocator The allocator providing the planes.
+     * @return The decoded PlanarImage.
+     * @throws IOException If an error occurs while decoding.
+     */
+
+    public PlanarImage decode(byte[] encoded, int channels, IntensityBuffer.StorageMode mode,
+                              BufferAllocator allocator) throws IOException
+    {
+        return decodeSource(encoded, channels, mode, allocator);
+    }
+
+    private PlanarImage decodeSource(Object source, int channels,
+                                     IntensityBuffer.StorageMode mode, BufferAllocator allocator)
+            throws IOException
+    {
+        ImageReader probe = openReader(source);
+        int width;
+        int height;
+        int planeCount = channels;
+        List<Rectangle> regions = new ArrayList<>();
+        try
+        {
+            width = probe.getWidth(0);
+            height = probe.getHeight(0);
+            if (channels > PlanarImage.ALPHA && !hasAlpha(probe))
+            {
+                planeCount = PlanarImage.ALPHA;
+            }
+            if (probe.isImageTiled(0))
+            {
+                int tileWidth = probe.getTileWidth(0);
+                int tileHeight = probe.getTileHeight(0);
+                for (int y = 0; y < height; y += tileHeight)
+                {
+                    for (int x = 0; x < width; x += tileWidth)
+                    {
+                        regions.add(new Rectangle(x, y, Math.min(tileWidth, width - x),
+                                Math.min(tileHeight, height - y)));
+                    }
+                }
+            }
+            else
+            {
+                boolean sequential = SEQUENTIAL_FORMATS.contains(
+                        probe.getFormatName().toLowerCase(Locale.ROOT));
+                int strips = sequential || (long) width * height < MIN_PARALLEL_PIXELS ? 1
+                        : Math.min(threads, height);
+                for (int s = 0; s < strips; s++)
+                {
+                    int top = (int) ((long) height * s / strips);
+                    int bottom = (int) ((long) height * (s + 1) / strips);
+                    regions.add(new Rectangle(0, top, width, bottom - top));
+                }
+            }
+        }
+        finally
+        {
+            close(probe);
+        }
+
+        IntensityBuffer[] planes = new IntensityBuffer[planeCount];
+        for (int c = 0; c < planeCount; c++)
+        {
+            planes[c] = allocator.allocateIntensities(mode, width * height);
+        }
+        PlanarImage image = new PlanarImage(width, height, planes);
+
+        int workers = Math.min(threads, regions.size());
+        if (workers <= 1 || (long) width * height < MIN_PARALLEL_PIXELS)
+        {
+            decodeRegions(source, regions, image);
+            return image;
+        }
+
+        List<List<Rectangle>> assignments = new ArrayList<>();
+        for (int w = 0; w < workers; w++)
+        {
+            assignments.add(new ArrayList<>());
+        }
+        for (int r = 0; r < regions.size(); r++)
+        {
+            assignments.get(r % workers).add(regions.get(r));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<Rectangle> assigned : assignments)
+            {
+                futures.add(pool.submit(() ->
+                {
+                    decodeRegions(source, assigned, image);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        return image;
+    }
+
+    /**
+     * Decodes regions of an image with a reader of its own and stores them in the planes.
+     *
+     * @param source The image file, or its contents.
+     * @param regions The regions to decode.
+     * @param image The image whose planes receive the values.
+     * @throws IOException If an error occurs while decoding.
+     */
+
+    private void decodeRegions(Object source, List<Rectangle> regions, PlanarImage image)
+            throws IOException
+    {
+        ImageReader reader = openReader(source);
+        try
+        {
+            int width = image.getWidth();
+            int channels = image.getChannels();
+            for (Rectangle region : regions)
+            {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                BufferedImage decoded = reader.read(0, param);
+                int[] rowArgb = new int[region.width];
+                for (int row = 0; row < region.height; row++)
+                {
+                    readRow(decoded, row, rowArgb);
+                    int base = (region.y + row) * width + region.x;
+                    if (channels == 1)
+                    {
+                        storeGray(image.getPlane(0), rowArgb, base);
+                        continue;
+                    }
+                    for (int c = 0; c < channels; c++)
+                    {
+                        IntensityBuffer plane = image.getPlane(c);
+                        for (int col = 0; col < region.width; col++)
+                        {
+                            int value = (rowArgb[col] >>> SHIFTS[c]) & 0xFF;
+                            if (plane instanceof ByteIntensityBuffer)
+                            {
+                                ((ByteIntensityBuffer) plane).setRaw(base + col, value);
+                            }
+                            else
+                            {
+                                plane.set(base + col, value / (float) MAX_NUM_COLOR);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            close(reader);
+        }
+    }
+
+    /**
+     * Reads a row as packed ARGB values. Gray images are read from their samples, since
+     * getRGB would convert them from linear gray and no longer match the stored values.
+     */
+
+    private static void readRow(BufferedImage decoded, int row, int[] rowArgb)
+    {
+        if (decoded.getType() != BufferedImage.TYPE_BYTE_GRAY)
+        {
+            decoded.getRGB(0, row, rowArgb.length, 1, rowArgb, 0, rowArgb.length);
+            return;
+        }
+        decoded.getRaster().getSamples(0, row, rowArgb.length, 1, 0, rowArgb);
+        for (int col = 0; col < rowArgb.length; col++)
+        {
+            int gray = rowArgb[col];
+            rowArgb[col] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+        }
+    }
+
+    private static void storeGray(IntensityBuffer plane, int[] rowArgb, int base)
+    {
+        for (int col = 0; col < rowArgb.length; col++)
+        {
+            int argb = rowArgb[col];
+            float gray = (float) (((argb >> 16) & 0xFF) * RED_FACTOR +
+                    ((argb >> 8) & 0xFF) * GREEN_FACTOR + (argb & 0xFF) * BLUE_FACTOR);
+            plane.set(base + col, gray / MAX_NUM_COLOR);
+        }
+    }
+
+    /**
+     * Tells whether the source's colour model has an alpha channel, as reported by its reader.
+     */
+
+    private static boolean hasAlpha(ImageReader reader) throws IOException
+    {
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+        if (type == null)
+        {
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            type = types.hasNext() ? types.next() : null;
+        }
+        return type != null && type.getColorModel().hasAlpha();
+    }
+
+    private static String describe(Object source)
+    {
+        return source instanceof byte[] ? ((byte[]) source).length + " bytes" : source.toString();
+    }
+
+    private static ImageReader openReader(Object source) throws IOException
+    {
+        ImageInputStream input = ImageIO.createImageInputStream(source instanceof byte[]
+                ? new ByteArrayInputStream((byte[]) source) : source);
+        if (input == null)
+        {
+            throw new IOException(NO_READER + describe(source));
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext())
+        {
+            input.close();
+            throw new IOException(NO_READER + describe(source));
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    /**
+     * Disposes of a reader opened by openReader and closes its input stream, which dispose
+     * leaves open.
+     */
+
+    private static void close(ImageReader reader) throws IOException
+    {
+        Object input = reader.getInput();
+        reader.dispose();
+        if (input instanceof ImageInputStream)
+        {
+            ((ImageInputStream) input).close();
+        }
+    }
+}
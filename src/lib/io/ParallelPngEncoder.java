@@ -0,0 +1,411 @@
+package lib.io;
+
+import lib.entities.BufferArena;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes 8-bit grayscale, RGB and RGBA PNG files, filtering and compressing groups of rows on
+ * several threads. Every group is raw-deflated on its own, primed with the preceding 32KB of
+ * filtered data as a dictionary and ended with a sync flush (the last one with a final
+ * block), so the compressed groups concatenate into one valid zlib stream whose checksum is
+ * combined from the groups' checksums. Groups are written in order as they complete, with a
+ * bounded number in flight. The filtered rows and deflate buffers of a group are taken from
+ * the shared BufferArena and released once the group is compressed.
+ */
+
+public class ParallelPngEncoder
+{
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int BIT_DEPTH = 8;
+    private static final int GROUP_BYTES = 128 * 1024;
+    private static final int DICTIONARY_BYTES = 32 * 1024;
+    private static final int DEFLATE_BUFFER_BYTES = 64 * 1024;
+    private static final int ADLER_BASE = 65521;
+    private static final int FILTER_TYPES = 5;
+    private static final String INVALID_LEVEL = "Compression level must be between -1 and 9: ";
+
+    private final int threads;
+    private final int level;
+
+    /**
+     * Constructs a ParallelPngEncoder.
+     *
+     * @param threads The number of compressing threads.
+     * @param level The deflate compression level, 0-9, or -1 for the default.
+     */
+
+    public ParallelPngEncoder(int threads, int level)
+    {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+        {
+            throw new IllegalArgumentException(INVALID_LEVEL + level);
+        }
+        this.threads = Math.max(1, threads);
+        this.level = level;
+    }
+
+    /**
+     * Writes an image to a PNG file. TYPE_BYTE_GRAY images are written as grayscale, images
+     * with alpha as RGBA and all others as RGB.
+     *
+     * @param image The image to write.
+     * @param output The file to write to.
+     * @throws IOException If an error occurs while writing.
+     */
+
+    public void write(BufferedImage image, File output) throws IOException
+    {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output)))
+        {
+            write(image, out);
+        }
+    }
+
+    /**
+     * Writes an image as a PNG datastream.
+     *
+     * @param image The image to write.
+     * @param out The stream to write to.
+     * @throws IOException If an error occurs while writing.
+     */
+
+    public void write(BufferedImage image, OutputStream out) throws IOException
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int colorType = image.getType() == BufferedImage.TYPE_BYTE_GRAY ? COLOR_TYPE_GRAY
+                : image.getColorModel().hasAlpha() ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB;
+        int bpp = colorType == COLOR_TYPE_GRAY ? 1 : colorType == COLOR_TYPE_RGB ? 3 : 4;
+        int rowBytes = width * bpp;
+        int groupRows = Math.max(1, GROUP_BYTES / (rowBytes + 1));
+        int groups = (height + groupRows - 1) / groupRows;
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(BIT_DEPTH);
+        headerData.writeByte(colorType);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        writeChunk(data, IHDR, header.toByteArray());
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, groups));
+        ArrayDeque<Future<CompressedGroup>> inFlight = new ArrayDeque<>();
+        try
+        {
+            long adler = 1;
+            int next = 0;
+            for (int written = 0; written < groups; written++)
+            {
+                while (next < groups && inFlight.size() < 2 * threads)
+                {
+                    int group = next++;
+                    int fromRow = group * groupRows;
+                    int toRow = Math.min(height, fromRow + groupRows);
+                    boolean last = group == groups - 1;
+                    inFlight.add(pool.submit(() -> compressGroup(image, colorType, bpp, fromRow,
+                            toRow, last)));
+                }
+                CompressedGroup compressed = inFlight.poll().get();
+                adler = combineAdler(adler, compressed.adler, compressed.rawLength);
+                ByteArrayOutputStream chunk = new ByteArrayOutputStream(
+                        compressed.bytes.length + 6);
+                if (written == 0)
+                {
+                    chunk.write(zlibHeader());
+                }
+                chunk.write(compressed.bytes);
+                if (written == groups - 1)
+                {
+                    new DataOutputStream(chunk).writeInt((int) adler);
+                }
+                writeChunk(data, IDAT, chunk.toByteArray());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        writeChunk(data, IEND, new byte[0]);
+        data.flush();
+    }
+
+    private CompressedGroup compressGroup(BufferedImage image, int colorType, int bpp,
+                                          int fromRow, int toRow, boolean last)
+    {
+        int rowBytes = image.getWidth() * bpp;
+        int dictionaryRows = (DICTIONARY_BYTES + rowBytes) / (rowBytes + 1);
+        int primeFrom = Math.max(0, fromRow - dictionaryRows);
+        BufferArena arena = BufferArena.shared();
+        byte[] filtered = arena.takeBytes((toRow - primeFrom) * (rowBytes + 1));
+        filterRows(image, colorType, bpp, primeFrom, toRow, filtered);
+        int offset = (fromRow - primeFrom) * (rowBytes + 1);
+        int length = (toRow - fromRow) * (rowBytes + 1);
+
+        Deflater deflater = new Deflater(level, true);
+        byte[] buffer = arena.takeBytes(DEFLATE_BUFFER_BYTES);
+        try
+        {
+            if (offset > 0)
+            {
+                int dictionaryLength = Math.min(DICTIONARY_BYTES, offset);
+                deflater.setDictionary(filtered, offset - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(filtered, offset, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+            if (last)
+            {
+                deflater.finish();
+                while (!deflater.finished())
+                {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            else
+            {
+                int count;
+                do
+                {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, count);
+                }
+                while (count == buffer.length);
+            }
+            Adler32 adler = new Adler32();
+            adler.update(filtered, offset, length);
+            return new CompressedGroup(out.toByteArray(), adler.getValue(), length);
+        }
+        finally
+        {
+            deflater.end();
+            arena.release(buffer);
+            arena.release(filtered);
+        }
+    }
+
+    /**
+     * Extracts and filters a range of rows, choosing for each row the filter with the least
+     * sum of absolute filtered values.
+     *
+     * @param filtered Receives the filtered rows, each preceded by its filter type byte.
+     */
+
+    private static void filterRows(BufferedImage image, int colorType, int bpp, int fromRow,
+                                   int toRow, byte[] filtered)
+    {
+        int width = image.getWidth();
+        int rowBytes = width * bpp;
+        byte[] previous = new byte[rowBytes];
+        byte[] current = new byte[rowBytes];
+        byte[][] candidates = new byte[FILTER_TYPES][rowBytes];
+        int[] samples = new int[width];
+        if (fromRow > 0)
+        {
+            readRow(image, colorType, fromRow - 1, samples, previous);
+        }
+        for (int row = fromRow; row < toRow; row++)
+        {
+            readRow(image, colorType, row, samples, current);
+            int best = 0;
+            long bestSum = Long.MAX_VALUE;
+            for (int type = 0; type < FILTER_TYPES; type++)
+            {
+                long sum = applyFilter(type, current, previous, bpp, candidates[type]);
+                if (sum < bestSum)
+                {
+                    bestSum = sum;
+                    best = type;
+                }
+            }
+            int base = (row - fromRow) * (rowBytes + 1);
+            filtered[base] = (byte) best;
+            System.arraycopy(candidates[best], 0, filtered, base + 1, rowBytes);
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    private static void readRow(BufferedImage image, int colorType, int row, int[] samples,
+                                byte[] bytes)
+    {
+        int width = image.getWidth();
+        if (colorType == COLOR_TYPE_GRAY)
+        {
+            image.getRaster().getSamples(0, row, width, 1, 0, samples);
+            for (int col = 0; col < width; col++)
+            {
+                bytes[col] = (byte) samples[col];
+            }
+            return;
+        }
+        image.getRGB(0, row, width, 1, samples, 0, width);
+        int pos = 0;
+        for (int col = 0; col < width; col++)
+        {
+            int argb = samples[col];
+            bytes[pos++] = (byte) (argb >> 16);
+            bytes[pos++] = (byte) (argb >> 8);
+            bytes[pos++] = (byte) argb;
+            if (colorType == COLOR_TYPE_RGBA)
+            {
+                bytes[pos++] = (byte) (argb >>> 24);
+            }
+        }
+    }
+
+    private static long applyFilter(int type, byte[] current, byte[] previous, int bpp,
+                                    byte[] out)
+    {
+        long sum = 0;
+        for (int i = 0; i < current.length; i++)
+        {
+            int x = current[i] & 0xFF;
+            int a = i >= bpp ? current[i - bpp] & 0xFF : 0;
+            int b = previous[i] & 0xFF;
+            int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+            int predictor;
+            switch (type)
+            {
+                case 1:
+                    predictor = a;
+                    break;
+                case 2:
+                    predictor = b;
+                    break;
+                case 3:
+                    predictor = (a + b) >>> 1;
+                    break;
+                case 4:
+                    predictor = paeth(a, b, c);
+                    break;
+                default:
+                    predictor = 0;
+            }
+            byte value = (byte) (x - predictor);
+            out[i] = value;
+            sum += Math.abs(value);
+        }
+        return sum;
+    }
+
+    private static int paeth(int a, int b, int c)
+    {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc)
+        {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private byte[] zlibHeader()
+    {
+        int levelFlags;
+        if (level == 0 || level == 1)
+        {
+            levelFlags = 0;
+        }
+        else if (level >= 2 && level <= 5)
+        {
+            levelFlags = 1;
+        }
+        else if (level == 6 || level == Deflater.DEFAULT_COMPRESSION)
+        {
+            levelFlags = 2;
+        }
+        else
+        {
+            levelFlags = 3;
+        }
+        int header = (0x78 << 8) | (levelFlags << 6);
+        header += 31 - header % 31;
+        return new byte[]{(byte) (header >> 8), (byte) header};
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two consecutive byte sequences.
+     *
+     * @param first The checksum of the first sequence.
+     * @param second The checksum of the second sequence.
+     * @param secondLength The length of the second sequence.
+     * @return The checksum of the concatenation.
+     */
+
+    static long combineAdler(long first, long second, long secondLength)
+    {
+        long remainder = secondLength % ADLER_BASE;
+        long sum1 = first & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((first >>> 16) & 0xFFFF) + ((second >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+        return (sum2 << 16) | sum1;
+    }
+
+    private static void writeChunk(DataOutputStream out, byte[] type, byte[] data)
+            throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(type);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static final class CompressedGroup
+    {
+        private final byte[] bytes;
+        private final long adler;
+        private final int rawLength;
+
+        private CompressedGroup(byte[] bytes, long adler, int rawLength)
+        {
+            this.bytes = bytes;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+}
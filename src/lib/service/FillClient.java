@@ -0,0 +1,106 @@
+package lib.service;
+
+import lib.ImageProcessingException;
+import lib.io.MaskReader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Forwards the command line's five arguments to a FillDaemon over its Unix domain socket, so
+ * a short-lived command gets the latency of a warm JVM.
+ */
+
+public class FillClient
+{
+    /**
+     * The environment variable naming the daemon's socket.
+     */
+    public static final String SOCKET_ENV = "FILLHOLE_SOCKET";
+
+    /**
+     * The system property naming the daemon's socket; it takes precedence over the
+     * environment variable.
+     */
+    public static final String SOCKET_PROPERTY = "fillhole.socket";
+
+    private final Path socketPath;
+
+    /**
+     * Constructs a FillClient.
+     *
+     * @param socketPath The path of the daemon's socket.
+     */
+
+    public FillClient(Path socketPath)
+    {
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Returns the daemon socket configured by the fillhole.socket system property or the
+     * FILLHOLE_SOCKET environment variable.
+     *
+     * @return The socket path, or null if none is configured.
+     */
+
+    public static Path configuredSocket()
+    {
+        String configured = System.getProperty(SOCKET_PROPERTY, System.getenv(SOCKET_ENV));
+        return configured == null || configured.isEmpty() ? null : Paths.get(configured);
+    }
+
+    /**
+     * Checks whether a daemon socket file exists.
+     *
+     * @return True if the socket file exists.
+     */
+
+    public boolean isAvailable()
+    {
+        return Files.exists(socketPath);
+    }
+
+    /**
+     * Has the daemon fill and save an image. Image and mask paths are made absolute first,
+     * since the daemon runs in another working directory.
+     *
+     * @param args [image path] [mask path] [pixel connectivity] [z] [epsilon]
+     * @return The absolute path of the saved output.
+     * @throws IOException If the daemon cannot be reached.
+     * @throws ImageProcessingException If the daemon reports that the request failed.
+     */
+
+    public String fill(String[] args) throws IOException
+    {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX))
+        {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(FillDaemon.PROTOCOL_VERSION);
+            out.writeInt(args.length);
+            for (int a = 0; a < args.length; a++)
+            {
+                boolean path = a < 2 && !args[a].equals(MaskReader.ALPHA_MASK);
+                out.writeUTF(path ? Paths.get(args[a]).toAbsolutePath().toString() : args[a]);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            boolean ok = in.readBoolean();
+            String reply = in.readUTF();
+            if (!ok)
+            {
+                throw new ImageProcessingException(reply, null);
+            }
+            return reply;
+        }
+    }
+}
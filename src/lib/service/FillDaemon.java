@@ -0,0 +1,259 @@
+package lib.service;
+
+import lib.ImageLibraryManager;
+import lib.ImageProcessingException;
+import lib.algorithms.AlgorithmManager;
+import lib.entities.Pixel;
+import lib.entities.ProcessedImageFields;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a warm JVM running the command line's default fill for FillClient, over a Unix domain
+ * socket. Each connection carries one request: the five command-line arguments
+ * [image path] [mask path] [pixel connectivity] [z] [epsilon], with absolute paths. The daemon
+ * fills and saves the image exactly as the command line would and answers with the output
+ * path, or with the error message of a failed request; a failure never stops the daemon.
+ * Requests run on a fixed pool of threads sized to the CPU count.
+ */
+
+public class FillDaemon
+{
+    static final int PROTOCOL_VERSION = 1;
+    static final int NUM_OF_ARGS = 5;
+
+    private static final String BAD_VERSION = "Unsupported protocol version: ";
+    private static final String BAD_ARG_COUNT = "Expected 5 arguments, got ";
+    private static final String INVALID_CONNECTIVITY_TYPE = "Invalid connectivity type";
+    private static final String NUMBER_FORMAT_ERROR = "ERROR: invalid number error";
+    private static final int CONNECTARG = 2;
+    private static final int ZARG = 3;
+    private static final int E_ARG = 4;
+    private static final int FOUR_CONNECTED = 4;
+    private static final int EIGHT_CONNECTED = 8;
+    private static final int FILE_TYPE_MASK = 0170000;
+    private static final int SOCKET_TYPE = 0140000;
+    private static final String NOT_A_SOCKET = "Not a socket, refusing to replace it: ";
+    private static final String SOCKET_IN_USE = "Another daemon is listening on: ";
+
+    private final Path socketPath;
+    private final ExecutorService workers;
+    private ServerSocketChannel server;
+    private Object boundFile;
+
+    /**
+     * Constructs a FillDaemon.
+     *
+     * @param socketPath The path of the Unix domain socket to listen on.
+     * @param threads The number of requests filled at a time.
+     */
+
+    public FillDaemon(Path socketPath, int threads)
+    {
+        this.socketPath = socketPath;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * Binds the socket, replacing a stale socket file, and serves requests on the calling
+     * thread until the daemon is closed. A file at the path is only replaced if it is a socket
+     * that no daemon answers on.
+     *
+     * @throws IOException If the path holds something other than a stale socket, or the socket
+     *                     cannot be bound.
+     */
+
+    public void serve() throws IOException
+    {
+        removeStaleSocket();
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        boundFile = fileKey(socketPath);
+        try
+        {
+            while (server.isOpen())
+            {
+                SocketChannel client = server.accept();
+                workers.execute(() -> handle(client));
+            }
+        }
+        catch (IOException e)
+        {
+            if (server.isOpen())
+            {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting requests and removes the socket file, if it is still the one this daemon
+     * bound.
+     *
+     * @throws IOException If the socket cannot be closed.
+     */
+
+    public void close() throws IOException
+    {
+        workers.shutdown();
+        if (server != null)
+        {
+            server.close();
+        }
+        if (boundFile != null && boundFile.equals(fileKey(socketPath)))
+        {
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    /**
+     * Deletes the file at the socket path if it is a socket left behind by a daemon that is no
+     * longer running.
+     *
+     * @throws IOException If the file is not a socket, or a daemon still answers on it.
+     */
+
+    private void removeStaleSocket() throws IOException
+    {
+        if (!Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS))
+        {
+            return;
+        }
+        if (!isSocket(socketPath))
+        {
+            throw new IOException(NOT_A_SOCKET + socketPath);
+        }
+        try (SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX))
+        {
+            probe.connect(UnixDomainSocketAddress.of(socketPath));
+            throw new IOException(SOCKET_IN_USE + socketPath);
+        }
+        catch (ConnectException e)
+        {
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private static boolean isSocket(Path path) throws IOException
+    {
+        try
+        {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            return (mode & FILE_TYPE_MASK) == SOCKET_TYPE;
+        }
+        catch (UnsupportedOperationException e)
+        {
+            return Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS).isOther();
+        }
+    }
+
+    /**
+     * Returns the key identifying the file at a path, or null if there is none.
+     */
+
+    private static Object fileKey(Path path)
+    {
+        try
+        {
+            return Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS).fileKey();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static void handle(SocketChannel client)
+    {
+        try (SocketChannel channel = client)
+        {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            boolean ok = false;
+            String reply;
+            try
+            {
+                int version = in.readInt();
+                if (version != PROTOCOL_VERSION)
+                {
+                    throw new IllegalArgumentException(BAD_VERSION + version);
+                }
+                int argc = in.readInt();
+                if (argc != NUM_OF_ARGS)
+                {
+                    throw new IllegalArgumentException(BAD_ARG_COUNT + argc);
+                }
+                String[] args = new String[argc];
+                for (int a = 0; a < argc; a++)
+                {
+                    args[a] = in.readUTF();
+                }
+                reply = fill(args);
+                ok = true;
+            }
+            catch (ImageProcessingException | IllegalArgumentException e)
+            {
+                reply = e.getMessage();
+            }
+            catch (RuntimeException | OutOfMemoryError e)
+            {
+                reply = e.toString();
+            }
+            out.writeBoolean(ok);
+            out.writeUTF(String.valueOf(reply));
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            // The client went away; there is no one left to answer.
+        }
+    }
+
+    /**
+     * Runs the command line's default fill and returns the output path.
+     */
+
+    private static String fill(String[] args)
+    {
+        int connectivity;
+        int z;
+        float e;
+        try
+        {
+            connectivity = Integer.parseInt(args[CONNECTARG]);
+            z = Integer.parseInt(args[ZARG]);
+            e = Float.parseFloat(args[E_ARG]);
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException(NUMBER_FORMAT_ERROR);
+        }
+        if (connectivity != FOUR_CONNECTED && connectivity != EIGHT_CONNECTED)
+        {
+            throw new IllegalArgumentException(INVALID_CONNECTIVITY_TYPE);
+        }
+        ImageLibraryManager imgManager = new ImageLibraryManager(false);
+        ProcessedImageFields processedImageFields = imgManager.processImage(args[0], args[1],
+                connectivity);
+        Pixel[][] filledImage = new AlgorithmManager(connectivity, z, e)
+                .runAlgorithm(processedImageFields);
+        imgManager.saveImage(filledImage, args[0]);
+        return imgManager.getOutputPath(args[0]);
+    }
+}
@@ -0,0 +1,446 @@
+package lib.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lib.ImageLibraryManager;
+import lib.ImageProcessingException;
+import lib.algorithms.FillConfig;
+import lib.algorithms.FillEngine;
+import lib.algorithms.FillRejectedException;
+import lib.algorithms.FillScheduler;
+import lib.entities.BufferAllocator;
+import lib.entities.BufferArena;
+import lib.entities.FillResult;
+import lib.entities.HoleGeometry;
+import lib.entities.IntensityBuffer;
+import lib.entities.MaskBitmap;
+import lib.entities.PlanarImage;
+import lib.io.MaskReader;
+import lib.io.NativeImageCodec;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves hole filling over HTTP from a long-running JVM, on the loopback interface only.
+ * <p>
+ * POST /fill?connectivity=8&amp;z=3&amp;e=0.01&amp;format=png fills the image and mask sent as
+ * the "image" and "mask" parts of a multipart/form-data body, or the local files named by the
+ * image and mask query parameters (which also accept .rle, .poly and "alpha" masks), with the
+ * colour fill, and streams back the result encoded in the requested format.
+ * GET /health answers "ok".
+ * <p>
+ * Requests are handled on virtual threads when the JVM has them, otherwise on a cached pool,
+ * while decoding runs on a fixed pool of compute threads so that concurrent requests cannot
+ * oversubscribe the CPU. Decoded fills are then queued by a FillScheduler, which runs them
+ * shortest first and counts every queued or running image against a memory budget of half the
+ * heap; only the images being decoded, at most one per compute thread, are outside it.
+ * Failures are answered per request: 400 for bad input, 413 for a fill too large for the
+ * budget, 503 with Retry-After when the fill queue or the budget is full or the service is
+ * shutting down, and 500 otherwise.
+ */
+
+public class FillService
+{
+    private static final String FILL_PATH = "/fill";
+    private static final String HEALTH_PATH = "/health";
+    private static final String POST = "POST";
+    private static final String GET = "GET";
+    private static final String CONNECTIVITY_PARAM = "connectivity";
+    private static final String Z_PARAM = "z";
+    private static final String E_PARAM = "e";
+    private static final String FORMAT_PARAM = "format";
+    private static final String IMAGE_PARAM = "image";
+    private static final String MASK_PARAM = "mask";
+    private static final String DEFAULT_FORMAT = "png";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String TEXT = "text/plain; charset=utf-8";
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final String IMAGE_TYPE = "image/";
+    private static final String OK = "ok\n";
+    private static final String MISSING_PARAM = "Missing parameter: ";
+    private static final String MISSING_PART = "Missing form part: ";
+    private static final String INVALID_CONNECTIVITY = "Invalid connectivity type: ";
+    private static final String UNKNOWN_FORMAT = "Unknown output format: ";
+    private static final String TOO_LARGE = "Request body too large";
+    private static final String VIRTUAL_EXECUTOR = "newVirtualThreadPerTaskExecutor";
+    private static final int MAX_BODY_BYTES = 1 << 28;
+    private static final int BACKLOG = 64;
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_BAD_METHOD = 405;
+    private static final int STATUS_TOO_LARGE = 413;
+    private static final int STATUS_ERROR = 500;
+    private static final int STATUS_UNAVAILABLE = 503;
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final String RETRY_SECONDS = "1";
+    private static final int MAX_QUEUED_FILLS = 64;
+    private static final long AGING_MILLIS = 1000;
+    private static final int FOUR_CONNECTED = 4;
+    private static final int EIGHT_CONNECTED = 8;
+    private static final int MAX_CACHED_ENGINES = 64;
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService computeExecutor;
+    private final FillScheduler scheduler;
+    private final Map<FillConfig, FillEngine> engines = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a FillService bound to a loopback port. The service does not accept requests
+     * until it is started.
+     *
+     * @param port The port, or 0 for any free port.
+     * @param computeThreads The number of threads decoding images, and filling them.
+     * @throws IOException If the port cannot be bound.
+     */
+
+    public FillService(int port, int computeThreads) throws IOException
+    {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                port), BACKLOG);
+        this.requestExecutor = requestExecutor();
+        this.computeExecutor = Executors.newFixedThreadPool(Math.max(1, computeThreads));
+        this.scheduler = new FillScheduler(computeThreads, Runtime.getRuntime().maxMemory() / 2,
+                MAX_QUEUED_FILLS, AGING_MILLIS);
+        server.setExecutor(requestExecutor);
+        server.createContext(FILL_PATH, this::handleFill);
+        server.createContext(HEALTH_PATH, this::handleHealth);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, lets the requests in progress finish for up to a delay, and
+     * releases the threads.
+     *
+     * @param delaySeconds The longest time to wait for requests in progress.
+     */
+
+    public void stop(int delaySeconds)
+    {
+        server.stop(delaySeconds);
+        scheduler.close();
+        computeExecutor.shutdownNow();
+        requestExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the port the service listens on.
+     *
+     * @return The bound port.
+     */
+
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException
+    {
+        sendText(exchange, STATUS_OK, OK);
+    }
+
+    private void handleFill(HttpExchange exchange) throws IOException
+    {
+        BufferAllocator allocator = BufferAllocator.pooled(BufferArena.shared());
+        try
+        {
+            if (!POST.equals(exchange.getRequestMethod()) &&
+                    !GET.equals(exchange.getRequestMethod()))
+            {
+                sendText(exchange, STATUS_BAD_METHOD, exchange.getRequestMethod() + "\n");
+                return;
+            }
+            if (!FILL_PATH.equals(exchange.getRequestURI().getPath()))
+            {
+                sendText(exchange, STATUS_NOT_FOUND, exchange.getRequestURI().getPath() + "\n");
+                return;
+            }
+            Map<String, String> params = queryOf(exchange.getRequestURI());
+            int connectivity = Integer.parseInt(required(params, CONNECTIVITY_PARAM));
+            int z = Integer.parseInt(required(params, Z_PARAM));
+            float e = Float.parseFloat(required(params, E_PARAM));
+            String format = params.getOrDefault(FORMAT_PARAM, DEFAULT_FORMAT)
+                    .toLowerCase(Locale.ROOT);
+            if (connectivity != FOUR_CONNECTED && connectivity != EIGHT_CONNECTED)
+            {
+                throw new IllegalArgumentException(INVALID_CONNECTIVITY + connectivity);
+            }
+            boolean nativeFormat = NativeImageCodec.supports("." + format);
+            if (!nativeFormat && !ImageIO.getImageWritersByFormatName(format).hasNext())
+            {
+                throw new IllegalArgumentException(UNKNOWN_FORMAT + format);
+            }
+
+            FillRequest request = params.containsKey(IMAGE_PARAM)
+                    ? new FillRequest(required(params, IMAGE_PARAM), required(params, MASK_PARAM))
+                    : uploaded(exchange);
+            ImageLibraryManager imgManager = new ImageLibraryManager(false);
+            Future<HoleGeometry> read = computeExecutor.submit(() ->
+                    request.read(imgManager, connectivity, allocator));
+            HoleGeometry geometry = await(read);
+            request.result = await(scheduler.submit(engineFor(FillConfig.of(connectivity, z, e)),
+                    geometry, request.image));
+
+            exchange.getResponseHeaders().set(CONTENT_TYPE, nativeFormat ? OCTET_STREAM
+                    : IMAGE_TYPE + format);
+            exchange.sendResponseHeaders(STATUS_OK, 0);
+            try (OutputStream body = exchange.getResponseBody())
+            {
+                imgManager.writeImage(request.image, request.result, format,
+                        Channels.newChannel(body));
+            }
+        }
+        catch (ImageProcessingException | IllegalArgumentException | IOException e)
+        {
+            sendText(exchange, STATUS_BAD_REQUEST, e.getMessage() + "\n");
+        }
+        catch (FillRejectedException e)
+        {
+            if (e.getReason() == FillRejectedException.Reason.OVER_BUDGET)
+            {
+                sendText(exchange, STATUS_TOO_LARGE, e.getMessage() + "\n");
+                return;
+            }
+            exchange.getResponseHeaders().set(RETRY_AFTER, RETRY_SECONDS);
+            sendText(exchange, STATUS_UNAVAILABLE, e.getMessage() + "\n");
+        }
+        catch (RejectedExecutionException e)
+        {
+            sendText(exchange, STATUS_UNAVAILABLE, e.toString() + "\n");
+        }
+        catch (RuntimeException e)
+        {
+            sendText(exchange, STATUS_ERROR, e.toString() + "\n");
+        }
+        finally
+        {
+            exchange.close();
+            if (!Thread.currentThread().isInterrupted())
+            {
+                // An interrupted request may have left its fill running on the buffers.
+                allocator.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the shared engine of a configuration, so that requests with the same parameters
+     * reuse its weight table. The cache is cleared when clients have sent too many distinct
+     * configurations.
+     */
+
+    private FillEngine engineFor(FillConfig config)
+    {
+        if (engines.size() >= MAX_CACHED_ENGINES && !engines.containsKey(config))
+        {
+            engines.clear();
+        }
+        return engines.computeIfAbsent(config, FillEngine::new);
+    }
+
+    /**
+     * Waits for a step run on another thread, rethrowing its failure on the request's thread.
+     */
+
+    private static <T> T await(Future<T> step) throws IOException
+    {
+        try
+        {
+            return step.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    private static FillRequest uploaded(HttpExchange exchange) throws IOException
+    {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody())
+        {
+            body = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (body.length > MAX_BODY_BYTES)
+        {
+            throw new IOException(TOO_LARGE);
+        }
+        MultipartForm form = new MultipartForm(exchange.getRequestHeaders()
+                .getFirst(CONTENT_TYPE), body);
+        byte[] image = form.get(IMAGE_PARAM);
+        byte[] mask = form.get(MASK_PARAM);
+        if (image == null || mask == null)
+        {
+            throw new IOException(MISSING_PART + (image == null ? IMAGE_PARAM : MASK_PARAM));
+        }
+        return new FillRequest(image, mask);
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text)
+            throws IOException
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(CONTENT_TYPE, TEXT);
+        try
+        {
+            exchange.sendResponseHeaders(status, bytes.length);
+        }
+        catch (IOException e)
+        {
+            // The response has already started streaming; the client sees a truncated body.
+            return;
+        }
+        try (OutputStream body = exchange.getResponseBody())
+        {
+            body.write(bytes);
+        }
+    }
+
+    private static Map<String, String> queryOf(URI uri)
+    {
+        Map<String, String> params = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null)
+        {
+            return params;
+        }
+        for (String pair : query.split("&"))
+        {
+            int eq = pair.indexOf('=');
+            if (eq > 0)
+            {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String name)
+    {
+        String value = params.get(name);
+        if (value == null)
+        {
+            throw new IllegalArgumentException(MISSING_PARAM + name);
+        }
+        return value;
+    }
+
+    /**
+     * Creates the request executor: one virtual thread per request when the JVM supports
+     * them, looked up reflectively so the service still runs on older JVMs, otherwise a
+     * cached thread pool.
+     */
+
+    private static ExecutorService requestExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod(VIRTUAL_EXECUTOR).invoke(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * The inputs of one fill request, either local paths or uploaded bytes, and its outcome.
+     */
+
+    private static class FillRequest
+    {
+        private final String imagePath;
+        private final String maskPath;
+        private final byte[] imageBytes;
+        private final byte[] maskBytes;
+        private PlanarImage image;
+        private FillResult result;
+
+        private FillRequest(String imagePath, String maskPath)
+        {
+            this.imagePath = imagePath;
+            this.maskPath = maskPath;
+            this.imageBytes = null;
+            this.maskBytes = null;
+        }
+
+        private FillRequest(byte[] imageBytes, byte[] maskBytes)
+        {
+            this.imagePath = null;
+            this.maskPath = null;
+            this.imageBytes = imageBytes;
+            this.maskBytes = maskBytes;
+        }
+
+        /**
+         * Reads the image and extracts the mask's hole geometry, on a compute thread. Images
+         * given by path are read into buffers from the request's allocator.
+         */
+
+        private HoleGeometry read(ImageLibraryManager imgManager, int connectivity,
+                                  BufferAllocator allocator)
+        {
+            HoleGeometry geometry;
+            if (imagePath != null)
+            {
+                image = imgManager.readColorImage(imagePath,
+                        MaskReader.ALPHA_MASK.equals(maskPath), IntensityBuffer.StorageMode.BYTE,
+                        allocator);
+                MaskBitmap mask = imgManager.readMask(maskPath, image);
+                image = image.withoutAlpha();
+                geometry = imgManager.processMask(mask, connectivity, allocator);
+            }
+            else
+            {
+                image = imgManager.readColorImage(Channels.newChannel(
+                        new ByteArrayInputStream(imageBytes)));
+                geometry = imgManager.processMask(Channels.newChannel(
+                        new ByteArrayInputStream(maskBytes)), connectivity);
+            }
+            return geometry;
+        }
+    }
+}
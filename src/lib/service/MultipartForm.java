@@ -0,0 +1,117 @@
+package lib.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a multipart/form-data request body into its named parts. Only what the fill service
+ * needs is supported: every part is kept in memory, and part headers other than the name in
+ * Content-Disposition are ignored.
+ */
+
+class MultipartForm
+{
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+    private static final Pattern NAME = Pattern.compile("(?:^|[;\\s])name=\"([^\"]*)\"");
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final String DISPOSITION = "content-disposition:";
+    private static final String NO_BOUNDARY = "Missing multipart boundary";
+    private static final String MALFORMED = "Malformed multipart body";
+
+    private final Map<String, byte[]> parts = new HashMap<>();
+
+    /**
+     * Parses a multipart body.
+     *
+     * @param contentType The request's Content-Type header.
+     * @param body The request body.
+     * @throws IOException If the body is not well-formed multipart/form-data.
+     */
+
+    MultipartForm(String contentType, byte[] body) throws IOException
+    {
+        Matcher boundaryMatch = contentType == null ? null : BOUNDARY.matcher(contentType);
+        if (boundaryMatch == null || !boundaryMatch.find())
+        {
+            throw new IOException(NO_BOUNDARY);
+        }
+        byte[] delimiter = ("--" + boundaryMatch.group(1)).getBytes(StandardCharsets.US_ASCII);
+        byte[] separator = ("\r\n--" + boundaryMatch.group(1))
+                .getBytes(StandardCharsets.US_ASCII);
+        int pos = indexOf(body, delimiter, 0);
+        if (pos < 0)
+        {
+            throw new IOException(MALFORMED);
+        }
+        pos += delimiter.length;
+        while (pos + 1 < body.length && !(body[pos] == '-' && body[pos + 1] == '-'))
+        {
+            int headerEnd = indexOf(body, HEADER_END, pos);
+            if (headerEnd < 0)
+            {
+                throw new IOException(MALFORMED);
+            }
+            String headers = new String(body, pos, headerEnd - pos, StandardCharsets.UTF_8);
+            int contentStart = headerEnd + HEADER_END.length;
+            int contentEnd = indexOf(body, separator, contentStart);
+            if (contentEnd < 0)
+            {
+                throw new IOException(MALFORMED);
+            }
+            String name = nameOf(headers);
+            if (name != null)
+            {
+                parts.put(name, Arrays.copyOfRange(body, contentStart, contentEnd));
+            }
+            pos = contentEnd + separator.length;
+        }
+    }
+
+    /**
+     * Returns the contents of a part.
+     *
+     * @param name The part's form field name.
+     * @return The part's bytes, or null if there is no such part.
+     */
+
+    byte[] get(String name)
+    {
+        return parts.get(name);
+    }
+
+    private static String nameOf(String headers)
+    {
+        for (String header : headers.split("\r\n"))
+        {
+            if (header.toLowerCase(Locale.ROOT).startsWith(DISPOSITION))
+            {
+                Matcher m = NAME.matcher(header);
+                return m.find() ? m.group(1) : null;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from)
+    {
+        outer:
+        for (int i = Math.max(0, from); i <= data.length - pattern.length; i++)
+        {
+            for (int j = 0; j < pattern.length; j++)
+            {
+                if (data[i + j] != pattern[j])
+                {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}